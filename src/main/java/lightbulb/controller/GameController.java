@@ -1,53 +1,100 @@
 package lightbulb.controller;
 
-import lightbulb.model.*;
+import lightbulb.model.Board;
+import lightbulb.model.BoardChange;
+import lightbulb.model.BoardListener;
+import lightbulb.model.PowerFlood;
 
-import java.util.*;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 /**
  * Třída GameController spravuje herní logiku, aktualizuje stav připojení
  * jednotlivých prvků na herní desce a vyhodnocuje podmínky vítězství ve hře.
  * Zajišťuje interakci mezi modelem (herní deskou) a uživatelským rozhraním.
+ * Naslouchá změnám desky, po otočení jedné buňky přepočítává napájení
+ * jen v části desky, které se změna týká, a svým posluchačům posílá
+ * změněné buňky včetně těch, kterým se změnil stav napájení.
  *
  * @author Gleb Litvinchuk (xlitvi02)
  */
-public class GameController {
+public class GameController implements BoardListener {
     private Board board;
-    // Array where we will store whether the cell is connected or not
-    private boolean[][] connected;
+    // Which cells are connected, recomputed incrementally after each rotation
+    private final PowerFlood power;
     // Flag to enable/disable detailed logging
     private static final boolean DETAILED_LOGGING = false;
+    // Above this many changed cells (a merged batch) one full pass is cheaper than updating cell by cell
+    private static final int FULL_PASS_LIMIT = 32;
 
     private final GameHistory history;
+    private final List<BoardListener> listeners = new ArrayList<>();
 
-    public GameController(Board board) {
+    private GameController(Board board) {
         this.board = board;
-        this.connected = new boolean[board.getRows()][board.getCols()];
+        this.power = new PowerFlood(board, PowerFlood.Mode.POWERED);
 
         this.history = GameHistory.getInstance();
     }
 
+    /** Controller of the board, listening to its changes until {@link #dispose()}. */
+    public static GameController attach(Board board) {
+        GameController gc = new GameController(board);
+        board.addListener(gc);
+        return gc;
+    }
+
+    /** Stops listening to the board, for when the game is replaced. */
+    public void dispose() {
+        board.removeListener(this);
+        listeners.clear();
+    }
+
+    /** Views get the board changes after the connections were updated. */
+    public void addListener(BoardListener l) {
+        if (!listeners.contains(l)) listeners.add(l);
+    }
+    public void removeListener(BoardListener l) { listeners.remove(l); }
+
+    /** Called after the cell (r,c) was turned, recomputes only the affected part. */
     public void rotate(int r,int c){
-        updateConnections();
+        updateConnections(r, c);
     }
 
-    public void undo() { history.undo(); updateConnections(); }
-    public void redo() { history.redo(); updateConnections(); }
+    /* the board notifies us itself, the connections are updated in onCellsChanged() */
+    public void undo() { history.undo(); }
+    public void redo() { history.redo(); }
 
-    /**
-     * Finds the PowerSource on the field.
-     * Assumes there is only one PowerSource in the game.
-     */
-    private int[] findPowerSource() {
-        for (int r = 0; r < board.getRows(); r++) {
-            for (int c = 0; c < board.getCols(); c++) {
-                Element e = board.getCell(r, c).getElement();
-                if (e instanceof PowerSource) {
-                    return new int[]{r, c};
-                }
+    @Override
+    public void onBoardChanged(Board b) {
+        updateConnections();
+        for (BoardListener l : List.copyOf(listeners)) l.onBoardChanged(b);
+    }
+
+    /** Updates the changed cells and adds the cells that got or lost power to the changes. */
+    @Override
+    public void onCellsChanged(Board b, List<BoardChange> changes) {
+        if (changes.size() > FULL_PASS_LIMIT) {
+            onBoardChanged(b);
+            return;
+        }
+        List<BoardChange> all = new ArrayList<>(changes);
+        Set<Integer> seen = new HashSet<>();
+        for (BoardChange ch : changes) seen.add(ch.row() * b.getCols() + ch.col());
+
+        for (BoardChange ch : changes) {
+            updateConnections(ch.row(), ch.col());
+            for (int idx : power.lastTouched()) {
+                if (!seen.add(idx)) continue;
+                int r = idx / b.getCols(), c = idx % b.getCols();
+                int rot = b.rotationAt(idx);
+                all.add(new BoardChange(r, c, rot, rot));
             }
         }
-        return null;
+        List<BoardChange> out = List.copyOf(all);
+        for (BoardListener l : List.copyOf(listeners)) l.onCellsChanged(b, out);
     }
 
     /**
@@ -55,148 +102,25 @@ public class GameController {
      * from a cell with a power source.
      */
     public void updateConnections() {
-        if (DETAILED_LOGGING) System.out.println("\n--- Running updateConnections ---");
-
-        for (int r = 0; r < board.getRows(); r++) {
-            for (int c = 0; c < board.getCols(); c++) {
-                connected[r][c] = false;
-            }
-        }
-        if (DETAILED_LOGGING) System.out.println("LOG: 'connected' array reset.");
-
-        int[] sourcePos = findPowerSource();
-        if (sourcePos == null) {
-            if (DETAILED_LOGGING) System.out.println("LOG: Power source not found. Exiting updateConnections.");
-            return;
-        }
-        if (DETAILED_LOGGING) System.out.printf("LOG: Power source found at (%d, %d)\n", sourcePos[0], sourcePos[1]);
-
-        // Start BFS/DFS
-        Queue<int[]> queue = new LinkedList<>();
-        queue.add(sourcePos);
-        connected[sourcePos[0]][sourcePos[1]] = true;
-        if (DETAILED_LOGGING) System.out.printf("LOG: Added source (%d, %d) to queue. Marked as connected.\n", sourcePos[0], sourcePos[1]);
-
-        if (DETAILED_LOGGING) System.out.println("LOG: Starting BFS loop...");
-        while (!queue.isEmpty()) {
-            int[] pos = queue.poll();
-            int row = pos[0];
-            int col = pos[1];
-            if (DETAILED_LOGGING) System.out.printf("\nLOG: Polled (%d, %d) from queue.\n", row, col);
-
-            Cell cell = board.getCell(row, col);
-            Element element = cell.getElement();
-            if (element == null) {
-                if (DETAILED_LOGGING) System.out.printf("LOG: Element at (%d, %d) is null. Skipping neighbors.\n", row, col);
-                continue;
-            }
-
-            EnumSet<Direction> cellDirs = getDirections(element);
-            if (DETAILED_LOGGING) System.out.printf("LOG: Cell (%d, %d) [Type: %s, Rot: %d] connects towards: %s\n",
-                    row, col, element.getClass().getSimpleName(), cell.getRotation(), cellDirs);
-
-            // For each neighboring direction we check if we can “go” there
-            for (Direction dir : cellDirs) {
-                int nr = row + dirRow(dir);
-                int nc = col + dirCol(dir);
-                if (!inBounds(nr, nc)) continue;
-
-                Cell    neighCell = board.getCell(nr, nc);
-                Element neighElem = neighCell.getElement();
-                if (neighElem == null) continue;
-
-                Direction opp = oppositeDirection(dir);
-
-                if (neighElem instanceof Bulb bulb) {
-                    if (bulb.getLead() == opp) {
-                        if (!connected[nr][nc]) {
-                            connected[nr][nc] = true;
-                            if (DETAILED_LOGGING)
-                                System.out.printf("LOG: Bulb at (%d,%d) lit from %s.\n", nr, nc, opp);
-                        }
-                    } else if (DETAILED_LOGGING) {
-                        System.out.printf("LOG: Bulb at (%d,%d) NOT lit – lead %s, came from %s.\n",
-                                nr, nc, bulb.getLead(), opp);
-                    }
-                    continue;
-                }
-
-                if (neighElem.getConnections().contains(opp) && !connected[nr][nc]) {
-                    connected[nr][nc] = true;
-                    queue.add(new int[]{nr, nc});
-                }
-            }
-        }
-        if (DETAILED_LOGGING) System.out.println("LOG: BFS loop finished.");
-        if (DETAILED_LOGGING) System.out.println("--- updateConnections finished ---");
+        power.run();
+        if (DETAILED_LOGGING) System.out.printf("LOG: updateConnections finished, %d of %d bulbs lit.%n",
+                power.getReachedBulbs(), power.getTotalBulbs());
     }
 
-    private boolean inBounds(int r, int c) {
-        return r >= 0 && r < board.getRows() && c >= 0 && c < board.getCols();
+    /** Updates the connection information after the cell (r,c) changed. */
+    public void updateConnections(int r, int c) {
+        power.update(r, c);
+        if (DETAILED_LOGGING) System.out.printf("LOG: Cell (%d, %d) changed, %d of %d bulbs lit.%n",
+                r, c, power.getReachedBulbs(), power.getTotalBulbs());
     }
 
-
     public boolean isConnected(int row, int col) {
-        if (row < 0 || row >= board.getRows() || col < 0 || col >= board.getCols()) {
-            return false;
-        }
-        return connected[row][col];
+        return power.isReached(row, col);
     }
 
     /** true if at least one lamp is already lit */
     public boolean anyBulbLit() {
-        for (int r = 0; r < board.getRows(); r++)
-            for (int c = 0; c < board.getCols(); c++)
-                if (board.getCell(r,c).getElement() instanceof Bulb && connected[r][c])
-                    return true;
-        return false;
-    }
-
-
-    /**
-     * Auxiliary method: extract connection directions
-     * for element (Wire, Bulb, PowerSource).
-     */
-    private EnumSet<Direction> getDirections(Element elem) {
-        if (elem instanceof Wire)         return ((Wire) elem).getConnections();
-        if (elem instanceof PowerSource)  return EnumSet.allOf(Direction.class);
-        return EnumSet.noneOf(Direction.class);
-    }
-
-
-    /**
-     * Directional -> line offset.
-     */
-    private int dirRow(Direction d) {
-        switch (d) {
-            case UP: return -1;
-            case DOWN: return 1;
-            default: return 0;
-        }
-    }
-
-    /**
-     * Directional -> column offset.
-     */
-    private int dirCol(Direction d) {
-        switch (d) {
-            case LEFT: return -1;
-            case RIGHT: return 1;
-            default: return 0;
-        }
-    }
-
-    /**
-     * Returns the opposite direction.
-     */
-    private Direction oppositeDirection(Direction d) {
-        switch (d) {
-            case UP:    return Direction.DOWN;
-            case DOWN:  return Direction.UP;
-            case LEFT:  return Direction.RIGHT;
-            case RIGHT: return Direction.LEFT;
-        }
-        return d;
+        return power.getReachedBulbs() > 0;
     }
 
     /**
@@ -205,27 +129,6 @@ public class GameController {
      * @return true if all bulbs are connected, otherwise false.
      */
     public boolean isGameWon() {
-        boolean bulbFound = false;
-        for (int r = 0; r < board.getRows(); r++) {
-            for (int c = 0; c < board.getCols(); c++) {
-                Element element = board.getCell(r, c).getElement();
-                if (element instanceof Bulb) {
-                    bulbFound = true;
-                    if (!connected[r][c]) {
-                        if (DETAILED_LOGGING) System.out.printf("LOG: Win condition check failed: Bulb at (%d, %d) is not connected.\n", r, c);
-                        return false;
-                    } else {
-                        if (DETAILED_LOGGING) System.out.printf("LOG: Win condition check: Bulb at (%d, %d) is connected.\n", r, c);
-                    }
-                }
-            }
-        }
-        if (!bulbFound) {
-            if (DETAILED_LOGGING) System.out.println("LOG: Win condition check failed: No bulbs found on the board.");
-            return false;
-        }
-
-        if (DETAILED_LOGGING) System.out.println("LOG: Win condition check passed: All bulbs are connected!");
-        return true;
+        return power.getTotalBulbs() > 0 && power.getReachedBulbs() == power.getTotalBulbs();
     }
 }
\ No newline at end of file
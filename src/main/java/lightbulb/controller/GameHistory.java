@@ -56,6 +56,8 @@ public final class GameHistory {
     private final Deque<Command> redo = new ArrayDeque<>();
     private final GameLog log;
     private boolean initSaved = false;
+    // Board of the current game, undo/redo run as one batch on it
+    private Board board;
     /* ---------- /fields ---------- */
 
     public void snapshot(Board b, Difficulty difficulty) {
@@ -68,9 +70,10 @@ public final class GameHistory {
             System.err.println("ERROR: Attempted to snapshot null board or difficulty!");
             return;
         }
-        log.write(BoardSerializer.toJson(b, difficulty));
+        log.write(BoardSerializer.toCompactJson(b, difficulty));
         log.flush();
         initSaved = true;
+        board = b;
     }
 
     /** private-constructor */
@@ -101,15 +104,50 @@ public final class GameHistory {
         log.flush();
     }
 
-    public void undo() {
-        if (!undo.isEmpty()) {
-            Command c = undo.pop();
-            c.undo();
-            redo.push(c);
-        }
+    /** @return the undone command or null when there is nothing to undo */
+    public Command undo() {
+        Command c = undo.peek();
+        return undo(1) == 1 ? c : null;
+    }
+
+    /** @return the redone command or null when there is nothing to redo */
+    public Command redo() {
+        Command c = redo.peek();
+        return redo(1) == 1 ? c : null;
+    }
+
+    /** Undoes up to steps commands, the board notifies its listeners once. @return how many were undone */
+    public int undo(int steps) {
+        int[] done = {0};
+        inBatch(() -> {
+            while (done[0] < steps && !undo.isEmpty()) {
+                Command c = undo.pop();
+                c.undo();
+                redo.push(c);
+                done[0]++;
+            }
+        });
+        return done[0];
     }
 
-    public void redo() { if (!redo.isEmpty()) { Command c = redo.pop(); c.execute(); undo.push(c);} }
+    /** Redoes up to steps commands, the board notifies its listeners once. @return how many were redone */
+    public int redo(int steps) {
+        int[] done = {0};
+        inBatch(() -> {
+            while (done[0] < steps && !redo.isEmpty()) {
+                Command c = redo.pop();
+                c.execute();
+                undo.push(c);
+                done[0]++;
+            }
+        });
+        return done[0];
+    }
+
+    private void inBatch(Runnable changes) {
+        if (board != null) board.batch(changes);
+        else changes.run();
+    }
     public void close() { try { log.close(); } catch (IOException ignore) {} }
     /* ---------- /API ---------- */
 }
@@ -0,0 +1,75 @@
+// controller/HintService.java
+package lightbulb.controller;
+
+import lightbulb.model.Board;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Třída HintService počítá nápovědy mimo vlákno uživatelského rozhraní.
+ * Každý požadavek dostane snímek desky (kopii, kterou už nikdo nemění) a běží
+ * ve vlastním virtuálním vlákně. Nový požadavek předchozí výpočet přeruší
+ * a výsledek se předá zpět (typicky přes Platform.runLater) jen tehdy, je-li
+ * stále nejnovější, takže tah hráče nikdy nečeká na analýzu.
+ *
+ * @author Gleb Litvinchuk (xlitvi02)
+ */
+public final class HintService implements AutoCloseable {
+
+    private final ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor();
+    /* runs the callbacks, on the FX thread in the views */
+    private final Executor deliver;
+    private Future<?> running;
+    private long latest;
+
+    public HintService(Executor deliver) {
+        this.deliver = deliver;
+    }
+
+    /**
+     * Starts the analysis of a snapshot of the board, cancelling the one still
+     * running. onResult gets the result through the deliver executor, unless
+     * a newer request came in the meantime. Call it from the thread the board
+     * belongs to. A failed analysis is reported on stderr and delivers nothing.
+     */
+    public synchronized <T> void request(Board board, Function<Board, T> analysis, Consumer<T> onResult) {
+        if (workers.isShutdown()) return;       // closed with its view
+        Board snapshot = board.copy();
+        long id = ++latest;
+        if (running != null) running.cancel(true);
+        running = workers.submit(() -> {
+            T result;
+            try {
+                result = analysis.apply(snapshot);
+            } catch (RuntimeException e) {
+                /* submit keeps the exception in the future nobody reads, so report it here */
+                if (isLatest(id)) System.err.println("Warning: Hint analysis failed: " + e);
+                return;
+            }
+            if (Thread.currentThread().isInterrupted() || !isLatest(id)) return;
+            deliver.execute(() -> {
+                if (isLatest(id)) onResult.accept(result);
+            });
+        });
+    }
+
+    /** Drops the running analysis, its result is never delivered. */
+    public synchronized void cancel() {
+        latest++;
+        if (running != null) running.cancel(true);
+        running = null;
+    }
+
+    private synchronized boolean isLatest(long id) { return id == latest; }
+
+    @Override
+    public void close() {
+        cancel();
+        workers.shutdownNow();
+    }
+}
@@ -0,0 +1,187 @@
+// controller/LevelPool.java
+package lightbulb.controller;
+
+import lightbulb.model.Board;
+import lightbulb.model.Difficulty;
+import lightbulb.model.LevelData;
+import lightbulb.model.LevelGenerator;
+import lightbulb.model.persistence.BoardSerializer;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+
+/**
+ * Třída LevelPool drží pro každou obtížnost zásobu předem vygenerovaných
+ * úrovní, takže nová hra začne okamžitě a vlákno uživatelského rozhraní
+ * nečeká na generátor. Zásobu doplňuje na pozadí jedno vlákno s nízkou
+ * prioritou. Při ukončení se nepoužité úrovně uloží i s řešením
+ * v binárním formátu {@link BoardSerializer} a při dalším spuštění se
+ * načtou zpět.
+ *
+ * @author Gleb Litvinchuk (xlitvi02)
+ */
+public final class LevelPool implements AutoCloseable {
+
+    /** Levels kept ready for each difficulty. */
+    public static final int DEFAULT_DEPTH = 3;
+    /** Levels take() generates itself before it gives up when the pool is empty. */
+    private static final int MAX_TAKE_ATTEMPTS = 3;
+
+    private static final Path DEFAULT_DIR = Paths.get("src", "main", "resources", "maps", ".pool");
+
+    private final Path dir;
+    private final int depth;
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "level-pool");
+        t.setDaemon(true);
+        t.setPriority(Thread.MIN_PRIORITY);
+        return t;
+    });
+    /* used by the worker only, take() has its own when the pool is empty */
+    private final LevelGenerator generator = new LevelGenerator();
+    private final Map<Difficulty, Deque<Board>> ready = new EnumMap<>(Difficulty.class);
+    private final Map<Difficulty, Integer> queued = new EnumMap<>(Difficulty.class);
+    private boolean closed;
+
+    /** Pool of the given depth kept next to the maps. */
+    public LevelPool(int depth) {
+        this(DEFAULT_DIR, depth);
+    }
+
+    /** Pool keeping depth levels per difficulty, saved in dir (null to not save them). */
+    public LevelPool(Path dir, int depth) {
+        this.dir = dir;
+        this.depth = Math.max(0, depth);
+        for (Difficulty diff : Difficulty.values()) {
+            ready.put(diff, new ArrayDeque<>());
+            queued.put(diff, 0);
+        }
+        /* the saved levels first, then whatever is missing */
+        worker.execute(() -> {
+            load();
+            for (Difficulty diff : Difficulty.values()) refill(diff);
+        });
+    }
+
+    /**
+     * A ready level of the difficulty; generated right away only when the
+     * pool has run dry. Either way the pool is topped up in the background.
+     * Throws IllegalStateException if the generator fails every attempt.
+     */
+    public Board take(Difficulty diff) {
+        Board board;
+        synchronized (this) {
+            board = ready.get(diff).poll();
+        }
+        refill(diff);
+        if (board != null) return board;
+
+        LevelGenerator fallback = new LevelGenerator();
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return fallback.generate(diff);
+            } catch (IllegalStateException ex) {
+                if (attempt >= MAX_TAKE_ATTEMPTS) throw ex;
+                System.err.println("Warning: generating a " + diff + " level failed, trying again: " + ex.getMessage());
+            }
+        }
+    }
+
+    /** Levels of the difficulty ready right now. */
+    public synchronized int available(Difficulty diff) {
+        return ready.get(diff).size();
+    }
+
+    /* queues the generation of the levels the difficulty lacks */
+    private synchronized void refill(Difficulty diff) {
+        if (closed) return;
+        for (int missing = depth - ready.get(diff).size() - queued.get(diff); missing > 0; missing--) {
+            queued.merge(diff, 1, Integer::sum);
+            worker.execute(() -> {
+                /* the count above may predate the saved levels loaded since, keep at most depth */
+                synchronized (this) {
+                    if (ready.get(diff).size() >= depth) {
+                        queued.merge(diff, -1, Integer::sum);
+                        return;
+                    }
+                }
+                Board board = null;
+                try {
+                    board = generator.generate(diff);
+                } catch (IllegalStateException ex) {
+                    /* the next take() queues it again */
+                    System.err.println("Warning: the level pool couldn't generate a " + diff + " level: " + ex.getMessage());
+                }
+                synchronized (this) {
+                    queued.merge(diff, -1, Integer::sum);
+                    if (!closed && board != null && ready.get(diff).size() < depth) ready.get(diff).add(board);
+                }
+            });
+        }
+    }
+
+    /** Stops the generation and saves the ready levels for the next start. */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+        }
+        worker.shutdownNow();
+        save();
+    }
+
+    /* ---------- persistence ---------- */
+
+    private synchronized void save() {
+        if (dir == null) return;
+        try {
+            Files.createDirectories(dir);
+            clear();
+            for (Map.Entry<Difficulty, Deque<Board>> e : ready.entrySet()) {
+                int i = 0;
+                for (Board board : e.getValue()) {
+                    Path file = dir.resolve(String.format("%s-%02d.lvl", e.getKey().name().toLowerCase(), i++));
+                    Files.write(file, BoardSerializer.toBinary(board, e.getKey(), null, true));
+                }
+            }
+        } catch (IOException ex) {
+            System.err.println("Warning: can't save the level pool to " + dir + ": " + ex.getMessage());
+        }
+    }
+
+    /* loads the saved levels and deletes them, a level is never handed out twice */
+    private void load() {
+        if (dir == null || !Files.isDirectory(dir)) return;
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files.filter(f -> f.toString().endsWith(".lvl"))::iterator) {
+                try {
+                    LevelData level = BoardSerializer.fromBinary(Files.readAllBytes(file));
+                    synchronized (this) {
+                        Deque<Board> boards = ready.get(level.difficulty());
+                        if (boards.size() < depth) boards.add(level.board());
+                    }
+                } catch (RuntimeException ex) {
+                    System.err.println("Warning: skipping pooled level " + file + ": " + ex.getMessage());
+                }
+            }
+            clear();
+        } catch (IOException ex) {
+            System.err.println("Warning: can't load the level pool from " + dir + ": " + ex.getMessage());
+        }
+    }
+
+    private void clear() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files.filter(f -> f.toString().matches(".*\\.(json|lvl)"))::iterator)
+                Files.deleteIfExists(file);
+        }
+    }
+}
@@ -1,6 +1,9 @@
 package lightbulb.controller.replay;
 
 import com.google.gson.*;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
 import lightbulb.controller.GameHistory;
 import lightbulb.model.command.Command;
 import lightbulb.model.persistence.BoardSerializer;
@@ -36,7 +39,32 @@ public final class GameReplayer {
         currentTimerValue = initialTimerValue;
     }
 
+    /**
+     * Loads the log with one streaming reader, building neither lines nor
+     * JSON trees. Only when a line isn't valid JSON is the log read again
+     * line by line, skipping the broken lines as before.
+     */
     public static GameReplayer load(Path path) throws IOException {
+        try (JsonReader in = new JsonReader(Files.newBufferedReader(path))) {
+            in.setStrictness(Strictness.LENIENT);     // one JSON object per line
+            if (in.peek() == JsonToken.END_DOCUMENT) throw new IOException("Log file is empty: " + path);
+            LevelData levelData = BoardSerializer.fromJson(in);
+            GameReplayer rep = new GameReplayer(levelData.board(), levelData.difficulty());
+
+            List<Command> commandsInOrder = new ArrayList<>();
+            for (int line = 2; in.peek() != JsonToken.END_DOCUMENT; line++) {
+                RotateReplayCmd cmd = rep.readCommand(in, path, line);
+                if (cmd != null) commandsInOrder.add(cmd);
+            }
+            rep.setFuture(commandsInOrder);
+            return rep;
+        } catch (MalformedJsonException | EOFException | JsonSyntaxException | IllegalStateException | NumberFormatException ex) {
+            return loadByLines(path);
+        }
+    }
+
+    /* the slow path for damaged logs: every line parsed on its own */
+    private static GameReplayer loadByLines(Path path) throws IOException {
         List<String> lines = Files.readAllLines(path);
         if (lines.isEmpty()) {
             throw new IOException("Log file is empty: " + path);
@@ -45,37 +73,57 @@ public final class GameReplayer {
         LevelData levelData = BoardSerializer.fromJson(lines.getFirst());
         GameReplayer rep = new GameReplayer(levelData.board(), levelData.difficulty());
 
-        Gson g = new Gson();
         List<Command> commandsInOrder = new ArrayList<>();
         for (int i = 1; i < lines.size(); i++) {
-            try {
-                JsonObject jo = g.fromJson(lines.get(i), JsonObject.class);
-                if (!"rotate".equals(jo.get("type").getAsString())) continue;
-
-                int timerVal = rep.initialTimerValue;
-                if (jo.has("timer")) {
-                    timerVal = jo.get("timer").getAsInt();
-                } else {
-                    System.err.println("Warning: Log line " + (i+1) + " missing 'timer' field.");
-                }
-
-                commandsInOrder.add(
-                        new RotateReplayCmd(rep.board,
-                                jo.get("r").getAsInt(),
-                                jo.get("c").getAsInt(),
-                                jo.get("prev").getAsInt(),
-                                jo.get("next").getAsInt(),
-                                timerVal));
-            } catch (JsonSyntaxException | IllegalStateException | NullPointerException jsonEx) {
+            try (JsonReader in = new JsonReader(new StringReader(lines.get(i)))) {
+                RotateReplayCmd cmd = rep.readCommand(in, path, i + 1);
+                if (cmd != null) commandsInOrder.add(cmd);
+            } catch (IOException | IllegalStateException | JsonSyntaxException | NumberFormatException jsonEx) {
                 System.err.println("Warning: Skipping invalid line in log file " + path + " at line " + (i+1) + ": " + lines.get(i) + " - Error: " + jsonEx.getMessage());
             }
         }
-        rep.future.clear();
-        for (int i = commandsInOrder.size() - 1; i >= 0; i--) {
-            rep.future.push(commandsInOrder.get(i));
+        rep.setFuture(commandsInOrder);
+        return rep;
+    }
+
+    /* one log line, null if it isn't a complete rotation */
+    private RotateReplayCmd readCommand(JsonReader in, Path path, int line) throws IOException {
+        String type = null;
+        int r = -1, c = -1, prev = -1, next = -1;
+        int timerVal = initialTimerValue;
+        boolean hasTimer = false;
+
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "type"  -> type = in.nextString();
+                case "r"     -> r = in.nextInt();
+                case "c"     -> c = in.nextInt();
+                case "prev"  -> prev = in.nextInt();
+                case "next"  -> next = in.nextInt();
+                case "timer" -> { timerVal = in.nextInt(); hasTimer = true; }
+                default      -> in.skipValue();
+            }
         }
+        in.endObject();
 
-        return rep;
+        if (!"rotate".equals(type)) {
+            if (type == null) System.err.println("Warning: Skipping invalid line in log file " + path + " at line " + line + " - Error: missing 'type'");
+            return null;
+        }
+        if (r < 0 || c < 0 || prev < 0 || next < 0) {
+            System.err.println("Warning: Skipping invalid line in log file " + path + " at line " + line + " - Error: incomplete rotation");
+            return null;
+        }
+        if (!hasTimer) System.err.println("Warning: Log line " + line + " missing 'timer' field.");
+        return new RotateReplayCmd(board, r, c, prev, next, timerVal);
+    }
+
+    private void setFuture(List<Command> commandsInOrder) {
+        future.clear();
+        for (int i = commandsInOrder.size() - 1; i >= 0; i--) {
+            future.push(commandsInOrder.get(i));
+        }
     }
 
     public Difficulty getDifficulty() {
@@ -91,12 +139,10 @@ public final class GameReplayer {
             replayCmd.execute();
             this.currentTimerValue = replayCmd.getTimerValue();
             past.push(replayCmd);
-            board.fireUpdateExtern();
             return true;
         } else {
             cmd.execute();
             past.push(cmd);
-            board.fireUpdateExtern();
             return true;
         }
     }
@@ -114,16 +160,31 @@ public final class GameReplayer {
             } else {
                 this.currentTimerValue = this.initialTimerValue;
             }
-            board.fireUpdateExtern();
             return true;
         } else {
             cmd.undo();
             future.push(cmd);
-            board.fireUpdateExtern();
             return true;
         }
     }
 
+    /**
+     * Jumps to the state after the given number of moves. All the rotations
+     * run as one batch, so the board notifies its listeners only once.
+     */
+    public void seek(int position){
+        board.batch(() -> {
+            while (past.size() < position && stepForward()) { }
+            while (past.size() > position && stepBack()) { }
+        });
+    }
+
+    /** Number of moves already replayed. */
+    public int getPosition(){ return past.size(); }
+
+    /** Number of moves in the whole record. */
+    public int getLength(){ return past.size() + future.size(); }
+
     public void resumePlay(){
         future.clear();
         GameHistory.reset();
@@ -26,7 +26,7 @@ public class RotateReplayCmd implements Command {
     @Override public void undo()    { apply(prev); }
 
     private void apply(int angle){
-        board.getCell(r,c).setRotation(angle);
+        board.rotateCellTo(r, c, angle);
     }
 
     public int getTimerValue() {
@@ -0,0 +1,206 @@
+package lightbulb.model;
+
+/**
+ * Třída BitboardFlood počítá napájení desky po celých řádcích najednou.
+ * Každý řádek je uložen jako pole 64bitových slov a pro každý směr se
+ * připraví bitová rovina vodivých hran. Proud se pak šíří posuny a logickými
+ * operacemi nad celými slovy, dokud se výsledek nepřestane měnit.
+ * Výsledek je stejný jako u {@link PowerFlood} v režimu POWERED, ale hodí se
+ * hlavně pro hromadnou kontrolu velkého množství vygenerovaných desek.
+ *
+ * @author Gleb Litvinchuk (xlitvi02)
+ */
+public final class BitboardFlood {
+
+    /* sides a packed cell passes current out through / takes it in from; bulbs only take it through the lead */
+    private static final int[] OUT = new int[Board.PACKED_CODES];
+    private static final int[] IN  = new int[Board.PACKED_CODES];
+    static {
+        for (int code = 0; code < Board.PACKED_CODES; code++) {
+            int kind = code & 0b111, deg = (code >> 3) * 90;
+            OUT[code] = Board.maskOf(kind, deg);
+            IN[code]  = kind == Board.BULB ? 1 << (code >> 3) : OUT[code];
+        }
+    }
+
+    private final Board board;
+    private final int rows, cols, words;
+
+    /* conducting edges: bit c of row r is set if current passes across the edge */
+    private final long[][] east;     // (r,c) -> (r,c+1)
+    private final long[][] west;     // (r,c) -> (r,c-1)
+    private final long[][] south;    // (r,c) -> (r+1,c)
+    private final long[][] north;    // (r,c) -> (r-1,c)
+    private final long[][] reached;
+    /* per row scratch: sides the cells accept current from */
+    private final long[] acceptsL, acceptsR, acceptsD;
+    private final int[] rowQueue;
+    private final boolean[] queued;
+    private int reachedBulbs, totalBulbs;
+
+    public BitboardFlood(Board board) {
+        this.board = board;
+        this.rows  = board.getRows();
+        this.cols  = board.getCols();
+        this.words = (cols + 63) >>> 6;
+        east    = new long[rows][words];
+        west    = new long[rows][words];
+        south   = new long[rows][words];
+        north   = new long[rows][words];
+        reached = new long[rows][words];
+        acceptsL = new long[words];
+        acceptsR = new long[words];
+        acceptsD = new long[words];
+        rowQueue = new int[rows];
+        queued   = new boolean[rows];
+    }
+
+    /** Full pass from the power source. */
+    public void run() {
+        buildPlanes();
+        reachedBulbs = 0;
+        totalBulbs = board.getBulbCount();
+        int src = board.getSourceIndex();
+        if (src == -1) return;
+        reached[src / cols][(src % cols) >>> 6] |= 1L << (src % cols);
+
+        /* rows whose neighbours may gain current, processed until nothing changes */
+        int head = 0, size = 0;
+        closeRow(src / cols);
+        size = enqueueAround(src / cols, head, size);
+        while (size > 0) {
+            int r = rowQueue[head];
+            head = (head + 1) % rows;
+            size--;
+            queued[r] = false;
+
+            boolean changed = false;
+            if (r > 0)        changed |= pull(reached[r], reached[r - 1], south[r - 1]);
+            if (r < rows - 1) changed |= pull(reached[r], reached[r + 1], north[r + 1]);
+            if (!changed) continue;
+            closeRow(r);
+            size = enqueueAround(r, head, size);
+        }
+
+        for (int i = 0; i < totalBulbs; i++) {
+            int idx = board.getBulbIndex(i);
+            if (isReached(idx / cols, idx % cols)) reachedBulbs++;
+        }
+    }
+
+    /** Fills the edge planes from the packed board. */
+    private void buildPlanes() {
+        for (int r = 0; r < rows; r++) {
+            for (int w = 0; w < words; w++) {
+                long oU = 0, oR = 0, oD = 0, oL = 0, iU = 0, iR = 0, iD = 0, iL = 0;
+                int base = r * cols + (w << 6), end = Math.min(64, cols - (w << 6));
+                for (int k = 0; k < end; k++) {
+                    int code = board.packedAt(base + k);
+                    if (code == 0) continue;
+                    long o = OUT[code], i = IN[code];
+                    oU |= (o & 1) << k;        iU |= (i & 1) << k;
+                    oR |= ((o >> 1) & 1) << k; iR |= ((i >> 1) & 1) << k;
+                    oD |= ((o >> 2) & 1) << k; iD |= ((i >> 2) & 1) << k;
+                    oL |= ((o >> 3) & 1) << k; iL |= ((i >> 3) & 1) << k;
+                }
+                east[r][w] = oR;    // neighbours are applied below
+                west[r][w] = oL;
+                north[r][w] = oU;
+                south[r][w] = oD;
+                acceptsL[w] = iL;
+                acceptsR[w] = iR;
+                reached[r][w] = 0;
+
+                /* the row above is complete, its downward edges and our upward ones can be closed */
+                if (r > 0) {
+                    north[r][w] &= acceptsD[w];
+                    south[r - 1][w] &= iU;
+                }
+                acceptsD[w] = iD;
+            }
+            if (r == 0) for (int w = 0; w < words; w++) north[0][w] = 0;
+
+            /* horizontal edges need the neighbour to accept from the opposite side */
+            for (int w = 0; w < words; w++) {
+                long nextL = (acceptsL[w] >>> 1) | (w + 1 < words ? acceptsL[w + 1] << 63 : 0);
+                long prevR = (acceptsR[w] << 1)  | (w > 0 ? acceptsR[w - 1] >>> 63 : 0);
+                east[r][w] &= nextL;
+                west[r][w] &= prevR;
+            }
+        }
+        for (int w = 0; w < words; w++) south[rows - 1][w] = 0;
+    }
+
+    /** row |= from & edges, true if the row got new cells */
+    private boolean pull(long[] row, long[] from, long[] edges) {
+        long gained = 0;
+        for (int w = 0; w < words; w++) {
+            long add = from[w] & edges[w] & ~row[w];
+            row[w] |= add;
+            gained |= add;
+        }
+        return gained != 0;
+    }
+
+    /** Puts the rows above and below r into the ring queue, returns its new size. */
+    private int enqueueAround(int r, int head, int size) {
+        if (r > 0 && !queued[r - 1]) {
+            rowQueue[(head + size++) % rows] = r - 1;
+            queued[r - 1] = true;
+        }
+        if (r < rows - 1 && !queued[r + 1]) {
+            rowQueue[(head + size++) % rows] = r + 1;
+            queued[r + 1] = true;
+        }
+        return size;
+    }
+
+    /**
+     * Spreads current inside one row: one rightward and one leftward fill
+     * are enough, since a cell reached from the right only leads back.
+     */
+    private void closeRow(int r) {
+        long[] row = reached[r];
+
+        /* rightward: runs of east edges behave like a carry chain */
+        long carry = 0;
+        for (int w = 0; w < words; w++) {
+            long link = east[r][w], seed = row[w] & link;
+            long sum = link + seed + carry;
+            carry = Long.compareUnsigned(sum, link) < 0 || (sum == link && (seed | carry) != 0) ? 1 : 0;
+            long filled = (sum ^ link) | row[w];
+            row[w] = filled;
+        }
+
+        /* leftward: the same trick on bit reversed words, highest word first */
+        carry = 0;
+        for (int w = words - 1; w >= 0; w--) {
+            long link = Long.reverse(west[r][w]), cur = Long.reverse(row[w]);
+            long seed = cur & link;
+            long sum = link + seed + carry;
+            carry = Long.compareUnsigned(sum, link) < 0 || (sum == link && (seed | carry) != 0) ? 1 : 0;
+            long filled = Long.reverse((sum ^ link) | cur);
+            row[w] = filled;
+        }
+    }
+
+    public boolean isReached(int r, int c) {
+        if (r < 0 || r >= rows || c < 0 || c >= cols) return false;
+        return (reached[r][c >>> 6] & (1L << c)) != 0;
+    }
+
+    public int getReachedBulbs() { return reachedBulbs; }
+    public int getTotalBulbs()   { return totalBulbs; }
+
+    /** true if there is at least one bulb and all of them are lit. */
+    public boolean allBulbsLit() { return totalBulbs > 0 && reachedBulbs == totalBulbs; }
+
+    /** Result as a [rows][cols] matrix, same shape as BoardTools.computePowered(). */
+    public boolean[][] toMatrix() {
+        boolean[][] out = new boolean[rows][cols];
+        for (int r = 0; r < rows; r++)
+            for (int c = 0; c < cols; c++)
+                out[r][c] = (reached[r][c >>> 6] & (1L << c)) != 0;
+        return out;
+    }
+}
@@ -1,132 +1,435 @@
 package lightbulb.model;
 
 import java.util.ArrayList;
-import java.util.List;
-
 import java.util.Arrays;
-import java.util.Queue;
-import java.util.ArrayDeque;
+import java.util.List;
 
 /**
- * Třída Board reprezentuje herní desku jako dvourozměrné pole buněk (Cell).
- * Uchovává stav jednotlivých buněk, spravuje posluchače změn na desce,
- * pamatuje si řešení úrovně a informace o počtu provedených tahů.
+ * Třída Board reprezentuje herní desku. Stav buněk je uložen v jednom
+ * plochém poli bajtů (buňka (r,c) je na indexu r*cols+c, bity 0-2 nesou druh
+ * prvku a bity 3-4 otočení v násobcích 90°). Objekty Cell a Element
+ * jsou jen pohledy na toto pole a vznikají až tehdy, když o ně požádá
+ * uživatelské rozhraní. Deska spravuje posluchače změn (více změn lze
+ * sloučit do jedné dávky s jediným oznámením), pamatuje si řešení úrovně
+ * a informace o počtu provedených tahů.
  *
  * @author Gleb Litvinchuk (xlitvi02)
  */
 public class Board {
 
+    /* element kinds stored in the packed cell; wires are WIRE + WireType.ordinal() */
+    public static final int EMPTY  = 0;
+    public static final int SOURCE = 1;
+    public static final int BULB   = 2;
+    public static final int WIRE   = 3;
+
+    private static final int KIND_BITS = 0b111;
+    private static final int ROT_SHIFT = 3;
+    private static final WireType[] WIRE_TYPES = WireType.values();
+
+    /** Number of distinct packed cell values. */
+    static final int PACKED_CODES = 1 << (ROT_SHIFT + 2);
+
+    /** Connection mask for every possible packed cell. */
+    private static final int[] MASK = new int[PACKED_CODES];
+    static {
+        for (int code = 0; code < MASK.length; code++)
+            MASK[code] = maskOf(code & KIND_BITS, (code >> ROT_SHIFT) * 90);
+    }
+
     private final List<BoardListener> listeners = new ArrayList<>();
     public  void addListener   (BoardListener l) { listeners.add(l); }
     public  void removeListener(BoardListener l) { listeners.remove(l); }
     private void fireUpdate() {
+        if (batchDepth > 0) { batchWhole = true; return; }
         for (BoardListener l : listeners) l.onBoardChanged(this);
     }
 
+    private void fireChange(int idx, int oldDeg) {
+        if (listeners.isEmpty() || batchDepth > 0) return;
+        List<BoardChange> changes = List.of(new BoardChange(idx / cols, idx % cols, oldDeg, rotationAt(idx)));
+        for (BoardListener l : listeners) l.onCellsChanged(this, changes);
+    }
+
     public void fireUpdateExtern() { fireUpdate(); }
 
+    /* ------------ batch updates ------------- */
+
+    private int batchDepth;
+    private boolean batchWhole;
+    /* packed state of every cell touched in the batch before its first change, -1 if untouched */
+    private byte[] batchOld;
+    private int[]  batchCells;
+    private int    batchLen;
+
+    /**
+     * Runs the changes as one batch: listeners hear nothing while it runs and get
+     * a single notification with the merged changes at the end. Batches can nest,
+     * the outermost one notifies.
+     */
+    public void batch(Runnable changes) {
+        batchDepth++;
+        try {
+            changes.run();
+        } finally {
+            if (--batchDepth == 0) commitBatch();
+        }
+    }
+
+    /** Remembers the cell before its first change in the running batch. */
+    private void touch(int idx) {
+        if (batchDepth == 0 || listeners.isEmpty()) return;
+        if (batchOld == null) {
+            batchOld = new byte[rows * cols];
+            batchCells = new int[rows * cols];
+            Arrays.fill(batchOld, (byte) -1);
+        }
+        if (batchOld[idx] != -1) return;
+        batchOld[idx] = cells[idx];
+        batchCells[batchLen++] = idx;
+    }
+
+    private void commitBatch() {
+        List<BoardChange> changes = new ArrayList<>();
+        for (int i = 0; i < batchLen; i++) {
+            int idx = batchCells[i], old = batchOld[idx];
+            batchOld[idx] = -1;
+            if (old != cells[idx])    // turned back or replaced by the same element
+                changes.add(new BoardChange(idx / cols, idx % cols, (old >> ROT_SHIFT) * 90, rotationAt(idx)));
+        }
+        batchLen = 0;
+
+        if (batchWhole) {
+            batchWhole = false;
+            fireUpdate();
+        } else if (!changes.isEmpty()) {
+            List<BoardChange> merged = List.copyOf(changes);
+            for (BoardListener l : listeners) l.onCellsChanged(this, merged);
+        }
+    }
+
     private final int rows, cols;
-    private final Cell[][] cells;
-    private final int[][]   solution;
-    private final boolean[][] vital;
-    private final int[][] made;
+    private final byte[] cells;
+    private final byte[] solution;
+    private boolean[]    vital;
+    private boolean      solved;        // a solution was remembered
+    private final int[]  made;
+
+    /* where the special elements stand, kept up to date by placeAt() */
+    private int[] sources = new int[1];
+    private int   sourceCount;
+    private int[] bulbs   = new int[8];
+    private int   bulbCount;
+
+    /* views for the UI, allocated on first use */
+    private Cell[]    cellViews;
+    private Element[] elementViews;
 
     public Board(int rows, int cols) {
         this.rows = rows;
         this.cols = cols;
-        cells = new Cell[rows][cols];
-        for (int r = 0; r < rows; r++)
-            for (int c = 0; c < cols; c++)
-                cells[r][c] = new Cell(null);
-        solution = new int[rows][cols];
-        vital    = new boolean[rows][cols];
-        made = new int[rows][cols];
+        cells    = new byte[rows * cols];
+        solution = new byte[rows * cols];
+        vital    = new boolean[rows * cols];
+        made     = new int[rows * cols];
+    }
+
+    /**
+     * Copy of the elements, angles, remembered solution and turn counts without
+     * the listeners; a snapshot another thread can read while this board changes.
+     */
+    public Board copy() {
+        Board b = new Board(rows, cols);
+        for (int idx = 0; idx < cells.length; idx++)
+            if (cells[idx] != 0) b.placeAt(idx, kindAt(idx), rotationAt(idx));
+        System.arraycopy(solution, 0, b.solution, 0, solution.length);
+        System.arraycopy(made, 0, b.made, 0, made.length);
+        b.vital = vital.clone();
+        b.solved = solved;
+        return b;
     }
 
     public int  getRows()             { return rows; }
     public int  getCols()             { return cols; }
-    public Cell getCell(int r,int c)  { return cells[r][c]; }
+
+    public Cell getCell(int r,int c)  {
+        if (cellViews == null) cellViews = new Cell[rows * cols];
+        int idx = r * cols + c;
+        Cell cell = cellViews[idx];
+        if (cell == null) cellViews[idx] = cell = new Cell(this, idx);
+        return cell;
+    }
 
     public void setCell(int r, int c, Cell cell) {
-        cells[r][c] = cell;
-        fireUpdate();
+        replaceAt(r * cols + c, cell.getElement());
     }
 
     /** Turns the cage and notifies listeners. */
     public void rotateCell(int r, int c) {
-        cells[r][c].rotate();
-        fireUpdate();
+        int idx = r * cols + c, old = rotationAt(idx);
+        touch(idx);
+        rotateAt(idx);
+        fireChange(idx, old);
+    }
+
+    /** Turns the cell straight to the angle; listeners get one change however many steps it takes. */
+    public void rotateCellTo(int r, int c, int deg) {
+        turnTo(r * cols + c, deg);
+    }
+
+    void turnTo(int idx, int deg) {
+        int old = rotationAt(idx);
+        touch(idx);
+        setRotationAt(idx, deg);
+        if (rotationAt(idx) != old) fireChange(idx, old);
+    }
+
+    /** Puts the element into the cell and notifies listeners. */
+    void replaceAt(int idx, Element el) {
+        int old = rotationAt(idx);
+        touch(idx);
+        putElement(idx, el);
+        fireChange(idx, old);
+    }
+
+    /* ------------ packed access (index = r*cols+c) ------------- */
+
+    /** Element kind at the cell: EMPTY, SOURCE, BULB or WIRE + WireType.ordinal(). */
+    public int kindAt(int idx)      { return cells[idx] & KIND_BITS; }
+
+    /** Current angle (0/90/180/270). */
+    public int rotationAt(int idx)  { return (cells[idx] >> ROT_SHIFT) * 90; }
+
+    /** Connected sides after taking rotation; bulbs pass nothing, so 0. */
+    public int maskAt(int idx)      { return MASK[cells[idx]]; }
+
+    /** Mask with the single lead side of a bulb, 0 for other cells. */
+    public int leadAt(int idx) {
+        return kindAt(idx) == BULB ? 1 << (cells[idx] >> ROT_SHIFT) : 0;
+    }
+
+    /** Raw packed cell (kind | quarter turns << 3), 0..31. */
+    int packedAt(int idx)           { return cells[idx]; }
+
+    /** Sets the angle without notifying listeners; empty cells stay at 0. */
+    public void setRotationAt(int idx, int deg) {
+        int kind = kindAt(idx);
+        if (kind == EMPTY) return;
+        cells[idx] = encode(kind, deg);
+    }
+
+    /** Turns the element 90° clockwise without notifying listeners. */
+    public void rotateAt(int idx) {
+        setRotationAt(idx, rotationAt(idx) + 90);
+    }
+
+    /** Puts an element of the given kind without notifying listeners. */
+    public void placeAt(int idx, int kind, int deg) {
+        detachView(idx);
+        int old = kindAt(idx);
+        cells[idx] = kind == EMPTY ? 0 : encode(kind, deg);
+        if (old != kind) {
+            unindex(idx, old);
+            index(idx, kind);
+        }
     }
 
+    /* ------------ positions of the source and the bulbs ------------- */
+
+    /** Index of the power source or -1; with more sources the one placed first. */
+    public int getSourceIndex()       { return sourceCount > 0 ? sources[0] : -1; }
+
+    public int getBulbCount()         { return bulbCount; }
+
+    /** Index of the i-th bulb (0 <= i < getBulbCount()), in no particular order. */
+    public int getBulbIndex(int i)    { return bulbs[i]; }
+
+    private void index(int idx, int kind) {
+        if (kind == SOURCE) {
+            if (sourceCount == sources.length) sources = Arrays.copyOf(sources, sourceCount * 2);
+            sources[sourceCount++] = idx;
+        } else if (kind == BULB) {
+            if (bulbCount == bulbs.length) bulbs = Arrays.copyOf(bulbs, bulbCount * 2);
+            bulbs[bulbCount++] = idx;
+        }
+    }
+
+    private void unindex(int idx, int kind) {
+        if (kind == SOURCE) sourceCount = remove(sources, sourceCount, idx);
+        else if (kind == BULB) bulbCount = remove(bulbs, bulbCount, idx);
+    }
+
+    /** Removes idx from list[0..len), keeping the order; returns the new length. */
+    private static int remove(int[] list, int len, int idx) {
+        for (int i = 0; i < len; i++)
+            if (list[i] == idx) {
+                System.arraycopy(list, i + 1, list, i, len - i - 1);
+                return len - 1;
+            }
+        return len;
+    }
+
+    /** Connection mask the element kind would have in the given rotation. */
+    public static int maskOf(int kind, int deg) {
+        if (kind == SOURCE) return Direction.ALL;
+        if (kind >= WIRE && kind < WIRE + WIRE_TYPES.length)
+            return WIRE_TYPES[kind - WIRE].mask(((deg % 360) + 360) % 360);
+        return 0;
+    }
+
+    public static int wireKind(WireType type) { return WIRE + type.ordinal(); }
+
+    private static byte encode(int kind, int deg) {
+        int q = (((deg % 360) + 360) % 360) / 90;
+        return (byte) (kind | (q << ROT_SHIFT));
+    }
+
+    /* ------------ element views ------------- */
+
+    /** Element standing in the cell, created on first request and kept in sync with the packed cell. */
+    Element elementAt(int idx) {
+        int kind = kindAt(idx);
+        if (kind == EMPTY) return null;
+        if (elementViews == null) elementViews = new Element[rows * cols];
+        Element e = elementViews[idx];
+        if (e == null) {
+            e = switch (kind) {
+                case SOURCE -> new PowerSource();
+                case BULB   -> new Bulb(Direction.UP);
+                default     -> new Wire(WIRE_TYPES[kind - WIRE]);
+            };
+            e.attach(this, idx);
+            elementViews[idx] = e;
+        }
+        return e;
+    }
+
+    /** Stores the element into the cell; a free standing element becomes the view of the cell. */
+    void putElement(int idx, Element el) {
+        if (el == null) {
+            placeAt(idx, EMPTY, 0);
+            return;
+        }
+        int kind, deg = el.getRotation();
+        /* only views leading UP at 0° can follow the packed cell */
+        boolean adopt = !el.isPlaced() &&
+                !(el instanceof Bulb b && b.getLead() != Direction.UP.rotate(deg));
+        if (el instanceof PowerSource)  kind = SOURCE;
+        else if (el instanceof Wire w)  kind = wireKind(w.getWireType());
+        else if (el instanceof Bulb b) {
+            kind = BULB;
+            deg = b.getLead().ordinal() * 90;    // views always lead UP at 0°
+        }
+        else throw new IllegalArgumentException("Unknown element: " + el);
+
+        placeAt(idx, kind, deg);
+        if (adopt) {
+            if (elementViews == null) elementViews = new Element[rows * cols];
+            el.attach(this, idx);
+            elementViews[idx] = el;
+        }
+    }
+
+    private void detachView(int idx) {
+        if (elementViews == null || elementViews[idx] == null) return;
+        elementViews[idx].detach();
+        elementViews[idx] = null;
+    }
+
+    /* ------------ solution & statistics ------------- */
+
     public int[][] getRemainingTurnsMatrix() {
         int[][] out = new int[rows][cols];
         for (int r=0;r<rows;r++)
             for (int c=0;c<cols;c++)
-                out[r][c] = cells[r][c].getRemainingTurns(this,r,c);
+                out[r][c] = getRemainingTurns(r, c);
         return out;
     }
 
+    /** Clockwise turns still needed to bring the cell to the remembered solution. */
+    public int getRemainingTurns(int r, int c) {
+        int idx = r * cols + c;
+        if (!vital[idx]) return 0;
+        return turnsTo(idx, getSolutionRotation(r, c));
+    }
+
+    /** Clockwise quarter turns that bring the cell to the angle need, 0 for elements that don't spin. */
+    public int turnsTo(int idx, int need) {
+        /* elements that don't spin */
+        int kind = kindAt(idx);
+        if (kind == EMPTY || kind == BULB || kind == SOURCE || kind == wireKind(WireType.X))
+            return 0;
+
+        int curr = rotationAt(idx);
+
+        /* I-wire is 180° symmetrical */
+        if (kind == wireKind(WireType.I) && (need % 180) == (curr % 180)) return 0;
+
+        int diff = (need - curr + 360) % 360;
+        return diff / 90;
+    }
 
     public void rememberSolution() {
-        for (int r=0;r<rows;r++)
-            for (int c=0;c<cols;c++)
-                solution[r][c] = cells[r][c].getRotation();
+        for (int i = 0; i < cells.length; i++)
+            solution[i] = (byte) (cells[i] >> ROT_SHIFT);
         computeVital();
+        solved = true;
     }
 
-    public boolean isVital(int r,int c){ return vital[r][c]; }
+    /** Remembers a solution found by a solver, angles and vital flags indexed by r*cols+c. */
+    public void rememberSolution(int[] rotations, boolean[] vitalCells) {
+        for (int i = 0; i < cells.length; i++)
+            solution[i] = (byte) ((((rotations[i] % 360) + 360) % 360) / 90);
+        vital = vitalCells.clone();
+        solved = true;
+    }
+
+    /** False for a level loaded without a solution until one is remembered. */
+    public boolean hasSolution() { return solved; }
+
+    public boolean isVital(int r,int c){ return vital[r * cols + c]; }
 
-    public int getSolutionRotation(int r,int c) { return solution[r][c]; }
+    public int getSolutionRotation(int r,int c) { return solution[r * cols + c] * 90; }
 
-    public void incMade(int r,int c){ made[r][c]++; }
-    public int  getMade(int r,int c){ return made[r][c]; }
-    public int[][] getMadeMatrix(){ return made; }
+    public void incMade(int r,int c){ made[r * cols + c]++; }
+    public int  getMade(int r,int c){ return made[r * cols + c]; }
+    public int[][] getMadeMatrix(){
+        int[][] out = new int[rows][cols];
+        for (int r = 0; r < rows; r++)
+            System.arraycopy(made, r * cols, out[r], 0, cols);
+        return out;
+    }
 
-    /* ------------ private BFS by solved field ------------- */
+    /* ------------ connectivity of the solved field ------------- */
     private void computeVital(){
-        for (boolean[] row : vital) Arrays.fill(row,false);
-
-        int srcR=-1,srcC=-1;
-        for(int r=0;r<rows;r++)
-            for(int c=0;c<cols;c++)
-                if(cells[r][c].getElement() instanceof PowerSource){
-                    srcR=r; srcC=c;
-                }
-        if(srcR==-1) return;
-
-        Queue<int[]> q = new ArrayDeque<>();
-        vital[srcR][srcC]=true; q.add(new int[]{srcR,srcC});
-
-        while(!q.isEmpty()){
-            int[] p=q.poll(); int r=p[0], c=p[1];
-            Element e = cells[r][c].getElement();
-            if(e==null) continue;
-            for(Direction d : e.getConnections()){
-                int nr=r+d.dRow(), nc=c+d.dCol();
-                if(nr<0||nr>=rows||nc<0||nc>=cols) continue;
-                Element n = cells[nr][nc].getElement();
-                if(n==null || !n.getConnections().contains(d.opposite())) continue;
-                if(!vital[nr][nc]){
-                    vital[nr][nc]=true;
-                    q.add(new int[]{nr,nc});
-                }
-            }
-        }
+        PowerFlood flood = new PowerFlood(this, PowerFlood.Mode.VITAL);
+        flood.run();
+        vital = flood.reached();
     }
-    /* ------------ /BFS ------------- */
 
     public void placeElement(int r, int c, String token) {
-        Element el = switch (token) {
-            case "Bulb"         -> new Bulb(Direction.UP);
-            case "PowerSource"  -> new PowerSource();
-            case "Wire_L"       -> new Wire(WireType.L);
-            case "Wire_I"       -> new Wire(WireType.I);
-            case "Wire_T"       -> new Wire(WireType.T);
-            case "Wire_X"       -> new Wire(WireType.X);
-            case "EMPTY"        -> null;
+        int kind = switch (token) {
+            case "Bulb"         -> BULB;
+            case "PowerSource"  -> SOURCE;
+            case "Wire_L"       -> wireKind(WireType.L);
+            case "Wire_I"       -> wireKind(WireType.I);
+            case "Wire_T"       -> wireKind(WireType.T);
+            case "Wire_X"       -> wireKind(WireType.X);
+            case "EMPTY"        -> EMPTY;
             default -> throw new IllegalArgumentException("Unknown element: " + token);
         };
-        cells[r][c].setElement(el);
+        placeAt(r * cols + c, kind, 0);
+    }
+
+    /** Token used by placeElement() for the element in the cell. */
+    public String tokenAt(int r, int c) {
+        int kind = kindAt(r * cols + c);
+        return switch (kind) {
+            case EMPTY  -> "EMPTY";
+            case SOURCE -> "PowerSource";
+            case BULB   -> "Bulb";
+            default     -> "Wire_" + WIRE_TYPES[kind - WIRE];
+        };
     }
 
     @Override
@@ -134,15 +437,15 @@ public class Board {
         StringBuilder sb = new StringBuilder();
         for (int r = 0; r < rows; r++) {
             for (int c = 0; c < cols; c++)
-                sb.append(cells[r][c]).append(' ');
+                sb.append(getCell(r, c)).append(' ');
             sb.append('\n');
         }
         return sb.toString();
     }
 
     public void decMade(int r,int c){
-        if (made[r][c] > 0) {
-            made[r][c]--;
+        if (made[r * cols + c] > 0) {
+            made[r * cols + c]--;
         }
     }
 
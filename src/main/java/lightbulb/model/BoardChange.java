@@ -0,0 +1,11 @@
+package lightbulb.model;
+
+/**
+ * Záznam (record) BoardChange popisuje změnu jedné buňky herní desky.
+ * Nese souřadnice buňky a její otočení před změnou a po ní, takže
+ * posluchači mohou překreslit jen to, co se opravdu změnilo.
+ * Stejné otočení před i po znamená, že se změnil jen stav napájení buňky.
+ *
+ * @author Gleb Litvinchuk (xlitvi02)
+ */
+public record BoardChange(int row, int col, int oldRotation, int newRotation) {}
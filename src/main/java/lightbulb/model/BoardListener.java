@@ -1,13 +1,22 @@
 package lightbulb.model;
 
+import java.util.List;
+
 /**
  * Funkcionální rozhraní BoardListener definuje metodu, která je volána,
  * když dojde ke změně na herní desce (Board). Umožňuje ostatním částem
- * aplikace reagovat na tyto změny.
+ * aplikace reagovat na tyto změny. Změny jednotlivých buněk přicházejí
+ * jako seznam BoardChange, aby posluchač mohl aktualizovat jen je.
  *
  * @author Gleb Litvinchuk (xlitvi02)
  */
 @FunctionalInterface
 public interface BoardListener {
+    /** Something on the board changed, everything should be redrawn. */
     void onBoardChanged(Board board);
+
+    /** Only the listed cells changed; by default handled as a change of the whole board. */
+    default void onCellsChanged(Board board, List<BoardChange> changes) {
+        onBoardChanged(board);
+    }
 }
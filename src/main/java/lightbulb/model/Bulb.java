@@ -1,8 +1,6 @@
 // model/Bulb.java
 package lightbulb.model;
 
-import java.util.EnumSet;
-
 /**
  * Třída Bulb reprezentuje herní prvek žárovky. Žárovka má jeden přívod
  * a jejím cílem je být napájena zdrojem energie.
@@ -21,13 +19,18 @@ public class Bulb extends Element {
 
     /** Actual output taking into account the current rotation. */
     public Direction getLead() {
-        return baseLead.rotate(rotation);
+        return baseLead.rotate(getRotation());
+    }
+
+    /** Mask with the single lead side. */
+    public int getLeadMask() {
+        return getLead().bit();
     }
 
-    /** Lamp does NOT pass current further, so empty set. */
+    /** Lamp does NOT pass current further, so empty mask. */
     @Override
-    public EnumSet<Direction> getConnections() {
-        return EnumSet.noneOf(Direction.class);
+    public int getConnectionMask() {
+        return 0;
     }
 
     /** you can twist the light bulb */
@@ -36,9 +39,9 @@ public class Bulb extends Element {
 
     /* if the UI draws a lamp output, you can calculate it like this: */
     public Direction getVisualInput() {
-        return baseLead.rotate(rotation);
+        return baseLead.rotate(getRotation());
     }
 
     @Override
-    public String toString() { return "Bulb{lead=" + getLead() + ", rot=" + rotation + '}'; }
+    public String toString() { return "Bulb{lead=" + getLead() + ", rot=" + getRotation() + '}'; }
 }
@@ -2,72 +2,61 @@ package lightbulb.model;
 
 /**
  * Třída Cell reprezentuje jednu buňku (políčko) na herní desce.
- * Buňka může obsahovat herní prvek (Element) a uchovává informace
- * o jeho aktuálním a správném (cílovém) otočení.
+ * Buňka může obsahovat herní prvek (Element). Buňky vrácené deskou
+ * jsou pohledem na její pole, změny zapisují přímo do desky
+ * a oznamují je jejím posluchačům.
  *
  * @author Gleb Litvinchuk (xlitvi02)
  */
 public class Cell {
 
+    /** Board and index the cell is a view of, null for a free standing cell. */
+    private final Board board;
+    private final int   idx;
     private Element element;
-    /** Orientation in which the element should stand in the solved pattern (0/90/180/270). */
-    private int correctRotation = 0;
 
     public Cell(Element element) {
+        this.board = null;
+        this.idx = -1;
         this.element = element;
     }
 
-    public Element getElement()              { return element; }
-    public void    setElement(Element el)    { this.element = el; }
+    Cell(Board board, int idx) {
+        this.board = board;
+        this.idx = idx;
+    }
 
-    public int  getCorrectRotation()         { return correctRotation; }
-    public void setCorrectRotation(int deg)  { correctRotation = ((deg % 360) + 360) % 360; }
+    public Element getElement()              { return board != null ? board.elementAt(idx) : element; }
+    public void    setElement(Element el)    {
+        if (board != null) board.replaceAt(idx, el);
+        else               this.element = el;
+    }
 
     /** Current angle (0/90/180/270). */
     public int getRotation() {
+        if (board != null) return board.rotationAt(idx);
         return (element != null) ? element.getRotation() : 0;
     }
 
+    /** Sets the angle directly, listeners of the board get one change. */
     public void setRotation(int deg) {
-        if (element == null) return;
-        int target = ((deg % 360) + 360) % 360;
-        while (element.getRotation() != target) {
-            element.rotate();
-        }
+        if (board != null) board.turnTo(idx, deg);
+        else if (element != null) element.setRotation(deg);
     }
 
     public int getRemainingTurns(Board b, int r, int c) {
-
-        if(!b.isVital(r,c)) return 0;
-
-        /* elements that don't spin */
-        if (element == null || element instanceof Bulb ||
-                element instanceof PowerSource ||
-                (element instanceof Wire w && w.getWireType()==WireType.X))
-            return 0;
-
-        int need = b.getSolutionRotation(r,c);
-        int curr = getRotation();
-
-        /* I-wire is 180° symmetrical */
-        if (element instanceof Wire w && w.getWireType()==WireType.I)
-            if ((need%180)==(curr%180)) return 0;
-
-        int diff = (need - curr + 360) % 360;
-        return diff / 90;
+        return b.getRemainingTurns(r, c);
     }
 
 
     /** Rotate the element 90° clockwise. */
     public void rotate() {
-        if (element != null && element.isRotatable()) {
-            element.rotate();
-        }
+        if (board != null) board.turnTo(idx, board.rotationAt(idx) + 90);
+        else if (element != null && element.isRotatable()) element.rotate();
     }
 
     @Override public String toString() {
-        return "Cell{element=" + element +
-                ", rot=" + getRotation() +
-                ", correct=" + correctRotation + '}';
+        return "Cell{element=" + getElement() +
+                ", rot=" + getRotation() + '}';
     }
 }
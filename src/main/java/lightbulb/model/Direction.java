@@ -1,24 +1,52 @@
 package lightbulb.model;
 
+import java.util.EnumSet;
+
 /**
  * Výčtový typ Direction reprezentuje čtyři základní směry (UP, RIGHT, DOWN, LEFT)
  * na herní desce. Poskytuje metody pro rotaci směru a určení opačného směru
  * a také pro získání posunů v řádcích a sloupcích.
+ * Sady směrů lze zapsat jako 4bitovou masku (bit i odpovídá směru s ordinal i).
  *
  * @author Gleb Litvinchuk (xlitvi02)
  */
 public enum Direction {
     UP, RIGHT, DOWN, LEFT;
 
+    private static final Direction[] VALUES = values();
+
+    /** Mask with all four sides. */
+    public static final int ALL = 0b1111;
+
     /** Turn the direction to multiple-of-90°. */
     public Direction rotate(int degrees) {
         int steps = ((degrees / 90) % 4 + 4) % 4;           // 0‒3
-        return values()[(this.ordinal() + steps) % 4];
+        return VALUES[(this.ordinal() + steps) % 4];
     }
 
     /** Opposite side. */
     public Direction opposite() {
-        return values()[(this.ordinal() + 2) % 4];
+        return VALUES[(this.ordinal() + 2) % 4];
+    }
+
+    /** Bit of this side in a connection mask. */
+    public int bit() { return 1 << ordinal(); }
+
+    /** Direction with the given ordinal without cloning values(). */
+    public static Direction of(int ordinal) { return VALUES[ordinal]; }
+
+    /** Turns every side of the mask by multiple-of-90° clockwise. */
+    public static int rotateMask(int mask, int degrees) {
+        int steps = ((degrees / 90) % 4 + 4) % 4;
+        return ((mask << steps) | (mask >>> (4 - steps))) & ALL;
+    }
+
+    /** Mask -> EnumSet, for the code that still wants a set. */
+    public static EnumSet<Direction> setOf(int mask) {
+        EnumSet<Direction> set = EnumSet.noneOf(Direction.class);
+        for (Direction d : VALUES)
+            if ((mask & d.bit()) != 0) set.add(d);
+        return set;
     }
 
     /** Offsets to move to a neighboring cell */
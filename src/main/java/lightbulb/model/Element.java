@@ -6,21 +6,49 @@ import java.util.EnumSet;
  * Abstraktní třída Element je základní třídou pro všechny interaktivní prvky,
  * které se mohou nacházet na herní desce (např. vodiče, žárovky, zdroj).
  * Definuje společné vlastnosti jako je rotace a informace o připojeních.
+ * Prvek umístěný na desce čte i zapisuje rotaci přímo do buňky desky.
  *
  * @author Gleb Litvinchuk (xlitvi02)
  */
 public abstract class Element {
 
-    /** 0, 90, 180 or 270° clockwise. */
-    protected int rotation = 0;
+    /** 0, 90, 180 or 270° clockwise, used while the element is not placed on a board. */
+    private int rotation = 0;
 
-    public int  getRotation()          { return rotation; }
-    public void setRotation(int deg)   { rotation = ((deg % 360) + 360) % 360; }
-    public void rotate()               { rotation = (rotation + 90) % 360; }
+    /** Board cell the element is a view of, null for a free standing element. */
+    private Board host;
+    private int   hostIdx;
+
+    public int  getRotation()          { return host != null ? host.rotationAt(hostIdx) : rotation; }
+    public void setRotation(int deg)   {
+        deg = ((deg % 360) + 360) % 360;
+        if (host != null) host.setRotationAt(hostIdx, deg);
+        else              rotation = deg;
+    }
+    public void rotate()               { setRotation(getRotation() + 90); }
 
     /** Whether you can spin (default is yes). */
     public boolean isRotatable()       { return true; }
 
+    /** Which sides are connected after taking rotation, as a mask of Direction.bit(). */
+    public abstract int getConnectionMask();
+
     /** Which sides of the element are connected after taking rotation. */
-    public abstract EnumSet<Direction> getConnections();
+    public EnumSet<Direction> getConnections() {
+        return Direction.setOf(getConnectionMask());
+    }
+
+    /* ---------- binding to a board cell ---------- */
+    boolean isPlaced() { return host != null; }
+
+    void attach(Board board, int idx) {
+        host = board;
+        hostIdx = idx;
+    }
+
+    /** Keeps the last angle when the cell gets another element. */
+    void detach() {
+        rotation = getRotation();
+        host = null;
+    }
 }
@@ -1,96 +1,470 @@
 package lightbulb.model;
 
-import lightbulb.controller.GameController;
+import lightbulb.model.solver.Solution;
+import lightbulb.model.solver.SolutionCounter;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.*;
 
 /**
  * Třída LevelGenerator je zodpovědná za generování nových herních úrovní.
  * Vytváří herní desku se zdrojem, žárovkami a vodiči tak, aby existovalo
- * alespoň jedno řešení, a následně prvky náhodně pootočí.
+ * alespoň jedno řešení, a následně prvky náhodně pootočí. Volitelně ověří,
+ * že řešení je jediné, a víceznačné úrovně zahodí nebo z nich odebere
+ * dráty a spoje, které potřebují ostatní řešení. Počty zamítnutých úrovní
+ * se sbírají pro každou obtížnost. Úroveň vygenerovaná se zadaným semínkem
+ * je vždy stejná (při stejném nastavení generátoru). Metody jsou
+ * synchronizované; pro paralelní generování má každé vlákno vlastní instanci.
+ * Generování probíhá v krocích ({@link Stage}) s omezeným počtem pokusů,
+ * jejichž časy a neúspěchy se počítají ve statistikách.
  *
  * @author Gleb Litvinchuk (xlitvi02)
  */
 public final class LevelGenerator {
 
-    private final Random rnd = new Random();
+    /** What to do with a level that has more than one solution. */
+    public enum Uniqueness {
+        /** Don't check, every level is kept (the fastest). */
+        IGNORE,
+        /** Throw the level away and build a new one. */
+        REJECT,
+        /** Remove the wires and connections other solutions need until one is left, reject if that fails. */
+        REPAIR
+    }
+
+    /** Steps of building a level, each one timed and counted in {@link Stats}. */
+    public enum Stage {
+        /** Source and lamps placed. */
+        PLACE,
+        /** Spanning tree, extra edges, crosses and wires. */
+        WIRE,
+        /** Lamps oriented and checked to be lit. */
+        CHECK,
+        /** Solutions counted (and the level repaired). */
+        UNIQUE,
+        /** Rotations shuffled until every lamp is dark. */
+        SHUFFLE
+    }
+
+    /** Levels built and checked for one level; if none has one solution, generation fails. */
+    private static final int MAX_UNIQUE_ATTEMPTS = 20;
+    /** Changes made to one level before it is rejected. */
+    private static final int MAX_REPAIRS = 40;
+    /** Tries to place and wire one solved level before giving up with an exception. */
+    private static final int MAX_BUILD_ATTEMPTS = 1000;
+    /** Shuffles of one solved level trying to put out every lamp. */
+    private static final int MAX_SHUFFLE_ATTEMPTS = 100;
+    /** Share of the elements that a shuffled level has turned away from its solution. */
+    private static final double MIN_SHUFFLED = 0.5;
+    /** Levels built for one level when the shuffles can't make them dark. */
+    private static final int MAX_DARK_ATTEMPTS = 5;
+
+    private static final Direction[] DIRS = Direction.values();
+    private static final Direction[] FORWARD = { Direction.RIGHT, Direction.DOWN };
+
+    private final Random rnd;
+    private final SolutionCounter counter = new SolutionCounter();
+    private final Map<Difficulty, Stats> stats = new EnumMap<>(Difficulty.class);
+    private final Stats customStats = new Stats();
+    private Uniqueness uniqueness = Uniqueness.IGNORE;
+    private int cellsPerCross = 20;
+
+    public LevelGenerator() { this.rnd = new Random(); }
+
+    /** Generator whose sequence of levels is given by the seed. */
+    public LevelGenerator(long seed) { this.rnd = new Random(seed); }
+
+    public synchronized void setUniqueness(Uniqueness uniqueness) { this.uniqueness = uniqueness; }
+
+    /** One cross junction per this many cells, 0 for none. */
+    public synchronized void setCellsPerCross(int cells) { this.cellsPerCross = cells; }
 
     /* PUBLIC FACTORY METHOD */
-    public Board generate(int rows, int cols,
-                          int bulbs,
-                          int extraEdges,
-                          int maxShuffleTurns) {
+    public synchronized Board generate(Difficulty diff) {
+        return generate(stats(diff), diff.rows, diff.cols, diff.bulbs, diff.extraEdges, diff.shuffleTurns);
+    }
 
-        Board board = new Board(rows, cols);
+    /** The level of the seed; the same seed gives the same level whatever was generated before. */
+    public synchronized Board generate(Difficulty diff, long seed) {
+        rnd.setSeed(seed);
+        return generate(diff);
+    }
+
+    public synchronized Board generate(int rows, int cols,
+                                       int bulbs,
+                                       int extraEdges,
+                                       int maxShuffleTurns) {
+        return generate(customStats, rows, cols, bulbs, extraEdges, maxShuffleTurns);
+    }
+
+    public synchronized Board generate(int rows, int cols, int bulbs, int extraEdges, int maxShuffleTurns, long seed) {
+        rnd.setSeed(seed);
+        return generate(rows, cols, bulbs, extraEdges, maxShuffleTurns);
+    }
+
+    /**
+     * Writes a rows x cols level straight to the file a band of rows at a
+     * time, for boards too big to build in memory; see {@link StreamingGenerator}.
+     */
+    public synchronized StreamingGenerator.Result generateToFile(int rows, int cols, int bulbs, int maxShuffleTurns,
+                                                                 Path out) throws IOException {
+        return new StreamingGenerator(rnd, StreamingGenerator.BAND_ROWS).write(rows, cols, bulbs, maxShuffleTurns, out);
+    }
 
-        /* 1) source                                                    */
-        Point src = randomFree(rows, cols, Set.of());
-        board.getCell(src.r, src.c).setElement(new PowerSource());
-
-        /* 2) lamps - put only where there is an available neighbor around it  */
-        Set<Point> lamps = new HashSet<>();
-        while (lamps.size() < bulbs) {
-            Point p;
-            do {
-                p = randomFree(rows, cols, lamps, src);
-            } while (!hasFreeNeighbour(p, rows, cols, lamps, src));
-            lamps.add(p);
-            board.getCell(p.r, p.c).setElement(new Bulb(Direction.UP));
+    /*
+     * The pipeline: a solved level (stages PLACE, WIRE, CHECK, rebuilt until it
+     * works), optionally its uniqueness (UNIQUE), then the shuffle (SHUFFLE);
+     * a level that doesn't go dark is built anew. Every loop is bounded, a
+     * level still lit after the last round (or with no unique level among
+     * the checked ones) ends with IllegalStateException.
+     */
+    private Board generate(Stats st, int rows, int cols, int bulbs, int extraEdges, int maxShuffleTurns) {
+        long levelStart = System.nanoTime();
+        for (int round = 0; round < MAX_DARK_ATTEMPTS; round++) {
+            Board board = solvedLevel(st, rows, cols, bulbs, extraEdges);
+            board.rememberSolution();
+
+            /* 7) shuffle until it all goes out. */
+            long start = System.nanoTime();
+            boolean dark = shuffleUntilDark(board, maxShuffleTurns);
+            st.finish(Stage.SHUFFLE, start, dark);
+            if (dark) {
+                st.levels++;
+                st.maxLevelNanos = Math.max(st.maxLevelNanos, System.nanoTime() - levelStart);
+                return board;
+            }
         }
+        throw new IllegalStateException("Can't put out " + bulbs + " bulbs on " + rows + "x" + cols
+                + " in " + MAX_DARK_ATTEMPTS + " levels");
+    }
 
-        /* 3)-5) construction of the solved level  */
-        buildSpanningTree(board, src, lamps);
-        addExtraEdges(board, extraEdges);
-        /* 4.5) add crosses */
-        addCrossJunctions(board,(rows*cols)/20);
-        materialiseWires(board);
+    /* steps 1)-6.5) plus the uniqueness check, every level returned with it on was checked */
+    private Board solvedLevel(Stats st, int rows, int cols, int bulbs, int extraEdges) {
+        for (int attempt = 0; attempt < MAX_UNIQUE_ATTEMPTS; attempt++) {
+            Board board = build(st, rows, cols, bulbs, extraEdges);
+            st.attempts++;
+            if (uniqueness == Uniqueness.IGNORE) return board;
+            long start = System.nanoTime();
+            boolean unique = isUnique(board, st);
+            st.finish(Stage.UNIQUE, start, unique);
+            if (unique) {
+                st.unique++;
+                return board;
+            }
+        }
+        st.givenUp++;
+        throw new IllegalStateException("No level with one solution on " + rows + "x" + cols
+                + " in " + MAX_UNIQUE_ATTEMPTS + " attempts");
+    }
 
+    /* the solved level, steps 1)-6.5) */
+    private Board build(Stats st, int rows, int cols, int bulbs, int extraEdges) {
+        for (int attempt = 0; attempt < MAX_BUILD_ATTEMPTS; attempt++) {
+            Board board = tryBuild(st, rows, cols, bulbs, extraEdges);
+            if (board != null) return board;
+        }
+        throw new IllegalStateException("Can't light " + bulbs + " bulbs on " + rows + "x" + cols
+                + " in " + MAX_BUILD_ATTEMPTS + " attempts");
+    }
+
+    /* null if the lamps couldn't all be placed or wired */
+    private Board tryBuild(Stats st, int rows, int cols, int bulbs, int extraEdges) {
+        long t = System.nanoTime();
+        Board board = new Board(rows, cols);
+        pending = new int[rows * cols];
 
-        /* 6) beautifully orient the lamps       */
-        orientBulbs(board);
+        /* 1)-2) source and lamps */
+        int[] lamps = placeElements(board, bulbs);
+        t = st.finish(Stage.PLACE, t, lamps != null);
+        if (lamps == null) return null;
+
+        /* 3)-5) construction of the solved level  */
+        boolean wired = buildSpanningTree(board, board.getSourceIndex(), lamps);
+        if (wired) {
+            addExtraEdges(board, extraEdges);
+            /* 4.5) add crosses */
+            if (cellsPerCross > 0) addCrossJunctions(board, (rows*cols)/cellsPerCross);
+            materialiseWires(board);
+        }
+        t = st.finish(Stage.WIRE, t, wired);
+        if (!wired) return null;
 
         /* 6.5) guarantee the input of each lamp               */
-        if (!ensureBulbHasInput(board))
-            return generate(rows, cols, bulbs, extraEdges, maxShuffleTurns);
+        boolean ok = ensureBulbHasInput(board) && isSolved(board);
+        st.finish(Stage.CHECK, t, ok);
+        return ok ? board : null;
+    }
 
-        if (!isSolved(board))
-            return generate(rows, cols, bulbs, extraEdges, maxShuffleTurns);
+    /**
+     * 1) the source anywhere, 2) lamps only where a neighbour is still free.
+     * Cells are drawn from a list of candidates in O(1); a cell that can't
+     * take a lamp any more never will, so it leaves the list. null if the
+     * lamps don't fit.
+     */
+    private int[] placeElements(Board b, int bulbs) {
+        int n = b.getRows() * b.getCols();
+        int[] free = new int[n], pos = new int[n];
+        for (int i = 0; i < n; i++) free[i] = pos[i] = i;
+        int size = n;
+
+        int src = free[rnd.nextInt(size)];
+        size = take(free, pos, size, src);
+        b.placeAt(src, Board.SOURCE, 0);
+
+        int[] lamps = new int[bulbs];
+        for (int placed = 0; placed < bulbs; ) {
+            if (size == 0) return null;
+            int p = free[rnd.nextInt(size)];
+            size = take(free, pos, size, p);
+            if (!hasFreeNeighbour(b, p)) continue;
+            b.placeAt(p, Board.BULB, 0);
+            lamps[placed++] = p;
+        }
+        return lamps;
+    }
+
+    /* removes the cell from the first size entries of free by moving the last one in its place */
+    private static int take(int[] free, int[] pos, int size, int idx) {
+        int last = free[--size], at = pos[idx];
+        free[at] = last;
+        pos[last] = at;
+        free[size] = idx;
+        pos[idx] = size;
+        return size;
+    }
+
+    /* UNIQUENESS */
+
+    /** Checks the solved level has one solution, repairing it if allowed; updates the statistics. */
+    private boolean isUnique(Board b, Stats st) {
+        for (int repairs = 0; ; repairs++) {
+            long start = System.nanoTime();
+            int found = counter.count(b, 2);
+            st.countNanos += System.nanoTime() - start;
+            st.counts++;
+            if (found == 1 && counter.isComplete()) {
+                if (repairs > 0) st.repaired++;
+                return true;
+            }
+            if (found < 2) {                            // out of budget, can't tell
+                st.undecided++;
+                return false;
+            }
+            if (repairs == 0) st.ambiguous++;
+            if (uniqueness != Uniqueness.REPAIR || repairs == MAX_REPAIRS || !repair(b, counter.getSolutions()))
+                return false;
+            st.repairs++;
+        }
+    }
 
-        board.rememberSolution();
+    /**
+     * Takes away what another solution needs while all the lamps stay lit:
+     * first the wires the solved level leaves dark but the other solution
+     * lights (they are removed), otherwise a connection of the solved wiring
+     * the other solution does without (both wires lose that side, so a T
+     * becomes an L or I and so on). false if nothing can go.
+     */
+    private boolean repair(Board b, List<Solution> others) {
+        PowerFlood power = new PowerFlood(b, PowerFlood.Mode.POWERED);
+        power.run();
+        boolean[] lit = power.reached().clone();
+        int cols = b.getCols(), n = b.getRows() * cols;
+
+        List<Integer> decoys = new ArrayList<>();
+        List<int[]> links = new ArrayList<>();
+        for (Solution s : others)
+            for (int idx = 0; idx < n; idx++) {
+                if (b.kindAt(idx) < Board.WIRE) continue;
+                if (!lit[idx]) {
+                    if (s.vital()[idx]) decoys.add(idx);
+                    continue;
+                }
+                for (Direction d : FORWARD) {
+                    int r = idx / cols + d.dRow(), c = idx % cols + d.dCol();
+                    if (!inBounds(b, r, c)) continue;
+                    int nb = r * cols + c;
+                    if (!lit[nb] || b.kindAt(nb) < Board.WIRE) continue;
+                    if ((b.maskAt(idx) & d.bit()) == 0 || (b.maskAt(nb) & d.opposite().bit()) == 0) continue;
+                    boolean used = s.vital()[idx] && s.vital()[nb]
+                            && (Board.maskOf(b.kindAt(idx), s.rotations()[idx]) & d.bit()) != 0
+                            && (Board.maskOf(b.kindAt(nb), s.rotations()[nb]) & d.opposite().bit()) != 0;
+                    if (!used) links.add(new int[] { idx, d.ordinal(), nb });
+                }
+            }
 
-        /* 7) shuffle until it all goes out. */
-        shuffleUntilDark(board, maxShuffleTurns, bulbs, extraEdges);
+        /* dark wires never keep a lamp lit, they can all go as they are */
+        if (!decoys.isEmpty()) {
+            for (int idx : decoys) b.placeAt(idx, Board.EMPTY, 0);
+            return true;
+        }
 
-        return board;
+        Collections.shuffle(links, rnd);
+        for (int[] e : links) {
+            int a = e[0], nb = e[2];
+            Direction d = DIRS[e[1]];
+            int kindA = b.kindAt(a), rotA = b.rotationAt(a), maskA = b.maskAt(a);
+            int kindB = b.kindAt(nb), rotB = b.rotationAt(nb), maskB = b.maskAt(nb);
+            placeWire(b, a, maskA & ~d.bit());
+            placeWire(b, nb, maskB & ~d.opposite().bit());
+            if (isSolved(b)) return true;
+            b.placeAt(a, kindA, rotA);
+            b.placeAt(nb, kindB, rotB);
+        }
+        return false;
     }
 
-    /*Building a basic DFS tree*/
-    private void buildSpanningTree(Board b, Point start, Set<Point> targets) {
-        boolean[][] seen = new boolean[b.getRows()][b.getCols()];
-        dfs(b, start, seen, new HashSet<>(targets));
+    /** Rejection statistics of the levels generated for the difficulty. */
+    public synchronized Stats getStats(Difficulty diff) { return stats(diff); }
+
+    /** Rejection statistics of the levels generated with explicit parameters. */
+    public synchronized Stats getStats() { return customStats; }
+
+    private Stats stats(Difficulty diff) {
+        return stats.computeIfAbsent(diff, d -> new Stats());
     }
 
-    private void dfs(Board b, Point v,
-                     boolean[][] seen,
-                     Set<Point> todo) {
+    /**
+     * Counters of the uniqueness check. Every built level is an attempt; the
+     * ones found ambiguous (or undecided within the counter's budget) and not
+     * repaired are rejected.
+     */
+    public static final class Stats {
+        private static final Stage[] STAGES = Stage.values();
+
+        long levels, attempts, counts, unique, ambiguous, undecided, repaired, repairs, givenUp, countNanos;
+        long maxLevelNanos;
+        final long[] stageNanos = new long[STAGES.length];
+        final long[] stageRuns = new long[STAGES.length];
+        final long[] stageFailures = new long[STAGES.length];
+
+        /* adds a run of the stage that started at start; returns now, the start of the next one */
+        long finish(Stage stage, long start, boolean ok) {
+            long now = System.nanoTime();
+            stageNanos[stage.ordinal()] += now - start;
+            stageRuns[stage.ordinal()]++;
+            if (!ok) stageFailures[stage.ordinal()]++;
+            return now;
+        }
+
+        public long getStageRuns(Stage stage)     { return stageRuns[stage.ordinal()]; }
+        public long getStageFailures(Stage stage) { return stageFailures[stage.ordinal()]; }
+
+        /** Time spent in the stage over all levels, in milliseconds. */
+        public double stageMillis(Stage stage) { return stageNanos[stage.ordinal()] / 1e6; }
 
-        seen[v.r][v.c] = true;
-        todo.remove(v);
-        if (todo.isEmpty()) return;
+        /** The longest time one level took, in milliseconds. */
+        public double maxLevelMillis() { return maxLevelNanos / 1e6; }
 
-        List<Direction> dirs = new ArrayList<>(List.of(Direction.values()));
-        Collections.shuffle(dirs, rnd);
+        public long getLevels()    { return levels; }
+        public long getAttempts()  { return attempts; }
+        public long getUnique()    { return unique; }
+        public long getAmbiguous() { return ambiguous; }
+        public long getUndecided() { return undecided; }
+        public long getRepaired()  { return repaired; }
+        public long getGivenUp()   { return givenUp; }
+
+        /** Share of the built levels that were thrown away. */
+        public double rejectionRate() {
+            return attempts == 0 ? 0 : (double) (attempts - levels) / attempts;
+        }
+
+        /** Average time of one solution count in milliseconds. */
+        public double countMillis() {
+            return counts == 0 ? 0 : countNanos / 1e6 / counts;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("levels %d, attempts %d, rejected %.1f%%, ambiguous %d, undecided %d, "
+                            + "repaired %d (%d changes), given up %d, count %.2f ms",
+                    levels, attempts, 100 * rejectionRate(), ambiguous, undecided,
+                    repaired, repairs, givenUp, countMillis());
+        }
+
+        /** Runs, failures and time of every stage, and the slowest level. */
+        public String stagesToString() {
+            StringBuilder sb = new StringBuilder();
+            for (Stage stage : STAGES)
+                sb.append(String.format("%s %d runs, %d failed, %.1f ms; ",
+                        stage, getStageRuns(stage), getStageFailures(stage), stageMillis(stage)));
+            return sb.append(String.format("slowest level %.1f ms", maxLevelMillis())).toString();
+        }
+    }
 
-        for (Direction d : dirs) {
-            int nr = v.r + d.dRow(), nc = v.c + d.dCol();
-            if (!inBounds(b, nr, nc) || seen[nr][nc]) continue;
+    /*
+     * Wilson's algorithm: a loop-erased random walk from every lamp until it
+     * hits the tree, which starts as the source. The walk only goes through
+     * cells connected to the source past the lamps, so it always ends and the
+     * lamps stay leaves. The last direction taken from a cell is kept in next,
+     * retracing them erases the loops. false if a lamp is walled off.
+     */
+    private boolean buildSpanningTree(Board b, int start, int[] lamps) {
+        int cols = b.getCols(), n = b.getRows() * cols;
+        boolean[] open = reachable(b, start);
+        boolean[] inTree = new boolean[n];
+        byte[] next = new byte[n];
+        inTree[start] = true;
+
+        for (int lamp : lamps) {
+            if (!hasNeighbourIn(b, lamp, open)) return false;
+            /* walk until the tree */
+            for (int v = lamp; !inTree[v]; ) {
+                int d, w;
+                do {
+                    d = rnd.nextInt(4);
+                    w = neighbour(b, v, DIRS[d]);
+                } while (w < 0 || !open[w]);
+                next[v] = (byte) d;
+                v = w;
+            }
+            /* 6) the lamp's lead points along its path, not at a cross that may be cut off */
+            b.setRotationAt(lamp, next[lamp] * 90);
+            /* retrace the walk without its loops */
+            for (int v = lamp; !inTree[v]; ) {
+                Direction d = DIRS[next[v]];
+                int r = v / cols, c = v % cols;
+                addConn(b, r, c, d);
+                addConn(b, r + d.dRow(), c + d.dCol(), d.opposite());
+                inTree[v] = true;
+                v = (r + d.dRow()) * cols + c + d.dCol();
+            }
+        }
+        return true;
+    }
 
-            addConn(b, v.r, v.c, d);
-            addConn(b, nr, nc, d.opposite());
+    /* cells reachable from the source without going through a lamp (a queue in an array) */
+    private boolean[] reachable(Board b, int start) {
+        int n = b.getRows() * b.getCols();
+        boolean[] seen = new boolean[n];
+        int[] queue = new int[n];
+        int head = 0, tail = 0;
+        seen[start] = true;
+        queue[tail++] = start;
+        while (head < tail) {
+            int v = queue[head++];
+            for (Direction d : DIRS) {
+                int w = neighbour(b, v, d);
+                if (w < 0 || seen[w] || b.kindAt(w) == Board.BULB) continue;
+                seen[w] = true;
+                queue[tail++] = w;
+            }
+        }
+        return seen;
+    }
 
-            dfs(b, new Point(nr, nc), seen, todo);
-            if (todo.isEmpty()) return;
+    private boolean hasNeighbourIn(Board b, int idx, boolean[] cells) {
+        for (Direction d : DIRS) {
+            int w = neighbour(b, idx, d);
+            if (w >= 0 && cells[w]) return true;
         }
+        return false;
+    }
+
+    /* index of the neighbour in direction d, -1 off the board */
+    private int neighbour(Board b, int idx, Direction d) {
+        int r = idx / b.getCols() + d.dRow(), c = idx % b.getCols() + d.dCol();
+        return inBounds(b, r, c) ? r * b.getCols() + c : -1;
     }
 
     /*adding extraEdges*/
@@ -100,17 +474,17 @@ public final class LevelGenerator {
 
         for (int r = 0; r < b.getRows(); r++)
             for (int c = 0; c < b.getCols(); c++) {
-                Element e = b.getCell(r,c).getElement();
-                if (e == null) continue;
+                int idx = r * b.getCols() + c;
+                if (b.kindAt(idx) == Board.EMPTY) continue;
 
-                for (Direction d : List.of(Direction.RIGHT, Direction.DOWN)) {
+                for (Direction d : FORWARD) {
                     int nr = r + d.dRow(), nc = c + d.dCol();
                     if (!inBounds(b,nr,nc)) continue;
-                    Element n = b.getCell(nr,nc).getElement();
-                    if (n == null) continue;
+                    int n = nr * b.getCols() + nc;
+                    if (b.kindAt(n) == Board.EMPTY) continue;
 
-                    boolean already = e.getConnections().contains(d) &&
-                            n.getConnections().contains(d.opposite());
+                    boolean already = (b.maskAt(idx) & d.bit()) != 0 &&
+                            (b.maskAt(n) & d.opposite().bit()) != 0;
                     if (!already) cand.add(new Edge(r,c,d));
                 }
             }
@@ -126,143 +500,192 @@ public final class LevelGenerator {
         }
     }
 
-    private final Map<Point, EnumSet<Direction>> pending = new HashMap<>();
+    /** Sides each cell has to connect, as masks indexed by r*cols+c. */
+    private int[] pending;
 
-    private void remember(int r,int c,Direction d){
-        pending.computeIfAbsent(new Point(r,c),k->EnumSet.noneOf(Direction.class))
-                .add(d);
+    private void remember(Board b,int r,int c,Direction d){
+        pending[r * b.getCols() + c] |= d.bit();
     }
 
     private void materialiseWires(Board b){
-        for (var e : pending.entrySet()){
-            Point p = e.getKey();
-            EnumSet<Direction> dirs = e.getValue();
-            if (dirs.isEmpty()) continue;
-
-            Wire w;
-            switch (dirs.size()){
-                case 1 -> {
-                    w = new Wire(WireType.L);
-                    for (int i=0;i<4 && !w.getConnections().containsAll(dirs);i++)
-                        w.rotate();
-                }
-                case 2 -> {
-                    boolean straight = (dirs.contains(Direction.UP)&&dirs.contains(Direction.DOWN)) ||
-                            (dirs.contains(Direction.LEFT)&&dirs.contains(Direction.RIGHT));
-                    w = new Wire(straight?WireType.I:WireType.L);
-                    while (!w.getConnections().equals(dirs)) w.rotate();
-                }
-                case 3 -> {
-                    w = new Wire(WireType.T);
-                    while (!w.getConnections().equals(dirs)) w.rotate();
-                }
-                case 4 -> w = new Wire(WireType.X);
-                default -> throw new IllegalStateException();
-            }
-            while (!rotationIsInside(b,p.r,p.c,w)) w.rotate();
-            b.getCell(p.r,p.c).setElement(w);
+        for (int i = 0; i < pending.length; i++){
+            if (pending[i] != 0) placeWire(b, i, pending[i]);
         }
-        pending.clear();
+        Arrays.fill(pending, 0);
     }
 
-
-    private void orientBulbs(Board b){
-        for(int r=0;r<b.getRows();r++)
-            for(int c=0;c<b.getCols();c++){
-                if(!(b.getCell(r,c).getElement() instanceof Bulb bulb)) continue;
-
-                for(Direction d:Direction.values()){
-                    int nr=r+d.dRow(), nc=c+d.dCol();
-                    if(!inBounds(b,nr,nc)) continue;
-                    Element n = b.getCell(nr,nc).getElement();
-                    if(n!=null && n.getConnections().contains(d.opposite())){
-                        while(bulb.getVisualInput()!=d) bulb.rotate();
-                        break;
-                    }
-                }
+    /** Places the wire that connects the given sides (an L for a single one, nothing for none). */
+    private void placeWire(Board b, int i, int dirs){
+        if (dirs == 0) {
+            b.placeAt(i, Board.EMPTY, 0);
+            return;
+        }
+        int r = i / b.getCols(), c = i % b.getCols();
+
+        int kind, rot = 0;
+        switch (Integer.bitCount(dirs)){
+            case 1 -> {
+                kind = Board.wireKind(WireType.L);
+                for (int k=0;k<4 && (Board.maskOf(kind,rot) & dirs) != dirs;k++)
+                    rot += 90;
+            }
+            case 2 -> {
+                boolean straight = dirs == (Direction.UP.bit() | Direction.DOWN.bit()) ||
+                        dirs == (Direction.LEFT.bit() | Direction.RIGHT.bit());
+                kind = Board.wireKind(straight?WireType.I:WireType.L);
+                while (Board.maskOf(kind,rot) != dirs) rot += 90;
             }
+            case 3 -> {
+                kind = Board.wireKind(WireType.T);
+                while (Board.maskOf(kind,rot) != dirs) rot += 90;
+            }
+            case 4 -> kind = Board.wireKind(WireType.X);
+            default -> throw new IllegalStateException();
+        }
+        while (!rotationIsInside(b,r,c,Board.maskOf(kind,rot))) rot += 90;
+        b.placeAt(i, kind, rot);
     }
 
-    /* SHUFFLE*/
-    private void shuffleUntilDark(Board b,
-                                  int maxTurns,
-                                  int bulbs,
-                                  int extraEdges) {
 
-        final int MAX_SHUFFLE_ATTEMPTS = 100;
-        if (maxTurns <= 0) return;
+    /* SHUFFLE*/
 
-        GameController gc = new GameController(b);
+    /**
+     * Turns every element away from the solution, then puts out the lamps in
+     * a single flood from the source: a powered cell facing the lead of a
+     * lamp is turned once more so it doesn't, before the current goes on
+     * from it. Every cell is flooded at most twice, so an attempt costs
+     * O(area) instead of a full flood per try. false if no attempt left every
+     * lamp dark and far enough from the solution; the level is built anew then.
+     */
+    private boolean shuffleUntilDark(Board b, int maxTurns) {
+        if (maxTurns <= 0) return true;
+        /* a lamp fed straight by the source stays lit whatever turns */
+        if (leadsFacing(b, b.getSourceIndex()) != 0) return false;
+        int n = b.getRows() * b.getCols();
+        int[] solved = new int[n], queue = new int[n], ok = new int[3];
+        boolean[] powered = new boolean[n];
+        for (int idx = 0; idx < n; idx++) solved[idx] = b.rotationAt(idx);
 
         for (int attempt = 0; attempt < MAX_SHUFFLE_ATTEMPTS; attempt++) {
+            /* random safe rotation, the lamps and the source stay */
+            int movable = 0;
+            for (int idx = 0; idx < n; idx++) {
+                int kind = b.kindAt(idx);
+                if (kind < Board.WIRE) continue;
+                int okLen = turns(b, idx, solved[idx], maxTurns, 0, ok);
+                if (okLen == 0) continue;
+                b.setRotationAt(idx, solved[idx] + ok[rnd.nextInt(okLen)] * 90);
+                if (kind != Board.wireKind(WireType.X)) movable++;
+            }
+            if (putOut(b, solved, maxTurns, powered, queue, ok) && isFarFrom(b, solved, movable)) return true;
+        }
+        return false;
+    }
 
-            boolean[][] locked = new boolean[b.getRows()][b.getCols()];
-            for (int r = 0; r < b.getRows(); r++)
-                for (int c = 0; c < b.getCols(); c++)
-                    if (b.getCell(r, c).getElement() instanceof Bulb) {
-                        locked[r][c] = true;
-                    }
-
-
-            /* random safe rotation */
-            for (int r = 0; r < b.getRows(); r++)
-                for (int c = 0; c < b.getCols(); c++) {
-
-                    if (locked[r][c]) continue;
-                    Element e = b.getCell(r,c).getElement();
-                    if (e == null || e instanceof Bulb) continue;
-
-                    List<Integer> ok = new ArrayList<>();
-                    for (int t=0; t<4; t++) {
-                        if (rotationIsInside(b,r,c,e)) ok.add(t);
-                        e.rotate();
-                    }
-                    for (int t=0; t<4; t++) e.rotate();
-
-                    if (ok.size() <= 1) continue;
-                    ok.remove(Integer.valueOf(0));
-                    int turns = ok.get(rnd.nextInt(
-                            Math.min(ok.size(), maxTurns)));
-                    for (int i=0; i<turns; i++) e.rotate();
+    /*
+     * The flood of the current with a queue in an array. A cell is turned
+     * before its sides are followed, so the cells it powers are those of its
+     * final rotation; a turned cell that loses its power waits until a powered
+     * neighbour faces it again. false if a lamp can't be kept dark.
+     */
+    private boolean putOut(Board b, int[] solved, int maxTurns, boolean[] powered, int[] queue, int[] ok) {
+        Arrays.fill(powered, false);
+        int start = b.getSourceIndex(), head = 0, tail = 0;
+        powered[start] = true;
+        queue[tail++] = start;
+        while (head < tail) {
+            int v = queue[head++];
+            int threat = leadsFacing(b, v);
+            if ((b.maskAt(v) & threat) != 0) {
+                if (b.kindAt(v) == Board.SOURCE) return false;
+                int okLen = turns(b, v, solved[v], maxTurns, threat, ok);
+                if (okLen == 0) return false;
+                b.setRotationAt(v, solved[v] + ok[rnd.nextInt(okLen)] * 90);
+                if (!linked(b, v, powered)) {
+                    powered[v] = false;
+                    continue;
                 }
+            }
+            for (Direction d : DIRS) {
+                int w = neighbour(b, v, d);
+                if (w < 0 || powered[w] || b.kindAt(w) < Board.WIRE) continue;
+                if ((b.maskAt(v) & d.bit()) == 0 || (b.maskAt(w) & d.opposite().bit()) == 0) continue;
+                powered[w] = true;
+                queue[tail++] = w;
+            }
+        }
+        return true;
+    }
 
-            /* made sure the bulbs still have an input */
-            ensureBulbHasInput(b);
+    /*
+     * Quarter turns 1-3 from the solved rotation that stay on the board and
+     * miss the avoided sides, out of the first maxTurns that stay on it.
+     */
+    private int turns(Board b, int idx, int solved, int maxTurns, int avoid, int[] ok) {
+        int kind = b.kindAt(idx), r = idx / b.getCols(), c = idx % b.getCols(), okLen = 0, inside = 0;
+        for (int t = 1; t < 4 && inside < maxTurns; t++) {
+            int mask = Board.maskOf(kind, solved + t * 90);
+            if (!rotationIsInside(b, r, c, mask)) continue;
+            inside++;
+            if ((mask & avoid) == 0) ok[okLen++] = t;
+        }
+        return okLen;
+    }
 
-            /* reconnected  */
-            gc.updateConnections();
-            if (!gc.anyBulbLit()) return;
+    /* sides of the cell facing a lamp whose lead points back at it */
+    private int leadsFacing(Board b, int idx) {
+        int sides = 0;
+        for (Direction d : DIRS) {
+            int w = neighbour(b, idx, d);
+            if (w >= 0 && b.leadAt(w) == d.opposite().bit()) sides |= d.bit();
         }
+        return sides;
+    }
 
-        /* If 100 attempts did not help - regenerate the level again */
-        generate(b.getRows(), b.getCols(), bulbs, extraEdges, maxTurns);
+    /* true if the cell and a powered neighbour face each other */
+    private boolean linked(Board b, int idx, boolean[] powered) {
+        for (Direction d : DIRS) {
+            int w = neighbour(b, idx, d);
+            if (w >= 0 && powered[w] && (b.maskAt(idx) & d.bit()) != 0
+                    && (b.maskAt(w) & d.opposite().bit()) != 0) return true;
+        }
+        return false;
     }
 
+    /* at least MIN_SHUFFLED of the movable elements connect other sides than in the solution */
+    private boolean isFarFrom(Board b, int[] solved, int movable) {
+        int moved = 0;
+        for (int idx = 0; idx < solved.length; idx++) {
+            int kind = b.kindAt(idx);
+            if (kind >= Board.WIRE && b.maskAt(idx) != Board.maskOf(kind, solved[idx])) moved++;
+        }
+        return moved >= MIN_SHUFFLED * movable;
+    }
 
     /** Adds the specified number of X-units
      * (inner cells that will have all 4 sides) */
     private void addCrossJunctions(Board b, int howMany) {
 
-        List<Point> interior = new ArrayList<>();
-        for (int r = 1; r < b.getRows()-1; r++)
-            for (int c = 1; c < b.getCols()-1; c++)
-                interior.add(new Point(r,c));
-
-        Collections.shuffle(interior, rnd);
+        int innerCols = b.getCols() - 2, count = Math.max(0, b.getRows() - 2) * Math.max(0, innerCols);
+        int[] interior = new int[count];
+        for (int i = 0; i < count; i++) interior[i] = i;
         int made = 0;
 
-        for (Point p : interior) {
-            if (made >= howMany) break;
+        /* a lazy Fisher-Yates shuffle, only as far as the crosses need */
+        for (int i = 0; i < count && made < howMany; i++) {
+            int j = i + rnd.nextInt(count - i), cell = interior[j];
+            interior[j] = interior[i];
+            int r = 1 + cell / innerCols, c = 1 + cell % innerCols;
 
             /* skip if the cell is Bulb / PowerSource */
-            Element center = b.getCell(p.r,p.c).getElement();
-            if (center instanceof Bulb || center instanceof PowerSource) continue;
+            int center = b.kindAt(r * b.getCols() + c);
+            if (center == Board.BULB || center == Board.SOURCE) continue;
 
             /* adding missing 4 sides */
-            for (Direction d : Direction.values()) {
-                int nr = p.r + d.dRow(), nc = p.c + d.dCol();
-                addConn(b, p.r, p.c, d);                       // to center
-                addConn(b, nr, nc, d.opposite());              // to neighbor
+            for (Direction d : DIRS) {
+                int nr = r + d.dRow(), nc = c + d.dCol();
+                addConn(b, r, c, d);                       // to center
+                addConn(b, nr, nc, d.opposite());          // to neighbor
             }
             made++;
         }
@@ -270,9 +693,9 @@ public final class LevelGenerator {
 
     /** true, if in current orientation all lamps under power */
     private boolean isSolved(Board b) {
-        GameController gc = new GameController(b);
-        gc.updateConnections();
-        return gc.isGameWon();
+        PowerFlood power = new PowerFlood(b, PowerFlood.Mode.POWERED);
+        power.run();
+        return power.getTotalBulbs() > 0 && power.getReachedBulbs() == power.getTotalBulbs();
     }
 
     /**
@@ -284,68 +707,65 @@ public final class LevelGenerator {
         WireType[] CANDIDATES = { WireType.L, WireType.T, WireType.I, WireType.X };
         boolean allOk = true;
 
-        for (int r = 0; r < b.getRows(); r++)
-            for (int c = 0; c < b.getCols(); c++) {
-
-                if (!(b.getCell(r,c).getElement() instanceof Bulb)) continue;
-                if (hasInput(b, r, c)) continue;
-                boolean fixed = false;
+        for (int i = 0; i < b.getBulbCount(); i++) {
+            int r = b.getBulbIndex(i) / b.getCols(), c = b.getBulbIndex(i) % b.getCols();
+
+            if (hasInput(b, r, c)) continue;
+            boolean fixed = false;
+
+            /* 1. Trying to put a NEW wire on an empty neighbor */
+            for (Direction d : DIRS) {
+                int nr = r + d.dRow(), nc = c + d.dCol();
+                if (!inBounds(b,nr,nc)) continue;
+                int neigh = nr * b.getCols() + nc;
+                if (b.kindAt(neigh) != Board.EMPTY) continue;
+
+                int kind = Board.wireKind(WireType.L);
+                for (int rot=0; rot<360; rot+=90)
+                    if ((Board.maskOf(kind,rot) & d.opposite().bit()) != 0 &&
+                            rotationIsInside(b,nr,nc,Board.maskOf(kind,rot))) {
+                        b.placeAt(neigh, kind, rot);
+                        fixed = true;
+                        break;
+                    }
+                if (fixed) break;
+            }
 
-                /* 1. Trying to put a NEW wire on an empty neighbor */
-                for (Direction d : Direction.values()) {
+            /* 2. Turning the existing wire didn't help? - Let's change its type */
+            if (!fixed)
+                for (Direction d : DIRS) {
                     int nr = r + d.dRow(), nc = c + d.dCol();
                     if (!inBounds(b,nr,nc)) continue;
-                    Cell neigh = b.getCell(nr,nc);
-                    if (neigh.getElement() != null) continue;
-
-                    Wire w = new Wire(WireType.L);
-                    for (int rot=0; rot<4; rot++, w.rotate())
-                        if (w.getConnections().contains(d.opposite()) &&
-                                rotationIsInside(b,nr,nc,w)) {
-                            neigh.setElement(w);
-                            fixed = true;
-                            break;
-                        }
-                    if (fixed) break;
-                }
-
-                /* 2. Turning the existing wire didn't help? - Let's change its type */
-                if (!fixed)
-                    for (Direction d : Direction.values()) {
-                        int nr = r + d.dRow(), nc = c + d.dCol();
-                        if (!inBounds(b,nr,nc)) continue;
-                        Cell neigh = b.getCell(nr,nc);
-                        if (!(neigh.getElement() instanceof Wire old)) continue;
-
-                        EnumSet<Direction> mustKeep = EnumSet.copyOf(old.getConnections());
-
-                        for (WireType t : CANDIDATES) {
-                            Wire w = new Wire(t);
-                            for (int rot=0; rot<4; rot++, w.rotate())
-                                if (w.getConnections().containsAll(mustKeep) &&
-                                        w.getConnections().contains(d.opposite()) &&
-                                        rotationIsInside(b,nr,nc,w)) {
-                                    neigh.setElement(w);
-                                    fixed = true;
-                                    break;
-                                }
-                            if (fixed) break;
-                        }
+                    int neigh = nr * b.getCols() + nc;
+                    if (b.kindAt(neigh) < Board.WIRE) continue;
+
+                    int mustKeep = b.maskAt(neigh) | d.opposite().bit();
+
+                    for (WireType t : CANDIDATES) {
+                        int kind = Board.wireKind(t);
+                        for (int rot=0; rot<360; rot+=90)
+                            if ((Board.maskOf(kind,rot) & mustKeep) == mustKeep &&
+                                    rotationIsInside(b,nr,nc,Board.maskOf(kind,rot))) {
+                                b.placeAt(neigh, kind, rot);
+                                fixed = true;
+                                break;
+                            }
                         if (fixed) break;
                     }
+                    if (fixed) break;
+                }
 
-                if (!fixed) allOk = false;
-            }
+            if (!fixed) allOk = false;
+        }
 
         return allOk;
     }
 
     private boolean hasInput(Board b,int r,int c){
-        for (Direction d : Direction.values()) {
+        for (Direction d : DIRS) {
             int nr = r + d.dRow(), nc = c + d.dCol();
             if (!inBounds(b,nr,nc)) continue;
-            Element neigh = b.getCell(nr,nc).getElement();
-            if (neigh!=null && neigh.getConnections().contains(d.opposite()))
+            if ((b.maskAt(nr * b.getCols() + nc) & d.opposite().bit()) != 0)
                 return true;
         }
         return false;
@@ -355,8 +775,10 @@ public final class LevelGenerator {
         return r>=0 && r<b.getRows() && c>=0 && c<b.getCols();
     }
 
-    private boolean rotationIsInside(Board b,int r,int c,Element e){
-        for(Direction d:e.getConnections()){
+    /** true if none of the connected sides points off the board */
+    private boolean rotationIsInside(Board b,int r,int c,int mask){
+        for(Direction d:DIRS){
+            if((mask & d.bit())==0) continue;
             int nr=r+d.dRow(), nc=c+d.dCol();
             if(!inBounds(b,nr,nc)) return false;
         }
@@ -364,35 +786,18 @@ public final class LevelGenerator {
     }
 
     /* check if a lamp-cell has a free neighbour*/
-    private boolean hasFreeNeighbour(Point p,
-                                     int rows,int cols,
-                                     Set<Point> occupied,
-                                     Point src){
-        for(Direction d:Direction.values()){
-            int nr=p.r+d.dRow(), nc=p.c+d.dCol();
-            if(nr<0||nr>=rows||nc<0||nc>=cols) continue;
-            Point n=new Point(nr,nc);
-            if(!occupied.contains(n) && !n.equals(src)) return true;
+    private boolean hasFreeNeighbour(Board b, int idx){
+        int r = idx / b.getCols(), c = idx % b.getCols();
+        for(Direction d:DIRS){
+            int nr=r+d.dRow(), nc=c+d.dCol();
+            if(inBounds(b,nr,nc) && b.kindAt(nr*b.getCols()+nc) == Board.EMPTY) return true;
         }
         return false;
     }
 
     private void addConn(Board b,int r,int c,Direction need){
-        Element e = b.getCell(r,c).getElement();
-        if(e instanceof Bulb || e instanceof PowerSource) return;
-        remember(r,c,need);
-    }
-
-    private Point randomFree(int rows,int cols,
-                             Set<Point> busy,
-                             Point... extra){
-        Point p;
-        do{
-            p=new Point(rnd.nextInt(rows),rnd.nextInt(cols));
-        }while(busy.contains(p)||Arrays.asList(extra).contains(p));
-        return p;
+        int kind = b.kindAt(r * b.getCols() + c);
+        if(kind == Board.BULB || kind == Board.SOURCE) return;
+        remember(b,r,c,need);
     }
-
-    /* small record-wrap for coordinates */
-    private record Point(int r,int c){}
 }
@@ -0,0 +1,182 @@
+package lightbulb.model;
+
+import java.util.Arrays;
+
+/**
+ * Třída PowerFlood je společné jádro pro šíření proudu po herní desce.
+ * Prochází desku do šířky od zdroje energie a výsledek ukládá do plochého
+ * pole (buňka (r,c) je na indexu r*cols+c). Všechna pracovní pole jsou
+ * alokována jednou v konstruktoru, takže opakované průchody nic nealokují.
+ * Kromě úplného průchodu umí přepočítat jen část desky po změně jedné buňky.
+ *
+ * @author Gleb Litvinchuk (xlitvi02)
+ */
+public final class PowerFlood {
+
+    /** What counts as a connection. */
+    public enum Mode {
+        /** Current as the player sees it: bulbs are lit only through their lead and pass nothing further. */
+        POWERED,
+        /** Cells mutually connected to the source; bulbs are never part of it. */
+        VITAL
+    }
+
+    private static final Direction[] DIRS = Direction.values();
+
+    private final Board board;
+    private final Mode mode;
+    private final int rows, cols;
+    private final boolean[] reached;
+    // Cell the current came from (BFS tree), -1 for the source
+    private final int[] parent;
+    private final int[] queue, cut;
+    private int reachedBulbs, totalBulbs;
+    // What the last update() touched: cut[0..cutLen) and queue[0..spreadLen)
+    private int cutLen, spreadLen;
+
+    public PowerFlood(Board board, Mode mode) {
+        this.board = board;
+        this.mode = mode;
+        this.rows = board.getRows();
+        this.cols = board.getCols();
+        int n = rows * cols;
+        reached = new boolean[n];
+        parent  = new int[n];
+        queue   = new int[n];
+        cut     = new int[n];
+    }
+
+    /** Full pass from the power source. */
+    public void run() {
+        cutLen = spreadLen = 0;
+        Arrays.fill(reached, false);
+        reachedBulbs = 0;
+        totalBulbs = board.getBulbCount();
+        int src = board.getSourceIndex();
+        if (src == -1) return;
+
+        reached[src] = true;
+        parent[src] = -1;
+        queue[0] = src;
+        spread(1);
+    }
+
+    /**
+     * Incremental pass after the cell (r,c) changed.
+     * If the cell was reached, everything fed through it is switched off first,
+     * then the switched off cells try to take current from their reached
+     * neighbours again. Cost depends on the size of the affected part only.
+     */
+    public void update(int r, int c) {
+        cutLen = spreadLen = 0;
+        if (r < 0 || r >= rows || c < 0 || c >= cols) return;
+        int idx = r * cols + c;
+        if (reached[idx] && parent[idx] == -1) return;   // the source feeds all four sides anyway
+
+        cut[cutLen++] = idx;
+        if (reached[idx]) {
+            /* 1) switch off the subtree hanging on the changed cell */
+            unreach(idx);
+            for (int i = 0; i < cutLen; i++) {
+                int u = cut[i], ur = u / cols, uc = u % cols;
+                for (Direction d : DIRS) {
+                    int nr = ur + d.dRow(), nc = uc + d.dCol();
+                    if (nr < 0 || nr >= rows || nc < 0 || nc >= cols) continue;
+                    int v = nr * cols + nc;
+                    if (reached[v] && parent[v] == u) {
+                        unreach(v);
+                        cut[cutLen++] = v;
+                    }
+                }
+            }
+        }
+
+        /* 2) cells that can take current from the rest of the circuit start a new spread */
+        int tail = 0;
+        for (int i = 0; i < cutLen; i++) {
+            int u = cut[i], ur = u / cols, uc = u % cols;
+            for (Direction d : DIRS) {
+                int nr = ur + d.dRow(), nc = uc + d.dCol();
+                if (nr < 0 || nr >= rows || nc < 0 || nc >= cols) continue;
+                int v = nr * cols + nc;
+                if (reached[v] && feeds(v, d.opposite(), u)) {
+                    reach(u, v);
+                    queue[tail++] = u;
+                    break;
+                }
+            }
+        }
+        spreadLen = spread(tail);
+    }
+
+    /** BFS over the cells already waiting in queue[0..tail), returns the final tail. */
+    private int spread(int tail) {
+        int head = 0;
+        while (head < tail) {
+            int u = queue[head++], r = u / cols, c = u % cols;
+            int mask = board.maskAt(u);
+            if (mask == 0) continue;
+            for (Direction d : DIRS) {
+                if ((mask & d.bit()) == 0) continue;
+                int nr = r + d.dRow(), nc = c + d.dCol();
+                if (nr < 0 || nr >= rows || nc < 0 || nc >= cols) continue;
+                int v = nr * cols + nc;
+                if (reached[v] || !accepts(v, d.opposite())) continue;
+                reach(v, u);
+                queue[tail++] = v;
+            }
+        }
+        return tail;
+    }
+
+    /** true if cell u passes current through side d into cell v (bulbs have an empty mask). */
+    private boolean feeds(int u, Direction d, int v) {
+        return (board.maskAt(u) & d.bit()) != 0 && accepts(v, d.opposite());
+    }
+
+    /** true if the cell takes current coming in through side. */
+    private boolean accepts(int idx, Direction side) {
+        if (board.kindAt(idx) == Board.BULB) return mode == Mode.POWERED && board.leadAt(idx) == side.bit();
+        return (board.maskAt(idx) & side.bit()) != 0;
+    }
+
+    private void reach(int idx, int from) {
+        reached[idx] = true;
+        parent[idx] = from;
+        if (board.kindAt(idx) == Board.BULB) reachedBulbs++;
+    }
+
+    private void unreach(int idx) {
+        reached[idx] = false;
+        if (board.kindAt(idx) == Board.BULB) reachedBulbs--;
+    }
+
+    public boolean isReached(int r, int c) {
+        if (r < 0 || r >= rows || c < 0 || c >= cols) return false;
+        return reached[r * cols + c];
+    }
+
+    /**
+     * Cells whose state may have been changed by the last update(), as indexes r*cols+c.
+     * A cell can be listed twice; after run() the list is empty.
+     */
+    public int[] lastTouched() {
+        int[] out = Arrays.copyOf(cut, cutLen + spreadLen);
+        System.arraycopy(queue, 0, out, cutLen, spreadLen);
+        return out;
+    }
+
+    /** Live result of the last pass, cell (r,c) is at index r*cols+c. */
+    public boolean[] reached() { return reached; }
+
+    public int getReachedBulbs() { return reachedBulbs; }
+    public int getTotalBulbs()   { return totalBulbs; }
+
+    /** Copy of the result as a [rows][cols] matrix. */
+    public boolean[][] toMatrix() {
+        boolean[][] out = new boolean[rows][cols];
+        for (int r = 0; r < rows; r++)
+            System.arraycopy(reached, r * cols, out[r], 0, cols);
+        return out;
+    }
+}
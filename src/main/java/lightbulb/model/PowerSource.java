@@ -1,7 +1,5 @@
 package lightbulb.model;
 
-import java.util.EnumSet;
-
 /**
  * Třída PowerSource reprezentuje herní prvek zdroje elektrické energie.
  * Je to výchozí bod pro napájení elektrického obvodu.
@@ -11,15 +9,11 @@ import java.util.EnumSet;
  */
 public class PowerSource extends Element {
 
+    /** The source feeds all four sides in every rotation. */
     @Override
-    public EnumSet<Direction> getConnections() {
-        return EnumSet.of(
-                Direction.UP.rotate(rotation),
-                Direction.RIGHT.rotate(rotation),
-                Direction.DOWN.rotate(rotation),
-                Direction.LEFT.rotate(rotation)
-        );
+    public int getConnectionMask() {
+        return Direction.ALL;
     }
 
-    @Override public String toString() { return "PowerSource{rot=" + rotation + '}'; }
+    @Override public String toString() { return "PowerSource{rot=" + getRotation() + '}'; }
 }
@@ -0,0 +1,26 @@
+// model/SplitMix64.java
+package lightbulb.model;
+
+/**
+ * Utilitní třída SplitMix64 počítá n-té číslo posloupnosti SplitMix64 přímo,
+ * bez stavu. Generátory z něj odvozují seedy kandidátů a úrovní (každé číslo
+ * zvlášť, takže nezáleží na pořadí vláken) a cache řešení náhodná čísla
+ * Zobristova hashe.
+ *
+ * @author Gleb Litvinchuk (xlitvi02)
+ */
+public final class SplitMix64 {
+
+    /* the step between two states, the golden ratio in 64 bits */
+    private static final long GAMMA = 0x9E3779B97F4A7C15L;
+
+    /** The n-th number of the sequence started at seed (n = 1 is the first). */
+    public static long nth(long seed, long n) {
+        long x = seed + GAMMA * n;
+        x = (x ^ (x >>> 30)) * 0xBF58476D1CE4E5B9L;
+        x = (x ^ (x >>> 27)) * 0x94D049BB133111EBL;
+        return x ^ (x >>> 31);
+    }
+
+    private SplitMix64() {}
+}
@@ -0,0 +1,457 @@
+package lightbulb.model;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Třída StreamingGenerator vytváří obří úrovně (miliony buněk) po pásech
+ * řádků a každý hotový pás hned zapíše na disk, takže v paměti je vždy jen
+ * jeden pás a celá deska nikdy. Pás se postaví podobně jako běžná úroveň,
+ * jen strom se staví Kruskalovým algoritmem (v čase úměrném ploše i u velmi
+ * širokých pásů, kde se náhodné procházky táhnou) a z něj zůstanou jen cesty
+ * k lampám. Místo se zdrojem pás začíná vstupem z předchozího pásu a na
+ * spodním řádku má výstup do dalšího. Kromě vstupu se sousední pásy nesmí propojit, takže
+ * zhasnutí každého pásu za předpokladu, že vstup je pod proudem, zhasne celou
+ * desku. Nepřidává navíc hrany ani kříže.
+ *
+ * Soubor má hlavičku (MAGIC, VERSION, řádky, sloupce) a po ní jeden bajt na
+ * buňku po řádcích: druh | čtvrtotočky << 3 | čtvrtotočky řešení << 5.
+ *
+ * @author Gleb Litvinchuk (xlitvi02)
+ */
+public final class StreamingGenerator {
+
+    /** Rows built and written at once. */
+    public static final int BAND_ROWS = 64;
+
+    static final int MAGIC = 0x4C42534D;              // "LBSM"
+    static final int VERSION = 1;
+
+    /** Tries to place and wire one band before giving up with an exception. */
+    private static final int MAX_BAND_ATTEMPTS = 100;
+    /** Shuffles of one wired band trying to put out every lamp. */
+    private static final int MAX_SHUFFLE_ATTEMPTS = 20;
+    /** Share of the elements that a shuffled band has turned away from its solution. */
+    private static final double MIN_SHUFFLED = 0.5;
+
+    private static final Direction[] DIRS = Direction.values();
+    private static final int I_WIRE = Board.wireKind(WireType.I), L_WIRE = Board.wireKind(WireType.L);
+    private static final int T_WIRE = Board.wireKind(WireType.T), X_WIRE = Board.wireKind(WireType.X);
+    private static final int UP = Direction.UP.bit(), DOWN = Direction.DOWN.bit();
+
+    private final Random rnd;
+    private final int bandRows;
+
+    /* the band being built: h rows from the board row r0, n cells, indexed by r*cols+c inside the band */
+    private int rows, cols, r0, h, n;
+    private byte[] kind, turns, solved, pending, blocked, next, tree;
+    private boolean[] open, needed, powered;
+    private int[] queue, free, pos, lamps, edges, uf;
+    /* connection masks of the row above the band */
+    private byte[] above;
+    /* the source or the entry from the band above */
+    private int root;
+
+    public StreamingGenerator(long seed) { this(new Random(seed), BAND_ROWS); }
+
+    StreamingGenerator(Random rnd, int bandRows) {
+        this.rnd = rnd;
+        this.bandRows = bandRows;
+    }
+
+    /** What was written and how fast. */
+    public record Result(int rows, int cols, int bulbs, long bytes, long nanos) {
+
+        public double cellsPerSecond() {
+            return nanos == 0 ? 0 : (double) rows * cols * 1e9 / nanos;
+        }
+    }
+
+    /**
+     * Generates a rows x cols level with the given lamps and writes it to out.
+     * A single row (or column) can't be put out, lamps don't turn and the
+     * wires can't leave it, so a shuffled level needs both sizes at least 2.
+     */
+    public Result write(int rows, int cols, int bulbs, int maxShuffleTurns, Path out) throws IOException {
+        if (maxShuffleTurns > 0 && (rows < 2 || cols < 2)) throw new IllegalArgumentException("Level too thin to shuffle: " + rows + "x" + cols);
+        long start = System.nanoTime();
+        this.rows = rows;
+        this.cols = cols;
+        int size = Math.min(bandRows + 1, rows) * cols;
+        kind = new byte[size];
+        turns = new byte[size];
+        solved = new byte[size];
+        pending = new byte[size];
+        blocked = new byte[size];
+        next = new byte[size];
+        tree = new byte[size];
+        open = new boolean[size];
+        needed = new boolean[size];
+        powered = new boolean[size];
+        queue = new int[size];
+        free = new int[size];
+        pos = new int[size];
+        lamps = new int[size];
+        edges = new int[2 * size];
+        uf = new int[size];
+        above = new byte[cols];
+
+        long bytes;
+        try (DataOutputStream o = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(out), 1 << 16))) {
+            o.writeInt(MAGIC);
+            o.writeInt(VERSION);
+            o.writeInt(rows);
+            o.writeInt(cols);
+            int entryCol = -1;
+            for (r0 = 0; r0 < rows; r0 += h) {
+                /* a single row left over joins this band, alone it couldn't be put out */
+                h = rows - r0 == bandRows + 1 ? bandRows + 1 : Math.min(bandRows, rows - r0);
+                n = h * cols;
+                int bandBulbs = (int) ((long) bulbs * (r0 + h) / rows - (long) bulbs * r0 / rows);
+                int exitCol = r0 + h == rows ? -1 : rnd.nextInt(cols);
+                buildBand(entryCol, exitCol, bandBulbs, maxShuffleTurns);
+
+                for (int i = 0; i < n; i++) o.writeByte(kind[i] | turns[i] << 3 | solved[i] << 5);
+                for (int c = 0; c < cols; c++) above[c] = (byte) maskAt((h - 1) * cols + c);
+                entryCol = exitCol;
+            }
+            bytes = o.size();
+        }
+        return new Result(rows, cols, bulbs, bytes, System.nanoTime() - start);
+    }
+
+    /** Reads a written level into a board (the solution remembered), for boards that fit in memory. */
+    public static Board read(Path in) throws IOException {
+        try (DataInputStream i = new DataInputStream(new BufferedInputStream(Files.newInputStream(in), 1 << 16))) {
+            if (i.readInt() != MAGIC || i.readInt() != VERSION) throw new IOException("Not a streamed level: " + in);
+            int rows = i.readInt(), cols = i.readInt();
+            Board b = new Board(rows, cols);
+            byte[] current = new byte[rows * cols];
+            for (int idx = 0; idx < current.length; idx++) {
+                int v = i.readUnsignedByte();
+                current[idx] = (byte) (v >> 3 & 3);
+                if ((v & 7) != Board.EMPTY) b.placeAt(idx, v & 7, (v >> 5 & 3) * 90);
+            }
+            b.rememberSolution();
+            for (int idx = 0; idx < current.length; idx++)
+                if (b.kindAt(idx) != Board.EMPTY) b.setRotationAt(idx, current[idx] * 90);
+            return b;
+        }
+    }
+
+    private void buildBand(int entryCol, int exitCol, int bulbs, int maxShuffleTurns) {
+        for (int attempt = 0; attempt < MAX_BAND_ATTEMPTS; attempt++)
+            if (wire(entryCol, exitCol, bulbs) && (maxShuffleTurns <= 0 || shuffle(maxShuffleTurns))) return;
+        throw new IllegalStateException("Can't build rows " + r0 + "-" + (r0 + h - 1) + " with " + bulbs
+                + " bulbs in " + MAX_BAND_ATTEMPTS + " attempts");
+    }
+
+    /* ---------- the solved band ---------- */
+
+    /* lamps, the tree paths from the root to the lamps and the exit, the wires; false if a lamp is walled off */
+    private boolean wire(int entryCol, int exitCol, int bulbs) {
+        Arrays.fill(kind, 0, n, (byte) 0);
+        Arrays.fill(turns, 0, n, (byte) 0);
+        Arrays.fill(pending, 0, n, (byte) 0);
+        for (int i = 0; i < n; i++) free[i] = pos[i] = i;
+        int size = n;
+
+        int exit = exitCol < 0 ? -1 : (h - 1) * cols + exitCol;
+        if (exit >= 0) {
+            pending[exit] = (byte) (pending[exit] | DOWN);
+            size = take(size, exit);
+        }
+        if (entryCol < 0) {
+            root = free[rnd.nextInt(size)];
+            kind[root] = Board.SOURCE;
+        } else {
+            root = entryCol;
+            pending[root] = (byte) (pending[root] | UP);
+        }
+        if (root != exit) size = take(size, root);
+
+        for (int placed = 0; placed < bulbs; ) {
+            if (size == 0) return false;
+            int p = free[rnd.nextInt(size)];
+            size = take(size, p);
+            if (!hasEmptyNeighbour(p)) continue;
+            kind[p] = Board.BULB;
+            lamps[placed++] = p;
+        }
+
+        reachable();
+        for (int i = 0; i < bulbs; i++)
+            if (!hasOpenNeighbour(lamps[i])) return false;
+        if (exit >= 0 && !open[exit]) return false;
+        spanningTree();
+
+        /* keep only the paths from the root to the lamps and the exit */
+        Arrays.fill(needed, 0, n, false);
+        needed[root] = true;
+        for (int i = 0; i < bulbs; i++) {
+            int lamp = lamps[i], d, w;
+            do {
+                d = rnd.nextInt(4);
+                w = neighbour(lamp, DIRS[d]);
+            } while (w < 0 || !open[w]);
+            turns[lamp] = (byte) d;                    // the lead
+            pending[w] = (byte) (pending[w] | DIRS[d].opposite().bit());
+            connect(w);
+        }
+        if (exit >= 0) connect(exit);
+
+        for (int i = 0; i < n; i++)
+            if (kind[i] == Board.EMPTY && pending[i] != 0 && !placeWire(i, pending[i])) return false;
+        System.arraycopy(turns, 0, solved, 0, n);
+        return true;
+    }
+
+    /* removes the cell from the first size entries of free by moving the last one in its place */
+    private int take(int size, int idx) {
+        int last = free[--size], at = pos[idx];
+        free[at] = last;
+        pos[last] = at;
+        free[size] = idx;
+        pos[idx] = size;
+        return size;
+    }
+
+    /* cells reachable from the root without going through a lamp */
+    private void reachable() {
+        Arrays.fill(open, 0, n, false);
+        int head = 0, tail = 0;
+        open[root] = true;
+        queue[tail++] = root;
+        while (head < tail) {
+            int v = queue[head++];
+            for (Direction d : DIRS) {
+                int w = neighbour(v, d);
+                if (w < 0 || open[w] || kind[w] == Board.BULB) continue;
+                open[w] = true;
+                queue[tail++] = w;
+            }
+        }
+    }
+
+    /*
+     * Randomized Kruskal over the open cells: the edges in random order (a
+     * lazy Fisher-Yates), each one joining two trees of a union-find is kept.
+     * Then a breadth first search from the root leaves in next the direction
+     * of each cell's parent.
+     */
+    private void spanningTree() {
+        int m = 0;
+        for (int i = 0; i < n; i++) {
+            uf[i] = i;
+            tree[i] = 0;
+            if (!open[i]) continue;
+            if (i % cols + 1 < cols && open[i + 1]) edges[m++] = i << 1;
+            if (i + cols < n && open[i + cols]) edges[m++] = i << 1 | 1;
+        }
+        for (int k = 0; k < m; k++) {
+            int j = k + rnd.nextInt(m - k), e = edges[j];
+            edges[j] = edges[k];
+            int a = e >> 1, b = a + ((e & 1) == 0 ? 1 : cols);
+            int ra = find(a), rb = find(b);
+            if (ra == rb) continue;
+            uf[ra] = rb;
+            Direction d = (e & 1) == 0 ? Direction.RIGHT : Direction.DOWN;
+            tree[a] |= (byte) d.bit();
+            tree[b] |= (byte) d.opposite().bit();
+        }
+
+        int head = 0, tail = 0;
+        queue[tail++] = root;
+        next[root] = -1;
+        while (head < tail) {
+            int v = queue[head++];
+            for (Direction d : DIRS) {
+                if ((tree[v] & d.bit()) == 0 || d.ordinal() == next[v]) continue;
+                int w = neighbour(v, d);
+                next[w] = (byte) d.opposite().ordinal();
+                queue[tail++] = w;
+            }
+        }
+    }
+
+    /* root of the cell's set, halving the path on the way */
+    private int find(int i) {
+        while (uf[i] != i) {
+            uf[i] = uf[uf[i]];
+            i = uf[i];
+        }
+        return i;
+    }
+
+    /* adds the tree path from the cell up to the part already needed */
+    private void connect(int from) {
+        for (int v = from; !needed[v]; ) {
+            Direction d = DIRS[next[v]];
+            int w = neighbour(v, d);
+            pending[v] = (byte) (pending[v] | d.bit());
+            if (kind[w] == Board.EMPTY) pending[w] = (byte) (pending[w] | d.opposite().bit());
+            needed[v] = true;
+            v = w;
+        }
+    }
+
+    /* the wire connecting the sides of the mask (an L for a single one), false if it can't fit */
+    private boolean placeWire(int i, int mask) {
+        int wire = switch (Integer.bitCount(mask)) {
+            case 1 -> L_WIRE;
+            case 2 -> mask == (UP | DOWN) || mask == (Direction.LEFT.bit() | Direction.RIGHT.bit()) ? I_WIRE : L_WIRE;
+            case 3 -> T_WIRE;
+            default -> X_WIRE;
+        };
+        for (int t = 0; t < 4; t++) {
+            int m = Board.maskOf(wire, t * 90);
+            if ((m & mask) == mask && isInside(i, m)) {
+                kind[i] = (byte) wire;
+                turns[i] = (byte) t;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /* ---------- shuffle ---------- */
+
+    /*
+     * Same as the shuffle of LevelGenerator, with the entry taken as powered
+     * whenever it faces up, and no other cell of the top row allowed to face
+     * a cell above that faces down.
+     */
+    private boolean shuffle(int maxTurns) {
+        Arrays.fill(blocked, 0, n, (byte) 0);
+        boolean entry = kind[root] != Board.SOURCE;
+        for (int c = 0; c < cols && r0 > 0; c++)
+            if ((above[c] & DOWN) != 0 && !(entry && c == root)) blocked[c] = (byte) UP;
+        if (!entry && leadsFacing(root) != 0) return false;
+
+        int[] ok = new int[3];
+        for (int attempt = 0; attempt < MAX_SHUFFLE_ATTEMPTS; attempt++) {
+            int movable = 0;
+            for (int i = 0; i < n; i++) {
+                if (kind[i] < Board.WIRE) continue;
+                int okLen = turns(i, maxTurns, blocked[i], ok);
+                if (okLen == 0 && (Board.maskOf(kind[i], solved[i] * 90) & blocked[i]) != 0) return false;
+                turns[i] = okLen == 0 ? solved[i] : (byte) ((solved[i] + ok[rnd.nextInt(okLen)]) & 3);
+                if (okLen > 0 && kind[i] != X_WIRE) movable++;
+            }
+            if (putOut(maxTurns, ok) && isFar(movable)) return true;
+        }
+        return false;
+    }
+
+    private boolean putOut(int maxTurns, int[] ok) {
+        Arrays.fill(powered, 0, n, false);
+        int head = 0, tail = 0;
+        if (kind[root] == Board.SOURCE || (maskAt(root) & UP) != 0) {
+            powered[root] = true;
+            queue[tail++] = root;
+        }
+        while (head < tail) {
+            int v = queue[head++];
+            int threat = leadsFacing(v);
+            if ((maskAt(v) & threat) != 0) {
+                if (kind[v] == Board.SOURCE) return false;
+                int okLen = turns(v, maxTurns, threat | blocked[v], ok);
+                if (okLen == 0) return false;
+                turns[v] = (byte) ((solved[v] + ok[rnd.nextInt(okLen)]) & 3);
+                if (!linked(v)) {
+                    powered[v] = false;
+                    continue;
+                }
+            }
+            for (Direction d : DIRS) {
+                int w = neighbour(v, d);
+                if (w < 0 || powered[w] || kind[w] < Board.WIRE) continue;
+                if ((maskAt(v) & d.bit()) == 0 || (maskAt(w) & d.opposite().bit()) == 0) continue;
+                powered[w] = true;
+                queue[tail++] = w;
+            }
+        }
+        return true;
+    }
+
+    /* quarter turns 1-3 from the solved rotation that stay on the board and miss avoid, of the first maxTurns */
+    private int turns(int i, int maxTurns, int avoid, int[] ok) {
+        int okLen = 0, inside = 0;
+        for (int t = 1; t < 4 && inside < maxTurns; t++) {
+            int mask = Board.maskOf(kind[i], (solved[i] + t) * 90);
+            if (!isInside(i, mask)) continue;
+            inside++;
+            if ((mask & avoid) == 0) ok[okLen++] = t;
+        }
+        return okLen;
+    }
+
+    private int leadsFacing(int i) {
+        int sides = 0;
+        for (Direction d : DIRS) {
+            int w = neighbour(i, d);
+            if (w >= 0 && kind[w] == Board.BULB && turns[w] == d.opposite().ordinal()) sides |= d.bit();
+        }
+        return sides;
+    }
+
+    /* true if a powered neighbour faces the cell, or it is the entry and faces up */
+    private boolean linked(int i) {
+        if (i == root && (maskAt(i) & UP) != 0) return true;
+        for (Direction d : DIRS) {
+            int w = neighbour(i, d);
+            if (w >= 0 && powered[w] && (maskAt(i) & d.bit()) != 0 && (maskAt(w) & d.opposite().bit()) != 0)
+                return true;
+        }
+        return false;
+    }
+
+    private boolean isFar(int movable) {
+        int moved = 0;
+        for (int i = 0; i < n; i++)
+            if (kind[i] >= Board.WIRE && maskAt(i) != Board.maskOf(kind[i], solved[i] * 90)) moved++;
+        return moved >= MIN_SHUFFLED * movable;
+    }
+
+    /* ---------- geometry ---------- */
+
+    private int maskAt(int i) {
+        return kind[i] == Board.BULB ? 1 << turns[i] : Board.maskOf(kind[i], turns[i] * 90);
+    }
+
+    /* neighbour inside the band, -1 past its edge */
+    private int neighbour(int i, Direction d) {
+        int r = i / cols + d.dRow(), c = i % cols + d.dCol();
+        return r >= 0 && r < h && c >= 0 && c < cols ? r * cols + c : -1;
+    }
+
+    /* true if none of the sides points off the whole board */
+    private boolean isInside(int i, int mask) {
+        int r = r0 + i / cols, c = i % cols;
+        for (Direction d : DIRS) {
+            if ((mask & d.bit()) == 0) continue;
+            int nr = r + d.dRow(), nc = c + d.dCol();
+            if (nr < 0 || nr >= rows || nc < 0 || nc >= cols) return false;
+        }
+        return true;
+    }
+
+    private boolean hasEmptyNeighbour(int i) {
+        for (Direction d : DIRS) {
+            int w = neighbour(i, d);
+            if (w >= 0 && kind[w] == Board.EMPTY) return true;
+        }
+        return false;
+    }
+
+    private boolean hasOpenNeighbour(int i) {
+        for (Direction d : DIRS) {
+            int w = neighbour(i, d);
+            if (w >= 0 && open[w]) return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,143 @@
+package lightbulb.model;
+
+import lightbulb.model.solver.DifficultyRater;
+import lightbulb.model.solver.DifficultyRater.Rating;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Třída TargetedGenerator hledá úroveň, jejíž hodnocení
+ * ({@link DifficultyRater}) padne do zadaného pásma. Kandidáty dané obtížnosti
+ * generuje a hodnotí paralelně na několika vláknech, dokud jeden nevyhoví
+ * nebo nedojde rozpočet; pak vrátí ten nejbližší. Každý kandidát má vlastní
+ * semínko, takže nalezenou úroveň jde kdykoli vytvořit znovu. Výsledek nese
+ * i počet kandidátů za sekundu, podle kterého se dá odhadnout, kolik času
+ * generování pro které pásmo potřebuje.
+ *
+ * @author Gleb Litvinchuk (xlitvi02)
+ */
+public final class TargetedGenerator implements AutoCloseable {
+
+    /** Default number of candidates tried before the closest one is taken. */
+    public static final int MAX_CANDIDATES = 2_000;
+
+    private final ExecutorService pool;
+    private final int threads;
+    /* every worker thread has its own generator and rater */
+    private final ThreadLocal<LevelGenerator> generators = ThreadLocal.withInitial(LevelGenerator::new);
+    private final ThreadLocal<DifficultyRater> raters = ThreadLocal.withInitial(DifficultyRater::new);
+
+    public TargetedGenerator() { this(Runtime.getRuntime().availableProcessors()); }
+
+    public TargetedGenerator(int threads) {
+        this.threads = threads;
+        this.pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "targeted-generator");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * The level found.
+     *
+     * @param board      the level, the closest one to the band if none was in it
+     * @param seed       seed giving this level with {@link LevelGenerator#generate(Difficulty, long)}
+     * @param rating     its rating
+     * @param hit        true if the rating is in the band
+     * @param candidates levels generated and rated on the way
+     * @param nanos      time the search took
+     */
+    public record Result(Board board, long seed, Rating rating, boolean hit, long candidates, long nanos) {
+
+        public double candidatesPerSecond() {
+            return nanos == 0 ? 0 : candidates * 1e9 / nanos;
+        }
+    }
+
+    public Result generate(Difficulty diff, double minScore, double maxScore, long baseSeed) {
+        return generate(diff, minScore, maxScore, baseSeed, MAX_CANDIDATES);
+    }
+
+    /** Level of the difficulty whose score is in [minScore, maxScore], trying at most maxCandidates levels. */
+    public Result generate(Difficulty diff, double minScore, double maxScore, long baseSeed, int maxCandidates) {
+        long start = System.nanoTime();
+        AtomicLong next = new AtomicLong();
+        Search search = new Search(minScore, maxScore);
+
+        List<Future<?>> workers = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++)
+            workers.add(pool.submit(() -> {
+                for (long k; !search.isDone() && (k = next.getAndIncrement()) < maxCandidates; ) {
+                    long seed = seedOf(baseSeed, k);
+                    Board board;
+                    try {
+                        board = generators.get().generate(diff, seed);
+                    } catch (IllegalStateException e) {
+                        continue;           // a seed that gives no level, the next one will
+                    }
+                    search.offer(board, seed, raters.get().rate(board));
+                }
+            }));
+        try {
+            for (Future<?> f : workers) f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            search.stop();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Level generation failed", e.getCause());
+        }
+        return search.result(System.nanoTime() - start);
+    }
+
+    @Override
+    public void close() {
+        pool.shutdownNow();
+    }
+
+    /* the best candidate so far, shared by the workers */
+    private static final class Search {
+        private final double min, max;
+        private Board board;
+        private long seed, candidates;
+        private Rating rating;
+        private double distance = Double.MAX_VALUE;
+        private boolean done;
+
+        Search(double min, double max) {
+            this.min = min;
+            this.max = max;
+        }
+
+        synchronized boolean isDone() { return done; }
+
+        synchronized void stop() { done = true; }
+
+        synchronized void offer(Board b, long s, Rating r) {
+            candidates++;
+            if (!r.solvable()) return;
+            double d = r.score() < min ? min - r.score() : Math.max(0, r.score() - max);
+            if (d >= distance) return;
+            board = b;
+            seed = s;
+            rating = r;
+            distance = d;
+            if (d == 0) done = true;
+        }
+
+        synchronized Result result(long nanos) {
+            return new Result(board, seed, rating, distance == 0, candidates, nanos);
+        }
+    }
+
+    /* seed of the k-th candidate */
+    private static long seedOf(long baseSeed, long k) {
+        return SplitMix64.nth(baseSeed, k + 1);
+    }
+}
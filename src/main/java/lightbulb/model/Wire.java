@@ -1,7 +1,5 @@
 package lightbulb.model;
 
-import java.util.EnumSet;
-
 /**
  * Třída Wire reprezentuje herní prvek vodiče. Vodiče slouží k propojení
  * ostatních prvků na herní desce a mohou mít různé typy (WireType),
@@ -24,21 +22,13 @@ public class Wire extends Element {
     }
 
     @Override
-    public EnumSet<Direction> getConnections() {
-        EnumSet<Direction> base = switch (type) {
-            case I -> EnumSet.of(Direction.UP, Direction.DOWN);
-            case L -> EnumSet.of(Direction.UP, Direction.RIGHT);
-            case T -> EnumSet.of(Direction.UP, Direction.RIGHT, Direction.LEFT);
-            case X -> EnumSet.allOf(Direction.class);
-        };
-        EnumSet<Direction> rotated = EnumSet.noneOf(Direction.class);
-        for (Direction d : base) rotated.add(d.rotate(rotation));
-        return rotated;
+    public int getConnectionMask() {
+        return type.mask(getRotation());
     }
 
 
     @Override
     public String toString() {
-        return "Wire{" + type + ", rot=" + rotation + '}';
+        return "Wire{" + type + ", rot=" + getRotation() + '}';
     }
 }
@@ -17,6 +17,17 @@ public enum WireType {
 
     private final EnumSet<Direction> initialDirections;
 
+    /** Connection masks indexed by [type][rotation / 90]. */
+    private static final int[][] MASKS = new int[values().length][4];
+    static {
+        for (WireType t : values()) {
+            int base = 0;
+            for (Direction d : t.initialDirections) base |= d.bit();
+            for (int q = 0; q < 4; q++)
+                MASKS[t.ordinal()][q] = Direction.rotateMask(base, q * 90);
+        }
+    }
+
     WireType(EnumSet<Direction> initialDirections) {
         this.initialDirections = initialDirections;
     }
@@ -24,4 +35,9 @@ public enum WireType {
     public EnumSet<Direction> getInitialDirections() {
         return initialDirections.clone();
     }
+
+    /** Connected sides for the given rotation (0/90/180/270) as a 4-bit mask. */
+    public int mask(int rotation) {
+        return MASKS[ordinal()][(rotation / 90) & 3];
+    }
 }
\ No newline at end of file
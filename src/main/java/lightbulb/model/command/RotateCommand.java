@@ -34,13 +34,11 @@ public class RotateCommand implements Command {
     }
 
     @Override public void execute() {
-        while (board.getCell(r, c).getRotation() != newRot)
-            board.rotateCell(r, c);
+        board.rotateCellTo(r, c, newRot);
     }
     @Override public void undo() {
         board.decMade(r,c);
-        while (board.getCell(r, c).getRotation() != prevRot)
-            board.rotateCell(r, c);
+        board.rotateCellTo(r, c, prevRot);
     }
 
     public String toJson() {
@@ -49,6 +47,9 @@ public class RotateCommand implements Command {
                 r, c, prevRot, newRot, timestamp, timerValue);
     }
 
+    public int getRow() { return r; }
+    public int getCol() { return c; }
+
     public int getTimerValue() {
         return timerValue;
     }
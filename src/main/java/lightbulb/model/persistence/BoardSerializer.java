@@ -1,21 +1,53 @@
 package lightbulb.model.persistence;
 
 import com.google.gson.*;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 
 import lightbulb.model.*;
 
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
 /**
- * Třída RotateCommand reprezentuje konkrétní příkaz pro akci otočení
- * herního prvku v buňce. Umožňuje vykonání a zrušení této akce,
- * což je využíváno pro funkcionalitu undo/redo a logování.
- * Implementuje rozhraní Command.
+ * Třída BoardSerializer převádí herní desku do JSON a zpět a také do
+ * kompaktního binárního formátu: hlavička (MAGIC, verze, příznaky,
+ * obtížnost, rozměry, pozice zdrojů, volitelně semínko) a 4 bity na buňku,
+ * volitelně následované řešením (opět 4 bity na buňku). Natočení, která dávají
+ * stejné spoje (zdroj, X, I otočené o 180°), se neukládají. Při čtení se
+ * formát pozná sám, binární úroveň lze vložit i do JSON řádku logu.
+ * Čtení desku jen sestaví a nic neřeší: úroveň bez uloženého řešení vrátí
+ * bez řešení ({@link Board#hasSolution()}), najde si ho ten, kdo ho potřebuje.
  *
  * @author Gleb Litvinchuk (xlitvi02)
  */
 public final class BoardSerializer {
 
+    /** First four bytes of a binary level, "LBLV". */
+    public static final int MAGIC = 0x4C424C56;
+    public static final int VERSION = 1;
+
+    private static final int HAS_SEED = 1, HAS_SOLUTION = 2;
+    private static final int I_WIRE = Board.wireKind(WireType.I), L_WIRE = Board.wireKind(WireType.L);
+    private static final int T_WIRE = Board.wireKind(WireType.T), X_WIRE = Board.wireKind(WireType.X);
+
     /* ---------- serialization ---------- */
     public static String toJson(Board b, Difficulty difficulty) {
+        return toJsonObject(b, difficulty).toString();
+    }
+
+    /** Same as toJson(b, difficulty), plus the seed the level was generated from. */
+    public static String toJson(Board b, Difficulty difficulty, long seed) {
+        JsonObject root = toJsonObject(b, difficulty);
+        root.addProperty("seed", seed);
+        return root.toString();
+    }
+
+    private static JsonObject toJsonObject(Board b, Difficulty difficulty) {
         JsonObject root = new JsonObject();
         root.addProperty("type", "init");
         root.addProperty("rows", b.getRows());
@@ -32,62 +64,264 @@ public final class BoardSerializer {
         for (int r = 0; r < b.getRows(); r++) {
             JsonArray row = new JsonArray();
             for (int c = 0; c < b.getCols(); c++) {
-                Cell cell = b.getCell(r, c);
                 JsonObject jc = new JsonObject();
-
-                Element el = cell.getElement();
-                if (el == null) {
-                    jc.addProperty("el", "EMPTY");
-                } else if (el instanceof Wire w) {
-                    jc.addProperty("el", "Wire_" + w.getWireType());
-                } else {
-                    jc.addProperty("el", el.getClass().getSimpleName());
-                }
-                jc.addProperty("rot", cell.getRotation());
+                jc.addProperty("el", b.tokenAt(r, c));
+                jc.addProperty("rot", b.rotationAt(r * b.getCols() + c));
                 row.add(jc);
             }
             rows.add(row);
         }
         root.add("cells", rows);
+        return root;
+    }
+
+    /**
+     * The init line of a log with the level in the binary format (base64),
+     * solution included if the board has one, so a replay needs no solver.
+     */
+    public static String toCompactJson(Board b, Difficulty difficulty) {
+        JsonObject root = new JsonObject();
+        root.addProperty("type", "init");
+        root.addProperty("level", Base64.getEncoder().encodeToString(toBinary(b, difficulty, null, b.hasSolution())));
         return root.toString();
     }
 
-    /* ---------- deserialization (on playback) ---------- */
-    public static LevelData fromJson(String json) {
-        JsonObject obj  = JsonParser.parseString(json).getAsJsonObject();
-        int rows = obj.get("rows").getAsInt();
-        int cols = obj.get("cols").getAsInt();
-
-        Board board = new Board(rows, cols);
-        JsonArray cells = obj.getAsJsonArray("cells");
-
-        for (int r = 0; r < rows; r++) {
-            JsonArray row = cells.get(r).getAsJsonArray();
-            for (int c = 0; c < cols; c++) {
-                JsonObject jc = row.get(c).getAsJsonObject();
-                String token = jc.get("el").getAsString();
-                int    rot   = jc.get("rot").getAsInt();
-                board.placeElement(r, c, token);
-                board.getCell(r, c).setRotation(rot);
+    /* ---------- binary ---------- */
+
+    /** The level in the binary format, without seed and solution. */
+    public static byte[] toBinary(Board b, Difficulty difficulty) {
+        return toBinary(b, difficulty, null, false);
+    }
+
+    /** The level in the binary format, with the seed if not null and the remembered solution if asked for. */
+    public static byte[] toBinary(Board b, Difficulty difficulty, Long seed, boolean withSolution) {
+        int rows = b.getRows(), cols = b.getCols(), n = rows * cols;
+        if (rows > 0xFFFF || cols > 0xFFFF) throw new IllegalArgumentException("Board too big: " + rows + "x" + cols);
+        int sources = 0;
+        for (int idx = 0; idx < n; idx++) if (b.kindAt(idx) == Board.SOURCE) sources++;
+        int cells = (n + 1) / 2;
+
+        ByteBuffer out = ByteBuffer.allocate(15 + 4 * sources + (seed != null ? 8 : 0) + cells * (withSolution ? 2 : 1));
+        out.putInt(MAGIC);
+        out.put((byte) VERSION);
+        out.put((byte) ((seed != null ? HAS_SEED : 0) | (withSolution ? HAS_SOLUTION : 0)));
+        out.put((byte) (difficulty != null ? difficulty : Difficulty.MEDIUM).ordinal());
+        out.putChar((char) rows);
+        out.putChar((char) cols);
+        out.putInt(sources);
+        for (int idx = 0; idx < n; idx++) if (b.kindAt(idx) == Board.SOURCE) out.putInt(idx);
+        if (seed != null) out.putLong(seed);
+
+        for (int idx = 0; idx < n; idx += 2)
+            out.put((byte) (code(b.kindAt(idx), b.rotationAt(idx) / 90)
+                    | (idx + 1 < n ? code(b.kindAt(idx + 1), b.rotationAt(idx + 1) / 90) << 4 : 0)));
+        if (withSolution)
+            for (int idx = 0; idx < n; idx += 2)
+                out.put((byte) (solved(b, idx) | (idx + 1 < n ? solved(b, idx + 1) << 4 : 0)));
+        return out.array();
+    }
+
+    /** Level in the binary format, with its solution only if one is stored. */
+    public static LevelData fromBinary(byte[] data) {
+        return fromBinary(ByteBuffer.wrap(data));
+    }
+
+    /** Same as fromBinary(byte[]), reading the level from the buffer's position on. */
+    public static LevelData fromBinary(ByteBuffer data) {
+        try {
+            ByteBuffer in = data.duplicate();
+            if (in.getInt() != MAGIC) throw new IllegalArgumentException("Not a binary level");
+            int version = in.get();
+            if (version != VERSION) throw new IllegalArgumentException("Unsupported level version " + version);
+            int flags = in.get(), diff = in.get() & 0xFF;
+            int rows = in.getChar(), cols = in.getChar();
+
+            Difficulty[] all = Difficulty.values();
+            Difficulty difficulty = Difficulty.MEDIUM;
+            if (diff < all.length) difficulty = all[diff];
+            else System.err.println("Warning: Unknown difficulty " + diff + " in binary level. Using MEDIUM.");
+
+            /* sizes come from the file, check them against its length before allocating anything */
+            int count = in.getInt();
+            if (count < 0 || count > in.remaining() / 4) throw new IllegalArgumentException("Truncated binary level");
+            int[] sources = new int[count];
+            for (int i = 0; i < sources.length; i++) sources[i] = in.getInt();
+            if ((flags & HAS_SEED) != 0) in.getLong();
+
+            long cells = (long) rows * cols;
+            long bytes = (cells + 1) / 2 * ((flags & HAS_SOLUTION) != 0 ? 2 : 1);
+            if (cells > Integer.MAX_VALUE || bytes > in.remaining())
+                throw new IllegalArgumentException("Truncated binary level, " + rows + "x" + cols + " needs " + bytes + " bytes");
+            int n = (int) cells;
+            Board board = new Board(rows, cols);
+
+            for (int idx = 0; idx < n; idx += 2) {
+                int pair = in.get();
+                place(board, idx, pair & 15);
+                if (idx + 1 < n) place(board, idx + 1, pair >> 4 & 15);
             }
-        }
+            for (int idx : sources) board.placeAt(idx, Board.SOURCE, 0);
 
-        Difficulty difficulty = Difficulty.MEDIUM;
-        if (obj.has("difficulty")) {
-            String diffName = obj.get("difficulty").getAsString();
-            try {
-                difficulty = Difficulty.valueOf(diffName.toUpperCase());
-            } catch (IllegalArgumentException e) {
-                System.err.println("Warning: Unknown difficulty '" + diffName + "' in JSON. Using MEDIUM.");
-                difficulty = Difficulty.MEDIUM;
+            if ((flags & HAS_SOLUTION) != 0) {
+                int[] rotations = new int[n];
+                boolean[] vital = new boolean[n];
+                for (int idx = 0; idx < n; idx += 2) {
+                    int pair = in.get();
+                    rotations[idx] = (pair & 3) * 90;
+                    vital[idx] = (pair & 4) != 0;
+                    if (idx + 1 < n) {
+                        rotations[idx + 1] = (pair >> 4 & 3) * 90;
+                        vital[idx + 1] = (pair & 0x40) != 0;
+                    }
+                }
+                board.rememberSolution(rotations, vital);
             }
-        } else {
-            System.err.println("Warning: Difficulty field not found in JSON. Using MEDIUM.");
-            difficulty = Difficulty.MEDIUM;
+            return new LevelData(board, difficulty);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Truncated binary level", e);
         }
+    }
+
+    /** The seed stored in a binary level, null if it has none. */
+    public static Long seedOf(byte[] data) {
+        if (!isBinary(data) || (data[5] & HAS_SEED) == 0) return null;
+        ByteBuffer in = ByteBuffer.wrap(data);
+        in.position(11);
+        in.position(15 + 4 * in.getInt());
+        return in.getLong();
+    }
+
+    /** A level in either format, told apart by the first bytes. */
+    public static LevelData read(byte[] data) {
+        return isBinary(data) ? fromBinary(data) : fromJson(new String(data, StandardCharsets.UTF_8));
+    }
+
+    public static boolean isBinary(byte[] data) {
+        return data.length >= 4 && ByteBuffer.wrap(data).getInt() == MAGIC;
+    }
+
+    /*
+     * 4 bit cell code: 0 empty (sources are listed in the header), 1 X,
+     * 2-5 bulb, 6-9 L, 10-13 T (plus quarter turns), 14-15 I upright / lying.
+     */
+    private static int code(int kind, int turns) {
+        if (kind == X_WIRE) return 1;
+        if (kind == Board.BULB) return 2 + turns;
+        if (kind == L_WIRE) return 6 + turns;
+        if (kind == T_WIRE) return 10 + turns;
+        if (kind == I_WIRE) return 14 + (turns & 1);
+        return 0;
+    }
+
+    private static void place(Board board, int idx, int code) {
+        if (code == 0) return;
+        if (code == 1) board.placeAt(idx, X_WIRE, 0);
+        else if (code < 6) board.placeAt(idx, Board.BULB, (code - 2) * 90);
+        else if (code < 10) board.placeAt(idx, L_WIRE, (code - 6) * 90);
+        else if (code < 14) board.placeAt(idx, T_WIRE, (code - 10) * 90);
+        else board.placeAt(idx, I_WIRE, (code - 14) * 90);
+    }
 
-        return new LevelData(board, difficulty);
+    /* solution turns and vital flag of the cell */
+    private static int solved(Board b, int idx) {
+        int r = idx / b.getCols(), c = idx % b.getCols();
+        return b.getSolutionRotation(r, c) / 90 | (b.isVital(r, c) ? 4 : 0);
     }
 
+    /* ---------- deserialization (on playback) ---------- */
+    public static LevelData fromJson(String json) {
+        try (JsonReader in = new JsonReader(new StringReader(json))) {
+            LevelData level = fromJson(in);
+            if (in.peek() != JsonToken.END_DOCUMENT) throw new JsonSyntaxException("Trailing data after the level");
+            return level;
+        } catch (IOException e) {
+            throw new JsonSyntaxException(e);
+        }
+    }
+
+    /**
+     * Reads one level object from the reader, filling the board cell by cell
+     * without building a JSON tree. The reader stays right after the object,
+     * so the rest of a log can be read with it.
+     */
+    public static LevelData fromJson(JsonReader in) throws IOException {
+        int rows = -1, cols = -1;
+        String diffName = null;
+        Board board = null;
+        JsonElement early = null;       // cells listed before the size, kept as a tree
+
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "rows" -> rows = in.nextInt();
+                case "cols" -> cols = in.nextInt();
+                case "difficulty" -> diffName = in.nextString();
+                /* a log line carrying a binary level */
+                case "level" -> {
+                    byte[] data = Base64.getDecoder().decode(in.nextString());
+                    while (in.hasNext()) { in.nextName(); in.skipValue(); }
+                    in.endObject();
+                    return fromBinary(data);
+                }
+                case "cells" -> {
+                    if (rows < 0 || cols < 0) early = JsonParser.parseReader(in);
+                    else readCells(in, board = new Board(rows, cols));
+                }
+                default -> in.skipValue();
+            }
+        }
+        in.endObject();
+        if (rows < 0 || cols < 0) throw new JsonSyntaxException("Level without rows or cols");
+        if (board == null) {
+            board = new Board(rows, cols);
+            if (early == null) throw new JsonSyntaxException("Level without cells");
+            try (JsonReader tree = new JsonReader(new StringReader(early.toString()))) {
+                readCells(tree, board);
+            }
+        }
+
+        Difficulty difficulty = Difficulty.MEDIUM;
+        if (diffName != null) {
+            try {
+                difficulty = Difficulty.valueOf(diffName.toUpperCase());
+            } catch (IllegalArgumentException e) {
+                System.err.println("Warning: Unknown difficulty '" + diffName + "' in JSON. Using MEDIUM.");
+                difficulty = Difficulty.MEDIUM;
+            }
+        } else {
+            System.err.println("Warning: Difficulty field not found in JSON. Using MEDIUM.");
+            difficulty = Difficulty.MEDIUM;
+        }
+        return new LevelData(board, difficulty);
+    }
+
+    /* the rows of {"el", "rot"} cells, straight into the board */
+    private static void readCells(JsonReader in, Board board) throws IOException {
+        int rows = board.getRows(), cols = board.getCols();
+        in.beginArray();
+        for (int r = 0; r < rows; r++) {
+            in.beginArray();
+            for (int c = 0; c < cols; c++) {
+                String token = null;
+                int rot = 0;
+                boolean hasRot = false;
+                in.beginObject();
+                while (in.hasNext()) {
+                    String name = in.nextName();
+                    if (name.equals("el")) token = in.nextString();
+                    else if (name.equals("rot")) { rot = in.nextInt(); hasRot = true; }
+                    else in.skipValue();
+                }
+                in.endObject();
+                if (token == null || !hasRot)
+                    throw new JsonSyntaxException("Cell " + r + "," + c + " without el or rot");
+                board.placeElement(r, c, token);
+                board.setRotationAt(r * cols + c, rot);
+            }
+            in.endArray();
+        }
+        in.endArray();
+    }
+
     private BoardSerializer() {}
 }
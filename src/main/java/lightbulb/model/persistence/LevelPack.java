@@ -0,0 +1,148 @@
+package lightbulb.model.persistence;
+
+import lightbulb.model.Board;
+import lightbulb.model.Difficulty;
+import lightbulb.model.LevelData;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Třída LevelPack uchovává mnoho úrovní v jednom souboru. Na začátku je
+ * index (název, rozměry, obtížnost, hash a poloha každé úrovně), za ním
+ * úrovně v binárním formátu {@link BoardSerializer}, s řešením, pokud ho
+ * deska má. Soubor se čte přes {@link FileChannel#map}, takže výpis úrovní
+ * čte jen index a úroveň se dekóduje až při otevření.
+ *
+ * @author Gleb Litvinchuk (xlitvi02)
+ */
+public final class LevelPack {
+
+    /** First four bytes of a pack, "LBPK". */
+    public static final int MAGIC = 0x4C42504B;
+    public static final int VERSION = 1;
+
+    /**
+     * One level of the index.
+     *
+     * @param hash   {@link SolutionCache#hash} of the board
+     * @param offset where the level starts in the pack
+     * @param length its size in bytes
+     */
+    public record Entry(String name, int rows, int cols, Difficulty difficulty, long hash, int offset, int length) {}
+
+    private final ByteBuffer data;
+    private final List<Entry> entries;
+
+    private LevelPack(ByteBuffer data, List<Entry> entries) {
+        this.data = data;
+        this.entries = entries;
+    }
+
+    /** Maps the pack file into memory and reads its index. */
+    public static LevelPack open(Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (ch.size() > Integer.MAX_VALUE) throw new IOException("Level pack over 2 GB: " + file);
+            /* the mapping stays valid after the channel is closed */
+            return wrap(ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()));
+        }
+    }
+
+    /** A pack already in memory (e.g. read from inside a jar). */
+    public static LevelPack wrap(ByteBuffer data) throws IOException {
+        try {
+            ByteBuffer in = data.duplicate();
+            if (in.getInt() != MAGIC) throw new IOException("Not a level pack");
+            int version = in.getInt();
+            if (version != VERSION) throw new IOException("Unsupported level pack version " + version);
+            Difficulty[] all = Difficulty.values();
+            int count = in.getInt();
+            if (count < 0 || count > in.remaining() / 23) throw new IOException("Bad level count " + count);
+            Entry[] entries = new Entry[count];
+            for (int i = 0; i < entries.length; i++) {
+                int offset = in.getInt(), length = in.getInt();
+                int rows = in.getChar(), cols = in.getChar(), diff = in.get() & 0xFF;
+                long hash = in.getLong();
+                byte[] name = new byte[in.getShort() & 0xFFFF];
+                in.get(name);
+                if (offset < 0 || length < 0 || (long) offset + length > data.limit())
+                    throw new IOException("Level " + i + " lies outside the pack");
+                entries[i] = new Entry(new String(name, StandardCharsets.UTF_8), rows, cols,
+                        diff < all.length ? all[diff] : Difficulty.MEDIUM, hash, offset, length);
+            }
+            return new LevelPack(data, List.of(entries));
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated level pack index", e);
+        }
+    }
+
+    /** Empty pack, for when there is no pack file. */
+    public static LevelPack empty() {
+        return new LevelPack(ByteBuffer.allocate(0), Collections.emptyList());
+    }
+
+    public int size() { return entries.size(); }
+
+    public Entry entry(int i) { return entries.get(i); }
+
+    public List<Entry> entries() { return entries; }
+
+    /** Index of the level of that name, -1 if there isn't one. */
+    public int indexOf(String name) {
+        for (int i = 0; i < entries.size(); i++)
+            if (entries.get(i).name().equals(name)) return i;
+        return -1;
+    }
+
+    /** Decodes the i-th level. */
+    public LevelData load(int i) {
+        Entry e = entries.get(i);
+        return BoardSerializer.fromBinary(data.slice(e.offset(), e.length()));
+    }
+
+    /* ---------- writing ---------- */
+
+    /** Writes the levels under their names (same order) into a pack, with the remembered solutions boards have. */
+    public static void write(Path file, List<String> names, List<LevelData> levels) throws IOException {
+        if (names.size() != levels.size()) throw new IllegalArgumentException("One name per level expected");
+        List<byte[]> blobs = new ArrayList<>(levels.size());
+        List<byte[]> nameBytes = new ArrayList<>(levels.size());
+        long indexSize = 12;
+        for (int i = 0; i < levels.size(); i++) {
+            LevelData level = levels.get(i);
+            blobs.add(BoardSerializer.toBinary(level.board(), level.difficulty(), null, level.board().hasSolution()));
+            byte[] name = names.get(i).getBytes(StandardCharsets.UTF_8);
+            if (name.length > 0xFFFF) throw new IllegalArgumentException("Level name too long: " + names.get(i));
+            nameBytes.add(name);
+            indexSize += 23 + name.length;
+        }
+        long total = indexSize;
+        for (byte[] blob : blobs) total += blob.length;
+        if (total > Integer.MAX_VALUE) throw new IOException("Level pack over 2 GB");
+
+        ByteBuffer out = ByteBuffer.allocate((int) total);
+        out.putInt(MAGIC).putInt(VERSION).putInt(levels.size());
+        int offset = (int) indexSize;
+        for (int i = 0; i < levels.size(); i++) {
+            Board b = levels.get(i).board();
+            Difficulty diff = levels.get(i).difficulty();
+            out.putInt(offset).putInt(blobs.get(i).length);
+            out.putChar((char) b.getRows()).putChar((char) b.getCols());
+            out.put((byte) (diff != null ? diff : Difficulty.MEDIUM).ordinal());
+            out.putLong(SolutionCache.hash(b));
+            out.putShort((short) nameBytes.get(i).length).put(nameBytes.get(i));
+            offset += blobs.get(i).length;
+        }
+        for (byte[] blob : blobs) out.put(blob);
+        Files.write(file, out.array());
+    }
+}
@@ -0,0 +1,195 @@
+package lightbulb.model.persistence;
+
+import lightbulb.model.Board;
+import lightbulb.model.SplitMix64;
+import lightbulb.model.solver.BoardSolver;
+import lightbulb.model.solver.ConstraintSolver;
+import lightbulb.model.solver.Solution;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Třída SolutionCache si pamatuje nalezená řešení desek, aby se úroveň
+ * nemusela řešit při každém otevření znovu. Klíčem je hash ve stylu
+ * Zobrist: každá dvojice (buňka, druh prvku) má pevné náhodné číslo a hash
+ * desky je jejich XOR, takže na natočení prvků nezáleží. Poslední řešení
+ * drží v paměti (LRU), ostatní v adresáři vedle map, kde přežijí restart.
+ * Záznam nese i druhy prvků, takže případná kolize hashů nic nepokazí.
+ * Jedná se o singleton.
+ *
+ * @author Gleb Litvinchuk (xlitvi02)
+ */
+public final class SolutionCache {
+
+    /** Solutions kept in memory. */
+    public static final int CAPACITY = 64;
+
+    private static final Path DEFAULT_DIR = Paths.get("src", "main", "resources", "maps", ".solutions");
+    private static final int MAGIC = 0x4C42534C;              // "LBSL"
+    private static final int VERSION = 1;
+
+    /* ---------- singleton ---------- */
+    private static volatile SolutionCache INSTANCE;
+
+    /** Get (or lazily create) the cache stored next to the maps */
+    public static SolutionCache getInstance() {
+        if (INSTANCE == null) {
+            synchronized (SolutionCache.class) {
+                if (INSTANCE == null) INSTANCE = new SolutionCache(DEFAULT_DIR, CAPACITY);
+            }
+        }
+        return INSTANCE;
+    }
+    /* ---------- /singleton ---------- */
+
+    private final Path dir;
+    private final Map<Long, Entry> memory;
+    private long memoryHits, diskHits, misses;
+
+    /** Cache keeping capacity solutions in memory and the rest in dir (null for memory only). */
+    public SolutionCache(Path dir, int capacity) {
+        this.dir = dir;
+        this.memory = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /** The cached solution, or one found by a ConstraintSolver (and remembered); null if none exists. */
+    public Solution solve(Board board) {
+        return solve(board, new ConstraintSolver());
+    }
+
+    public Solution solve(Board board, BoardSolver solver) {
+        Solution s = get(board);
+        if (s != null) return s;
+        s = solver.solve(board);
+        if (s != null) put(board, s);
+        return s;
+    }
+
+    /** The remembered solution of a board with the same elements, null if there is none. */
+    public synchronized Solution get(Board board) {
+        long key = hash(board);
+        byte[] kinds = kinds(board);
+        Entry e = memory.get(key);
+        if (e != null && Arrays.equals(e.kinds, kinds)) {
+            memoryHits++;
+            return e.toSolution();
+        }
+        e = load(key);
+        if (e != null && e.rows == board.getRows() && Arrays.equals(e.kinds, kinds)) {
+            memory.put(key, e);
+            diskHits++;
+            return e.toSolution();
+        }
+        misses++;
+        return null;
+    }
+
+    public synchronized void put(Board board, Solution s) {
+        long key = hash(board);
+        Entry e = new Entry(board.getRows(), kinds(board), s);
+        memory.put(key, e);
+        store(key, e);
+    }
+
+    public synchronized long getMemoryHits() { return memoryHits; }
+    public synchronized long getDiskHits()   { return diskHits; }
+    public synchronized long getMisses()     { return misses; }
+
+    /* ---------- hashing ---------- */
+
+    /** Zobrist hash of the element kinds and the size, rotations don't change it. */
+    public static long hash(Board board) {
+        long h = mix(((long) board.getRows() << 32) | board.getCols());
+        int n = board.getRows() * board.getCols();
+        for (int idx = 0; idx < n; idx++) {
+            int kind = board.kindAt(idx);
+            if (kind != Board.EMPTY) h ^= mix((long) idx << 4 | kind);
+        }
+        return h;
+    }
+
+    /* the random number of a (cell, kind) pair, computed instead of kept in a table */
+    private static long mix(long x) {
+        return SplitMix64.nth(x, 1);
+    }
+
+    private static byte[] kinds(Board board) {
+        byte[] kinds = new byte[board.getRows() * board.getCols()];
+        for (int idx = 0; idx < kinds.length; idx++) kinds[idx] = (byte) board.kindAt(idx);
+        return kinds;
+    }
+
+    /* ---------- disk tier ---------- */
+
+    private Path fileOf(long key) {
+        return dir.resolve(String.format("%016x.sol", key));
+    }
+
+    private Entry load(long key) {
+        if (dir == null) return null;
+        Path file = fileOf(key);
+        if (!Files.exists(file)) return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) return null;
+            int rows = in.readInt(), n = in.readInt();
+            byte[] kinds = new byte[n], turns = new byte[n], vital = new byte[n];
+            in.readFully(kinds);
+            in.readFully(turns);
+            in.readFully(vital);
+            return new Entry(rows, kinds, turns, vital);
+        } catch (IOException e) {
+            System.err.println("Warning: can't read cached solution " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void store(long key, Entry e) {
+        if (dir == null) return;
+        Path file = fileOf(key);
+        try {
+            Files.createDirectories(dir);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(e.rows);
+                out.writeInt(e.kinds.length);
+                out.write(e.kinds);
+                out.write(e.turns);
+                out.write(e.vital);
+            }
+        } catch (IOException ex) {
+            System.err.println("Warning: can't store solution " + file + ": " + ex.getMessage());
+        }
+    }
+
+    /* a solution as quarter turns and 0/1 vital flags, with the kinds it belongs to */
+    private record Entry(int rows, byte[] kinds, byte[] turns, byte[] vital) {
+
+        Entry(int rows, byte[] kinds, Solution s) {
+            this(rows, kinds, new byte[kinds.length], new byte[kinds.length]);
+            for (int idx = 0; idx < kinds.length; idx++) {
+                turns[idx] = (byte) (((s.rotations()[idx] % 360 + 360) % 360) / 90);
+                vital[idx] = (byte) (s.vital()[idx] ? 1 : 0);
+            }
+        }
+
+        Solution toSolution() {
+            int[] rotations = new int[kinds.length];
+            boolean[] flags = new boolean[kinds.length];
+            for (int idx = 0; idx < kinds.length; idx++) {
+                rotations[idx] = turns[idx] * 90;
+                flags[idx] = vital[idx] != 0;
+            }
+            return new Solution(rotations, flags);
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package lightbulb.model.solver;
+
+import lightbulb.model.Board;
+
+/**
+ * Rozhraní BoardSolver popisuje řešič herní desky. Řešič hledá takové
+ * otočení prvků, při kterém svítí všechny žárovky, a vrací ho jako Solution.
+ * Stav předané desky řešič nemění.
+ *
+ * @author Gleb Litvinchuk (xlitvi02)
+ */
+public interface BoardSolver {
+
+    /** @return a solution of the board or null if there is none */
+    Solution solve(Board board);
+}
@@ -0,0 +1,452 @@
+package lightbulb.model.solver;
+
+import java.util.Arrays;
+
+/**
+ * Třída Cdcl je malý SAT řešič s učením klauzulí (CDCL). Literál proměnné v
+ * je 2v, jeho negace 2v+1. Každá klauzule sleduje dva literály, takže po
+ * přiřazení se prochází jen klauzule, kterých se změna týká. Při konfliktu
+ * se naučí klauzule podle prvního jednoznačného bodu (1UIP) a hledání se
+ * vrátí o více úrovní najednou. Proměnné se vybírají podle aktivity (VSIDS)
+ * a dostávají naposledy použitou hodnotu, hledání se občas restartuje
+ * (Lubyho posloupnost) a málo užitečné naučené klauzule se zahazují.
+ * Klauzule lze přidávat i mezi jednotlivými voláními solve().
+ *
+ * @author Gleb Litvinchuk (xlitvi02)
+ */
+final class Cdcl {
+
+    static final int SAT = 1, UNSAT = 0, UNKNOWN = -1;
+
+    private static final int RESTART_BASE = 100;
+    private static final double VAR_DECAY = 0.95;
+
+    /* clauses, learnt ones keep their LBD (distinct levels) for the clean up */
+    private int[][] clauses = new int[1024][];
+    private boolean[] learnt = new boolean[1024];
+    private int[] lbd = new int[1024];
+    private int[] searchFrom = new int[1024];  // where the search for a new watch resumes, long cuts would be quadratic otherwise
+    private int clauseCount, learntCount;
+    private int[] freeIds = new int[64];
+    private int freeCount;
+
+    /* per literal: ids of the clauses watching it */
+    private int[][] watches = new int[0][];
+    private int[] watchLen = new int[0];
+
+    /* per variable */
+    private int vars;
+    private byte[] value = new byte[0];        // 0 unassigned, 1 true, -1 false
+    private int[] level = new int[0], reason = new int[0];
+    private boolean[] phase = new boolean[0], seen = new boolean[0];
+    private double[] activity = new double[0];
+    private double activityInc = 1;
+    private int[] heap = new int[0], heapPos = new int[0];
+    private int heapSize;
+
+    private int[] trail = new int[0], trailLim = new int[16];
+    private int trailLen, levels, qHead;
+    private boolean broken;                   // an empty clause was derived, no solution at all
+
+    private int[] learntBuf = new int[16], levelStamp = new int[16];
+    private int stamp;
+
+    private long conflicts;
+
+    int newVar() {
+        int v = vars++;
+        if (v == value.length) grow(Math.max(16, v * 2));
+        level[v] = -1;
+        reason[v] = -1;
+        heapInsert(v);
+        return v;
+    }
+
+    int varCount() { return vars; }
+
+    static int lit(int v, boolean positive) { return positive ? v << 1 : v << 1 | 1; }
+
+    static int not(int lit) { return lit ^ 1; }
+
+    /** Preferred value of the variable, tried first when it is decided. */
+    void setPhase(int v, boolean positive) { phase[v] = positive; }
+
+    /** Value of the variable in the last model. */
+    boolean isTrue(int v) { return value[v] == 1; }
+
+    long getConflicts() { return conflicts; }
+
+    /** Adds a clause between searches; false if the formula became unsatisfiable. */
+    boolean addClause(int... lits) {
+        if (broken) return false;
+        backtrack(0);
+        int[] c = lits.clone();
+        Arrays.sort(c);
+        int len = 0;
+        for (int i = 0; i < c.length; i++) {
+            int l = c[i];
+            if (litValue(l) == 1 || len > 0 && c[len - 1] == not(l)) return true;   // satisfied or a tautology
+            if (litValue(l) == -1 || len > 0 && c[len - 1] == l) continue;
+            c[len++] = l;
+        }
+        if (len == 0) return !(broken = true);
+        if (len == 1) {
+            assign(c[0], -1);
+            if (propagate() != -1) broken = true;
+            return !broken;
+        }
+        attach(Arrays.copyOf(c, len), false, 0);
+        return true;
+    }
+
+    /**
+     * Searches for a model; SAT, UNSAT, or UNKNOWN once maxConflicts
+     * conflicts were spent (negative for no limit).
+     */
+    int solve(long maxConflicts) {
+        if (broken) return UNSAT;
+        backtrack(0);
+        if (propagate() != -1) {
+            broken = true;
+            return UNSAT;
+        }
+        long limit = maxConflicts < 0 ? Long.MAX_VALUE : conflicts + maxConflicts;
+        long nextReduce = conflicts + 2000 + learntCount;
+        for (int restart = 1; ; restart++) {
+            long restartAt = conflicts + RESTART_BASE * luby(restart);
+            while (true) {
+                int confl = propagate();
+                if (confl != -1) {
+                    conflicts++;
+                    if (levels == 0) {
+                        broken = true;
+                        return UNSAT;
+                    }
+                    learn(confl);
+                    activityInc /= VAR_DECAY;
+                    continue;
+                }
+                if (conflicts >= limit) {
+                    backtrack(0);
+                    return UNKNOWN;
+                }
+                if (conflicts >= restartAt) {
+                    backtrack(0);
+                    break;
+                }
+                if (conflicts >= nextReduce) {
+                    reduce();
+                    nextReduce = conflicts + 2000 + learntCount;
+                }
+                int v = pickBranch();
+                if (v == -1) return SAT;          // every variable assigned, the trail is the model
+                newLevel();
+                assign(lit(v, phase[v]), -1);
+            }
+        }
+    }
+
+    /* ------------------------------------------------------------------ */
+
+    private int litValue(int lit) {
+        int v = value[lit >> 1];
+        return (lit & 1) == 0 ? v : -v;
+    }
+
+    private void assign(int lit, int from) {
+        int v = lit >> 1;
+        value[v] = (byte) ((lit & 1) == 0 ? 1 : -1);
+        level[v] = levels;
+        reason[v] = from;
+        trail[trailLen++] = lit;
+    }
+
+    private void newLevel() {
+        if (levels == trailLim.length) trailLim = Arrays.copyOf(trailLim, levels * 2);
+        trailLim[levels++] = trailLen;
+    }
+
+    private void backtrack(int to) {
+        if (levels <= to) return;
+        int stop = trailLim[to];
+        for (int i = trailLen - 1; i >= stop; i--) {
+            int v = trail[i] >> 1;
+            phase[v] = value[v] == 1;
+            value[v] = 0;
+            reason[v] = -1;
+            if (heapPos[v] == -1) heapInsert(v);
+        }
+        trailLen = stop;
+        qHead = Math.min(qHead, stop);
+        levels = to;
+    }
+
+    /** Unit propagation over the watched literals; the conflicting clause id or -1. */
+    private int propagate() {
+        while (qHead < trailLen) {
+            int falseLit = not(trail[qHead++]);
+            int[] ws = watches[falseLit];
+            int n = watchLen[falseLit], keep = 0;
+            for (int i = 0; i < n; i++) {
+                int id = ws[i];
+                int[] c = clauses[id];
+                if (c == null) continue;                        // deleted, drop the watch
+                if (c[0] == falseLit) {
+                    c[0] = c[1];
+                    c[1] = falseLit;
+                }
+                if (litValue(c[0]) == 1) {
+                    ws[keep++] = id;
+                    continue;
+                }
+                int len = c.length, k = searchFrom[id], tried = 2;
+                for (; tried < len; tried++, k = k + 1 < len ? k + 1 : 2)
+                    if (litValue(c[k]) != -1) break;
+                if (tried < len) {
+                    c[1] = c[k];
+                    c[k] = falseLit;
+                    searchFrom[id] = k;
+                    watch(c[1], id);
+                    continue;
+                }
+                ws[keep++] = id;
+                if (litValue(c[0]) == -1) {                     // conflict, keep the rest of the watches
+                    for (i++; i < n; i++) ws[keep++] = ws[i];
+                    watchLen[falseLit] = keep;
+                    qHead = trailLen;
+                    return id;
+                }
+                assign(c[0], id);
+            }
+            watchLen[falseLit] = keep;
+        }
+        return -1;
+    }
+
+    /**
+     * First UIP learning: learns a clause from the conflict, jumps back and
+     * asserts it. A reason clause always has the literal it implied at index 0.
+     */
+    private void learn(int confl) {
+        int len = 1, pending = 0, idx = trailLen - 1, p = -1;
+        do {
+            int[] c = clauses[confl];
+            if (learnt[confl]) bumpClause(confl);
+            for (int k = p == -1 ? 0 : 1; k < c.length; k++) {
+                int q = c[k], v = q >> 1;
+                if (seen[v] || level[v] == 0) continue;
+                seen[v] = true;
+                bump(v);
+                if (level[v] == levels) pending++;
+                else {
+                    if (len == learntBuf.length) learntBuf = Arrays.copyOf(learntBuf, len * 2);
+                    learntBuf[len++] = q;
+                }
+            }
+            while (!seen[trail[idx] >> 1]) idx--;
+            p = trail[idx--];
+            confl = reason[p >> 1];
+            seen[p >> 1] = false;
+            pending--;
+        } while (pending > 0);
+        learntBuf[0] = not(p);
+        for (int k = 1; k < len; k++) seen[learntBuf[k] >> 1] = false;
+
+        /* jump back to the second highest level, which goes to index 1 as the other watch */
+        int back = 0;
+        for (int k = 1; k < len; k++) {
+            int lv = level[learntBuf[k] >> 1];
+            if (lv > back) {
+                back = lv;
+                int t = learntBuf[1];
+                learntBuf[1] = learntBuf[k];
+                learntBuf[k] = t;
+            }
+        }
+        backtrack(back);
+        if (len == 1) {
+            assign(learntBuf[0], -1);
+            return;
+        }
+        int[] c = Arrays.copyOf(learntBuf, len);
+        int id = attach(c, true, distinctLevels(c));
+        assign(c[0], id);
+    }
+
+    private int distinctLevels(int[] c) {
+        stamp++;
+        int n = 0;
+        for (int l : c) {
+            int lv = level[l >> 1];
+            if (lv >= levelStamp.length) levelStamp = Arrays.copyOf(levelStamp, Math.max(lv + 1, levelStamp.length * 2));
+            if (levelStamp[lv] != stamp) {
+                levelStamp[lv] = stamp;
+                n++;
+            }
+        }
+        return n;
+    }
+
+    private int attach(int[] c, boolean isLearnt, int glue) {
+        int id;
+        if (freeCount > 0) id = freeIds[--freeCount];
+        else {
+            if (clauseCount == clauses.length) {
+                clauses = Arrays.copyOf(clauses, clauseCount * 2);
+                learnt = Arrays.copyOf(learnt, clauseCount * 2);
+                lbd = Arrays.copyOf(lbd, clauseCount * 2);
+                searchFrom = Arrays.copyOf(searchFrom, clauseCount * 2);
+            }
+            id = clauseCount++;
+        }
+        clauses[id] = c;
+        learnt[id] = isLearnt;
+        lbd[id] = glue;
+        searchFrom[id] = 2;
+        if (isLearnt) learntCount++;
+        watch(c[0], id);
+        watch(c[1], id);
+        return id;
+    }
+
+    private void watch(int lit, int id) {
+        if (watchLen[lit] == watches[lit].length) watches[lit] = Arrays.copyOf(watches[lit], Math.max(4, watchLen[lit] * 2));
+        watches[lit][watchLen[lit]++] = id;
+    }
+
+    private void bumpClause(int id) {
+        if (lbd[id] > 2) lbd[id] = Math.min(lbd[id], distinctLevels(clauses[id]));
+    }
+
+    /**
+     * Drops the worse half of the learnt clauses (the most distinct levels),
+     * except the short ones and those that are the reason of an assignment.
+     */
+    private void reduce() {
+        int[] ids = new int[learntCount];
+        int n = 0;
+        for (int id = 0; id < clauseCount; id++)
+            if (clauses[id] != null && learnt[id] && lbd[id] > 2 && !locked(id)) ids[n++] = id;
+        int[] glue = new int[n];
+        for (int i = 0; i < n; i++) glue[i] = lbd[ids[i]];
+        Arrays.sort(glue);
+        int cut = n == 0 ? 0 : glue[n / 2];
+        int dropped = 0;
+        for (int i = 0; i < n && dropped < n / 2; i++) {
+            int id = ids[i];
+            if (lbd[id] < cut) continue;
+            clauses[id] = null;                   // watches are dropped lazily by propagate()
+            learntCount--;
+            dropped++;
+            if (freeCount == freeIds.length) freeIds = Arrays.copyOf(freeIds, freeCount * 2);
+            freeIds[freeCount++] = id;
+        }
+        /* a freed id may be reused while stale watches still point at it, so drop them now */
+        for (int l = 0; l < 2 * vars; l++) {
+            int keep = 0;
+            for (int i = 0; i < watchLen[l]; i++) {
+                int id = watches[l][i];
+                int[] c = clauses[id];
+                if (c != null && (c[0] == l || c[1] == l)) watches[l][keep++] = id;
+            }
+            watchLen[l] = keep;
+        }
+    }
+
+    private boolean locked(int id) {
+        int v = clauses[id][0] >> 1;
+        return reason[v] == id && value[v] != 0;
+    }
+
+    /* ---------------- variable order (VSIDS) ---------------- */
+
+    private void bump(int v) {
+        if ((activity[v] += activityInc) > 1e100) {
+            for (int i = 0; i < vars; i++) activity[i] *= 1e-100;
+            activityInc *= 1e-100;
+        }
+        if (heapPos[v] != -1) siftUp(heapPos[v]);
+    }
+
+    private int pickBranch() {
+        while (heapSize > 0) {
+            int v = heapRemoveTop();
+            if (value[v] == 0) return v;
+        }
+        return -1;
+    }
+
+    private void heapInsert(int v) {
+        heapPos[v] = heapSize;
+        heap[heapSize++] = v;
+        siftUp(heapSize - 1);
+    }
+
+    private int heapRemoveTop() {
+        int top = heap[0];
+        heapPos[top] = -1;
+        int last = heap[--heapSize];
+        if (heapSize > 0) {
+            heap[0] = last;
+            heapPos[last] = 0;
+            siftDown(0);
+        }
+        return top;
+    }
+
+    private void siftUp(int i) {
+        int v = heap[i];
+        while (i > 0) {
+            int parent = (i - 1) >> 1;
+            if (activity[heap[parent]] >= activity[v]) break;
+            heap[i] = heap[parent];
+            heapPos[heap[i]] = i;
+            i = parent;
+        }
+        heap[i] = v;
+        heapPos[v] = i;
+    }
+
+    private void siftDown(int i) {
+        int v = heap[i];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= heapSize) break;
+            if (child + 1 < heapSize && activity[heap[child + 1]] > activity[heap[child]]) child++;
+            if (activity[heap[child]] <= activity[v]) break;
+            heap[i] = heap[child];
+            heapPos[heap[i]] = i;
+            i = child;
+        }
+        heap[i] = v;
+        heapPos[v] = i;
+    }
+
+    private void grow(int cap) {
+        value = Arrays.copyOf(value, cap);
+        level = Arrays.copyOf(level, cap);
+        reason = Arrays.copyOf(reason, cap);
+        phase = Arrays.copyOf(phase, cap);
+        seen = Arrays.copyOf(seen, cap);
+        activity = Arrays.copyOf(activity, cap);
+        heap = Arrays.copyOf(heap, cap);
+        heapPos = Arrays.copyOf(heapPos, cap);
+        trail = Arrays.copyOf(trail, cap);
+        int oldLits = watches.length;
+        watches = Arrays.copyOf(watches, 2 * cap);
+        watchLen = Arrays.copyOf(watchLen, 2 * cap);
+        for (int l = oldLits; l < 2 * cap; l++) watches[l] = new int[0];
+    }
+
+    /* 1, 1, 2, 1, 1, 2, 4, 1, 1, 2, ... */
+    private static long luby(int i) {
+        int k = 1;
+        while ((1 << k) - 1 < i) k++;
+        while (i != (1 << k) - 1) {
+            i -= (1 << (k - 1)) - 1;
+            k = 1;
+            while ((1 << k) - 1 < i) k++;
+        }
+        return 1L << (k - 1);
+    }
+}
@@ -0,0 +1,100 @@
+package lightbulb.model.solver;
+
+import lightbulb.model.Board;
+
+import java.util.Arrays;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Třída ConstraintSolver hledá řešení desky šířením omezení a návratovým
+ * prohledáváním. Po každém rozhodnutí se domény sousedů zúží tak, aby se
+ * shodly na sdílených hranách, a ověří se dosažitelnost všech žárovek.
+ * Jako další se větví buňka s nejmenší doménou, hodnoty se zkoušejí
+ * od té, která vyžaduje nejméně otočení.
+ *
+ * @author Gleb Litvinchuk (xlitvi02)
+ */
+public final class ConstraintSolver implements BoardSolver {
+
+    private final long nodeLimit;
+    private long nodes;
+
+    public ConstraintSolver() { this(Long.MAX_VALUE); }
+
+    /** Solver that gives up (returns null) after trying the given number of assignments. */
+    public ConstraintSolver(long nodeLimit) { this.nodeLimit = nodeLimit; }
+
+    @Override
+    public Solution solve(Board board) {
+        Propagator p = new Propagator(board);
+        nodes = 0;
+        Solution s = p.init() && search(p, () -> p.nodes >= nodeLimit) ? p.toSolution() : null;
+        nodes = p.nodes;
+        return s;
+    }
+
+    /** true if the last solve() ran out of its budget, so null doesn't mean there is no solution. */
+    public boolean gaveUp() { return nodes >= nodeLimit; }
+
+    /** Assignments tried by the last solve(). */
+    public long getNodes() { return nodes; }
+
+    static boolean search(Propagator p) {
+        return search(p, () -> false);
+    }
+
+    /**
+     * Depth first search with an explicit stack, so big boards don't overflow
+     * the thread stack. Gives up (returns false) once cancelled says so.
+     */
+    static boolean search(Propagator p, BooleanSupplier cancelled) {
+        int cap = 64;
+        int[] cell = new int[cap], values = new int[cap], mark = new int[cap];
+        int sp = 0;
+
+        int next = p.pick();
+        if (next == -1) return true;
+        cell[0] = next; values[0] = p.dom[next]; mark[0] = p.mark();
+        sp = 1;
+
+        while (sp > 0) {
+            if (cancelled.getAsBoolean()) return false;
+            int top = sp - 1;
+            if (values[top] == 0) {         // every value failed, back to the parent
+                p.undo(mark[top]);
+                sp--;
+                continue;
+            }
+            int u = cheapest(p, cell[top], values[top]);
+            values[top] &= ~(1 << u);
+            p.undo(mark[top]);
+            if (!p.assign(cell[top], u)) continue;
+
+            next = p.pick();
+            if (next == -1) return true;
+            if (sp == cap) {
+                cap *= 2;
+                cell   = Arrays.copyOf(cell, cap);
+                values = Arrays.copyOf(values, cap);
+                mark   = Arrays.copyOf(mark, cap);
+            }
+            cell[sp] = next; values[sp] = p.dom[next]; mark[sp] = p.mark();
+            sp++;
+        }
+        return false;
+    }
+
+    /** Value from the set needing the fewest turns of the cell. */
+    static int cheapest(Propagator p, int idx, int values) {
+        int best = -1, bestCost = Integer.MAX_VALUE;
+        for (int v = values; v != 0; v &= v - 1) {
+            int u = Integer.numberOfTrailingZeros(v);
+            int cost = p.cost(idx, u);
+            if (cost >= 0 && cost < bestCost) {
+                best = u;
+                bestCost = cost;
+            }
+        }
+        return best != -1 ? best : Integer.numberOfTrailingZeros(values);
+    }
+}
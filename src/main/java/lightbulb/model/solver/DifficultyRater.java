@@ -0,0 +1,99 @@
+package lightbulb.model.solver;
+
+import lightbulb.model.Board;
+
+/**
+ * Třída DifficultyRater odhaduje skutečnou obtížnost desky podle toho, jak
+ * ji řeší stroj. Nejdřív zjistí, kolik buněk s volbou rozhodne samotné šíření
+ * omezení (vynucené tahy). Zbytek zkouší dedukcí o krok dopředu: hodnota,
+ * po které šíření narazí na spor, se vyloučí; počet kol takové dedukce je
+ * hloubka. Nakonec spočítá uzly, které potřebuje prohledávání
+ * ({@link ConstraintSolver}). Desku, kterou vyřeší samo šíření, hráč
+ * vyluští také bez hádání; každé kolo dedukce a každé rozhodnutí navíc ji
+ * dělá těžší.
+ *
+ * @author Gleb Litvinchuk (xlitvi02)
+ */
+public final class DifficultyRater {
+
+    /** Default search budget of the node count. */
+    public static final long NODE_LIMIT = 100_000;
+
+    private final long nodeLimit;
+
+    public DifficultyRater() { this(NODE_LIMIT); }
+
+    public DifficultyRater(long nodeLimit) { this.nodeLimit = nodeLimit; }
+
+    /**
+     * The measures of one board.
+     *
+     * @param choices  cells whose element can be used in more than one way
+     * @param forced   of them decided by propagation alone
+     * @param deduced  of them decided by propagation and lookahead
+     * @param depth    rounds of lookahead that still decided something
+     * @param nodes    assignments the search tried (the budget if it gave up)
+     * @param solvable false if the board has no solution (or none within the budget)
+     */
+    public record Rating(int choices, int forced, int deduced, int depth, long nodes, boolean solvable) {
+
+        /** Share of the choices propagation makes without any guess. */
+        public double forcedRatio() {
+            return choices == 0 ? 1 : (double) forced / choices;
+        }
+
+        /**
+         * One number to compare boards by: 10 for a board nothing is forced
+         * on, plus one per round of lookahead, plus log2 of the search nodes.
+         */
+        public double score() {
+            return 10 * (1 - forcedRatio()) + depth + Math.log(1 + nodes) / Math.log(2);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("score %.1f, forced %d/%d, deduced %d, depth %d, nodes %d",
+                    score(), forced, choices, deduced, depth, nodes);
+        }
+    }
+
+    public Rating rate(Board board) {
+        Propagator p = new Propagator(board);
+        int choices = undecided(p);
+        if (!p.init()) return new Rating(choices, 0, 0, 0, 0, false);
+        int forced = choices - undecided(p);
+
+        /* lookahead rounds, each one building on what the previous decided */
+        int depth = 0;
+        for (boolean changed = true; changed; ) {
+            changed = false;
+            for (int idx = 0; idx < p.n; idx++) {
+                int values = p.dom[idx];
+                if (Integer.bitCount(values) < 2) continue;
+                for (int v = values; v != 0; v &= v - 1) {
+                    int u = Integer.numberOfTrailingZeros(v);
+                    if ((p.dom[idx] & (1 << u)) == 0) continue;
+                    int mark = p.mark();
+                    boolean possible = p.assign(idx, u);
+                    p.undo(mark);
+                    if (possible) continue;
+                    if (!p.exclude(idx, 1 << u)) return new Rating(choices, forced, 0, depth, 0, false);
+                    changed = true;
+                }
+            }
+            if (changed) depth++;
+        }
+        int deduced = choices - undecided(p);
+
+        ConstraintSolver search = new ConstraintSolver(nodeLimit);
+        boolean solved = search.solve(board) != null;
+        return new Rating(choices, forced, deduced, depth, search.getNodes(), solved);
+    }
+
+    private static int undecided(Propagator p) {
+        int count = 0;
+        for (int idx = 0; idx < p.n; idx++)
+            if (Integer.bitCount(p.dom[idx]) > 1) count++;
+        return count;
+    }
+}
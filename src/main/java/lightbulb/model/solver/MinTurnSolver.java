@@ -0,0 +1,156 @@
+package lightbulb.model.solver;
+
+import lightbulb.model.Board;
+
+import java.util.Arrays;
+
+/**
+ * Třída MinTurnSolver hledá z aktuálního stavu desky nejbližší řešení, tedy
+ * takové, které potřebuje nejméně otočení po směru hodinových ručiček.
+ * Používá stejné šíření omezení jako {@link ConstraintSolver}, navíc větve
+ * ořezává dolním odhadem počtu otočení, který nesmí dosáhnout dosud
+ * nejlepšího řešení. Drát I má dvě shodné polohy a drát X se otáčet nemusí,
+ * obojí je započteno už v ceně jednotlivých hodnot. Po tahu hráče lze
+ * hledání nastartovat z předchozího výsledku, který bývá skoro optimální.
+ * Přerušení vlákna hledání ukončí, jako by došel rozpočet.
+ *
+ * @author Gleb Litvinchuk (xlitvi02)
+ */
+public final class MinTurnSolver implements BoardSolver {
+
+    /** Default search budget, past it the best solution found so far is returned. */
+    public static final long NODE_LIMIT = 100_000;
+
+    private final long nodeLimit;
+    private long nodes;
+    private int turns = -1;
+    private boolean optimal;
+
+    public MinTurnSolver() { this(NODE_LIMIT); }
+
+    public MinTurnSolver(long nodeLimit) { this.nodeLimit = nodeLimit; }
+
+    @Override
+    public Solution solve(Board board) {
+        return search(new Propagator(board), null, 0);
+    }
+
+    /**
+     * Closest solution to the given angles (indexed by r*cols+c) instead of the
+     * board's current ones, e.g. to the state the level started in.
+     */
+    public Solution solve(Board board, int[] from) {
+        return search(new Propagator(board, from), null, 0);
+    }
+
+    /**
+     * Closest solution starting from an earlier one. The previous solution is
+     * the first candidate, and once one needs no more than atLeast turns (known
+     * from the previous result, e.g. its turns minus the turns made since)
+     * the search stops right away.
+     */
+    public Solution solve(Board board, Solution previous, int atLeast) {
+        return search(new Propagator(board), previous, atLeast);
+    }
+
+    private Solution search(Propagator p, Solution previous, int atLeast) {
+        nodes = 0;
+        turns = -1;
+        optimal = false;
+        if (!p.init()) return null;
+
+        Solution best = null;
+        int bestTurns = Integer.MAX_VALUE;
+        if (previous != null && previous.rotations().length == p.n) {
+            best = adapt(p, previous);
+            bestTurns = turnsOf(p, best);
+        }
+
+        int cap = 64;
+        int[] cell = new int[cap], values = new int[cap], mark = new int[cap];
+        int sp = 0;
+
+        int next = p.pick();
+        if (next == -1) {
+            best = p.toSolution();
+            bestTurns = p.lowerBound();
+        } else if (bestTurns > atLeast) {
+            cell[0] = next; values[0] = p.dom[next]; mark[0] = p.mark();
+            sp = 1;
+        }
+
+        Thread self = Thread.currentThread();
+        while (sp > 0 && p.nodes < nodeLimit && !self.isInterrupted()) {
+            int top = sp - 1;
+            if (values[top] == 0) {
+                p.undo(mark[top]);
+                sp--;
+                continue;
+            }
+            int u = ConstraintSolver.cheapest(p, cell[top], values[top]);
+            values[top] &= ~(1 << u);
+            p.undo(mark[top]);
+            if (!p.assign(cell[top], u)) continue;
+
+            /* drop the values that can't beat the best one, then check the stronger bound */
+            if (bestTurns != Integer.MAX_VALUE && !p.tighten(bestTurns - 1)) continue;
+            int bound = p.pathBound();
+            if (bound >= bestTurns) continue;
+            next = p.pick();
+            if (next == -1) {                        // every cell decided, the bound is exact
+                best = p.toSolution();
+                bestTurns = bound;
+                if (bestTurns <= atLeast) {
+                    sp = 0;
+                    break;
+                }
+                continue;
+            }
+            if (sp == cap) {
+                cap *= 2;
+                cell   = Arrays.copyOf(cell, cap);
+                values = Arrays.copyOf(values, cap);
+                mark   = Arrays.copyOf(mark, cap);
+            }
+            cell[sp] = next; values[sp] = p.dom[next]; mark[sp] = p.mark();
+            sp++;
+        }
+
+        nodes = p.nodes;
+        optimal = sp == 0 && best != null;
+        turns = best != null ? bestTurns : -1;
+        return best;
+    }
+
+    /*
+     * An earlier solution moved to the current angles: cells carrying current
+     * take the nearest rotation with the same shape, the rest stay as they are.
+     */
+    private static Solution adapt(Propagator p, Solution s) {
+        int[] rotations = new int[p.n];
+        for (int idx = 0; idx < p.n; idx++) {
+            int kind = p.board.kindAt(idx), deg = s.rotations()[idx], t = 0;
+            if (kind == Board.BULB)
+                t = ((deg - p.start[idx]) / 90 + 4) % 4;
+            else if (s.vital()[idx])
+                t = Math.max(0, Propagator.turnsTo(kind, p.start[idx], Board.maskOf(kind, deg)));
+            rotations[idx] = (p.start[idx] + t * 90) % 360;
+        }
+        return new Solution(rotations, s.vital().clone());
+    }
+
+    private static int turnsOf(Propagator p, Solution s) {
+        int sum = 0;
+        for (int idx = 0; idx < p.n; idx++)
+            sum += ((s.rotations()[idx] - p.start[idx]) / 90 + 4) % 4;
+        return sum;
+    }
+
+    /** Turns the last solution needs, -1 if there was none. */
+    public int getTurns() { return turns; }
+
+    /** false if the last search ran out of budget and the solution may not be the closest one. */
+    public boolean isOptimal() { return optimal; }
+
+    public long getNodes() { return nodes; }
+}
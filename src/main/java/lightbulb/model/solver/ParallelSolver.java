@@ -0,0 +1,127 @@
+package lightbulb.model.solver;
+
+import lightbulb.model.Board;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Třída ParallelSolver řeší desku stejně jako {@link ConstraintSolver}, ale
+ * prohledávání rozdělí mezi vlákna ForkJoinPoolu. Strom se větví na buňkách
+ * s mnoha možnostmi (dráty T a L), každá větev dostane vlastní kopii stavu
+ * a nečinná vlákna si větve kradou. Stavy, které vedly do slepé uličky, jsou
+ * sdílené mezi vlákny, a jakmile některá větev najde řešení, ostatní skončí.
+ *
+ * @author Gleb Litvinchuk (xlitvi02)
+ */
+public final class ParallelSolver implements BoardSolver, AutoCloseable {
+
+    /** A branch is only split while there are few queued tasks left to steal. */
+    private static final int SURPLUS_LIMIT = 2;
+    /** Deepest split; below it every branch is searched sequentially. */
+    private static final int MAX_SPLIT_DEPTH = 24;
+
+    private final ForkJoinPool pool;
+    private final boolean ownPool;
+    private long nodes;
+
+    /** Solver running in the common pool. */
+    public ParallelSolver() {
+        this.pool = ForkJoinPool.commonPool();
+        this.ownPool = false;
+    }
+
+    /** Solver with its own pool of the given number of threads, release it with close(). */
+    public ParallelSolver(int threads) {
+        this.pool = new ForkJoinPool(threads);
+        this.ownPool = true;
+    }
+
+    @Override
+    public Solution solve(Board board) {
+        Search search = new Search();
+        Propagator p = new Propagator(board);
+        if (p.init()) pool.invoke(new Branch(search, p, 0));
+        nodes = search.nodes.sum();
+        return search.found.get();
+    }
+
+    /** Assignments tried by the last solve(), summed over all threads. */
+    public long getNodes() { return nodes; }
+
+    public int getParallelism() { return pool.getParallelism(); }
+
+    @Override
+    public void close() {
+        if (ownPool) pool.shutdown();
+    }
+
+    /* state shared by all branches of one solve() */
+    private static final class Search {
+        final AtomicReference<Solution> found = new AtomicReference<>();
+        final Set<DeadEnd> deadEnds = ConcurrentHashMap.newKeySet();
+        final LongAdder nodes = new LongAdder();
+
+        boolean cancelled() { return found.get() != null; }
+    }
+
+    /* domains of a split point all of whose branches failed */
+    private record DeadEnd(int[] dom) {
+        @Override public boolean equals(Object o) { return o instanceof DeadEnd d && Arrays.equals(dom, d.dom); }
+        @Override public int hashCode() { return Arrays.hashCode(dom); }
+    }
+
+    private static final class Branch extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        /* tasks are never serialized */
+        private final transient Search search;
+        private final transient Propagator p;
+        private final int depth;
+
+        Branch(Search search, Propagator p, int depth) {
+            this.search = search;
+            this.p = p;
+            this.depth = depth;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                if (search.cancelled()) return;
+                if (depth >= MAX_SPLIT_DEPTH || getSurplusQueuedTaskCount() > SURPLUS_LIMIT) {
+                    if (ConstraintSolver.search(p, search::cancelled)) search.found.compareAndSet(null, p.toSolution());
+                    return;
+                }
+                int idx = p.pickWide();
+                if (idx == -1) {
+                    search.found.compareAndSet(null, p.toSolution());
+                    return;
+                }
+                DeadEnd key = new DeadEnd(p.dom.clone());
+                if (search.deadEnds.contains(key)) return;
+
+                /* one forked branch per value, cheapest first */
+                List<Branch> forks = new ArrayList<>();
+                for (int values = p.dom[idx]; values != 0; ) {
+                    int u = ConstraintSolver.cheapest(p, idx, values);
+                    values &= ~(1 << u);
+                    Propagator child = new Propagator(p);
+                    if (child.assign(idx, u)) forks.add(new Branch(search, child, depth + 1));
+                    else search.nodes.add(child.nodes);
+                }
+                invokeAll(forks);
+                if (!search.cancelled()) search.deadEnds.add(key);
+            } finally {
+                search.nodes.add(p.nodes);
+            }
+        }
+    }
+}
@@ -0,0 +1,617 @@
+package lightbulb.model.solver;
+
+import lightbulb.model.Board;
+import lightbulb.model.Direction;
+import lightbulb.model.WireType;
+
+import java.util.Arrays;
+
+/**
+ * Třída Propagator drží stav hledání řešení jedné desky. Každá buňka má
+ * doménu možných množin "použitých" stran, kterými vede proud (16bitová
+ * maska, bit u znamená množinu stran u). Sousední buňky se musí shodnout,
+ * zda je sdílená hrana použita (hranová konzistence). Navíc se ověřuje,
+ * že všechny žárovky jsou ještě dosažitelné ze zdroje; buňky mimo dosah
+ * zůstanou nepoužité a buňky, přes které vede každá cesta k některé
+ * žárovce, musí vést proud. Změny domén se ukládají do stopy, takže je lze
+ * při návratu v prohledávání levně vrátit.
+ *
+ * @author Gleb Litvinchuk (xlitvi02)
+ */
+final class Propagator {
+
+    private static final Direction[] DIRS = Direction.values();
+    private static final int T_WIRE = Board.wireKind(WireType.T);
+    private static final int L_WIRE = Board.wireKind(WireType.L);
+
+    /** OPEN[d]: the values (sets of used sides) that use side d. */
+    static final int[] OPEN = new int[4];
+    static final int ALL_VALUES = 0xFFFF;
+    /** Value 0: the cell carries no current. */
+    static final int UNUSED = 1;
+    /** COVERS[m]: the values that use all the sides in m. */
+    static final int[] COVERS = new int[16];
+    static {
+        for (int d = 0; d < 4; d++)
+            for (int u = 0; u < 16; u++)
+                if ((u >> d & 1) != 0) OPEN[d] |= 1 << u;
+        for (int m = 0; m < 16; m++)
+            for (int u = 0; u < 16; u++)
+                if ((u & m) == m) COVERS[m] |= 1 << u;
+    }
+
+    /** Values an element kind may take in any rotation; a wire that is used needs two sides. */
+    static int domainOf(int kind) {
+        if (kind == Board.EMPTY)  return UNUSED;
+        if (kind == Board.SOURCE) return ALL_VALUES;
+        if (kind == Board.BULB)   return 1 << 1 | 1 << 2 | 1 << 4 | 1 << 8;
+        int dom = UNUSED;
+        for (int deg = 0; deg < 360; deg += 90) {
+            int mask = Board.maskOf(kind, deg);
+            for (int u = 0; u < 16; u++)
+                if (Integer.bitCount(u) >= 2 && (u & mask) == u) dom |= 1 << u;
+        }
+        return dom;
+    }
+
+    /** Clockwise turns from the angle deg to a rotation that covers the used sides u, -1 if none. */
+    static int turnsTo(int kind, int deg, int u) {
+        if (u == 0 || kind == Board.SOURCE) return 0;
+        if (kind == Board.BULB) return (Integer.numberOfTrailingZeros(u) - deg / 90 + 4) % 4;
+        for (int t = 0; t < 4; t++)
+            if ((Board.maskOf(kind, deg + t * 90) & u) == u) return t;
+        return -1;
+    }
+
+    final Board board;
+    final int rows, cols, n;
+    final int source;
+    final int[] bulbs;
+    /** Domain of each cell. */
+    final int[] dom;
+    /** neighbour[idx*4+d] = index of the neighbour on side d, -1 off the board. */
+    final int[] neighbour;
+    /** Angles the turns are counted from, a snapshot of the board when created. */
+    final int[] start;
+    /* turns[idx*16+u]: clockwise turns value u costs in the cell, -1 if it can't cover it */
+    private final byte[] turns;
+
+    private int[] trailCell, trailDom;
+    private int   trailLen;
+    private final int[] queue;
+    private final boolean[] queued;
+    private int qHead, qSize;
+    /* depth first search of connect() */
+    private final int[] disc, low, parent, parentSide, next, stack;
+    private final int[] counted, cutCount, bridgeCount;
+    private int stamp;
+    private final boolean[] reached, mustUse, mustOpen;
+    /* path bound: Dijkstra over (cell, entry side) */
+    private final int[] minTurns, dist, bulbDone;
+    /** region[idx]: the bulb nearest to the cell (by steps on the grid). */
+    private final int[] region;
+    private final int[][] buckets = new int[4][];
+    private final int[] bucketSize = new int[4];
+    private int pathStamp = 1;
+
+    /** Number of assignments tried. */
+    long nodes;
+
+    Propagator(Board board) {
+        this(board, null);
+    }
+
+    /** State counting turns from the given angles (r*cols+c), or from the board's own if null. */
+    Propagator(Board board, int[] from) {
+        this.board = board;
+        rows = board.getRows();
+        cols = board.getCols();
+        n = rows * cols;
+        source = board.getSourceIndex();
+        bulbs = new int[board.getBulbCount()];
+        for (int i = 0; i < bulbs.length; i++) bulbs[i] = board.getBulbIndex(i);
+
+        neighbour = new int[n * 4];
+        dom = new int[n];
+        for (int idx = 0; idx < n; idx++) {
+            int r = idx / cols, c = idx % cols;
+            int d0 = domainOf(board.kindAt(idx));
+            for (Direction d : DIRS) {
+                int nr = r + d.dRow(), nc = c + d.dCol();
+                boolean inside = nr >= 0 && nr < rows && nc >= 0 && nc < cols;
+                neighbour[idx * 4 + d.ordinal()] = inside ? nr * cols + nc : -1;
+                if (!inside) d0 &= ~OPEN[d.ordinal()];     // nothing to connect to
+            }
+            dom[idx] = d0;
+        }
+        start = new int[n];
+        turns = new byte[n * 16];
+        for (int idx = 0; idx < n; idx++) {
+            int kind = board.kindAt(idx);
+            start[idx] = from != null ? ((from[idx] % 360) + 360) % 360 : board.rotationAt(idx);
+            for (int u = 0; u < 16; u++) turns[idx * 16 + u] = (byte) turnsTo(kind, start[idx], u);
+        }
+        trailCell = new int[n * 4];
+        trailDom  = new int[n * 4];
+        queue  = new int[n];
+        queued = new boolean[n];
+        disc = new int[n];
+        low  = new int[n];
+        parent = new int[n];
+        parentSide = new int[n];
+        next  = new int[n];
+        stack = new int[n];
+        reached  = new boolean[n];
+        counted = new int[n];
+        cutCount = new int[n];
+        bridgeCount = new int[n];
+        mustUse  = new boolean[n];
+        mustOpen = new boolean[n];
+        minTurns = new int[n];
+        dist = new int[n * 4];
+        bulbDone = new int[n];
+        for (int b = 0; b < 4; b++) buckets[b] = new int[n * 4];
+        region = regions();
+    }
+
+    /** Copy sharing the board geometry, used to hand a branch to another thread. */
+    Propagator(Propagator p) {
+        board = p.board;
+        rows = p.rows;
+        cols = p.cols;
+        n = p.n;
+        source = p.source;
+        bulbs = p.bulbs;
+        neighbour = p.neighbour;
+        start = p.start;
+        turns = p.turns;
+        dom = p.dom.clone();
+        trailCell = new int[n * 4];
+        trailDom  = new int[n * 4];
+        queue  = new int[n];
+        queued = new boolean[n];
+        disc = new int[n];
+        low  = new int[n];
+        parent = new int[n];
+        parentSide = new int[n];
+        next  = new int[n];
+        stack = new int[n];
+        reached  = new boolean[n];
+        counted = new int[n];
+        cutCount = new int[n];
+        bridgeCount = new int[n];
+        mustUse  = new boolean[n];
+        mustOpen = new boolean[n];
+        minTurns = new int[n];
+        dist = new int[n * 4];
+        bulbDone = new int[n];
+        for (int b = 0; b < 4; b++) buckets[b] = new int[n * 4];
+        region = p.region;
+    }
+
+    /* breadth first search from all bulbs at once, every cell joins the first bulb to get there */
+    private int[] regions() {
+        int[] out = new int[n], bfs = new int[n];
+        Arrays.fill(out, -1);
+        int head = 0, tail = 0;
+        for (int bulb : bulbs) {
+            out[bulb] = bulb;
+            bfs[tail++] = bulb;
+        }
+        while (head < tail) {
+            int v = bfs[head++];
+            for (int d = 0; d < 4; d++) {
+                int w = neighbour[v * 4 + d];
+                if (w == -1 || out[w] != -1) continue;
+                out[w] = out[v];
+                bfs[tail++] = w;
+            }
+        }
+        return out;
+    }
+
+    /** Propagates the starting domains; false if the board has no solution. */
+    boolean init() {
+        if (source == -1 || bulbs.length == 0) return false;
+        for (int idx = 0; idx < n; idx++) enqueue(idx);
+        return propagate() && connect();
+    }
+
+    int mark() { return trailLen; }
+
+    /** Restores the domains to the state of the mark. */
+    void undo(int mark) {
+        while (trailLen > mark) {
+            trailLen--;
+            dom[trailCell[trailLen]] = trailDom[trailLen];
+        }
+        clearQueue();
+    }
+
+    /** Fixes the cell to the value u and propagates; false on a dead end. */
+    boolean assign(int idx, int u) {
+        nodes++;
+        return restrict(idx, 1 << u) && propagate() && connect();
+    }
+
+    /** Removes the values from the cell's domain and propagates; false on a dead end. */
+    boolean exclude(int idx, int values) {
+        return restrict(idx, dom[idx] & ~values) && propagate() && connect();
+    }
+
+    private boolean restrict(int idx, int d) {
+        if (d == dom[idx]) return true;
+        if (d == 0) return false;
+        if (trailLen == trailCell.length) {
+            trailCell = Arrays.copyOf(trailCell, trailLen * 2);
+            trailDom  = Arrays.copyOf(trailDom, trailLen * 2);
+        }
+        trailCell[trailLen] = idx;
+        trailDom[trailLen++] = dom[idx];
+        dom[idx] = d;
+        enqueue(idx);
+        return true;
+    }
+
+    private void enqueue(int idx) {
+        if (queued[idx]) return;
+        queued[idx] = true;
+        queue[(qHead + qSize++) % n] = idx;
+    }
+
+    private void clearQueue() {
+        while (qSize > 0) {
+            queued[queue[qHead]] = false;
+            qHead = (qHead + 1) % n;
+            qSize--;
+        }
+    }
+
+    /** Makes every shared edge consistent: a side is used only if the neighbour can use it too. */
+    private boolean propagate() {
+        while (qSize > 0) {
+            int a = queue[qHead];
+            qHead = (qHead + 1) % n;
+            qSize--;
+            queued[a] = false;
+
+            int da = dom[a];
+            for (int d = 0; d < 4; d++) {
+                int b = neighbour[a * 4 + d];
+                if (b == -1) continue;
+                int opp = (d + 2) & 3;
+                int db = dom[b];
+                if ((da & OPEN[d]) == 0)             db &= ~OPEN[opp];
+                if ((da & ~OPEN[d] & ALL_VALUES) == 0) db &= OPEN[opp];
+                if (!restrict(b, db)) {
+                    clearQueue();
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Current can only use edges both cells may still open and never passes
+     * through a bulb. Every bulb has to be reachable from the source that way
+     * and cells out of reach stay unused. A depth first search over the reached
+     * cells (Tarjan's low links) then finds the cells and edges every path to
+     * some bulb goes through; those must carry current. That search lets paths
+     * cross bulbs, so it may miss some of them, but never forces a wrong one.
+     */
+    private boolean connect() {
+        while (true) {
+            if (!reach()) return false;
+            separators();
+
+            boolean changed = false;
+            for (int idx = 0; idx < n; idx++) {
+                int d0 = dom[idx], d1 = d0;
+                if (!reached[idx]) d1 &= UNUSED;
+                if (mustUse[idx]) d1 &= ~UNUSED;
+                if (mustOpen[idx]) {
+                    int p = parent[idx], side = parentSide[idx];
+                    d1 &= OPEN[(side + 2) & 3];
+                    if ((dom[p] & OPEN[side]) != dom[p]) {
+                        if (!restrict(p, dom[p] & OPEN[side])) return false;
+                        changed = true;
+                    }
+                }
+                if (d1 == d0) continue;
+                if (!restrict(idx, d1)) return false;
+                changed = true;
+            }
+            if (!changed) return true;
+            if (!propagate()) return false;
+        }
+    }
+
+    private boolean open(int v, int d, int w) {
+        return w != -1 && (dom[v] & OPEN[d]) != 0 && (dom[w] & OPEN[(d + 2) & 3]) != 0;
+    }
+
+    /** Marks the cells current may still get to, false if some bulb is out of reach. */
+    private boolean reach() {
+        Arrays.fill(reached, false);
+        int sp = 0;
+        reached[source] = true;
+        stack[sp++] = source;
+        while (sp > 0) {
+            int v = stack[--sp];
+            if (v != source && board.kindAt(v) == Board.BULB) continue;     // bulbs pass nothing
+            for (int d = 0; d < 4; d++) {
+                int w = neighbour[v * 4 + d];
+                if (!open(v, d, w) || reached[w]) continue;
+                reached[w] = true;
+                stack[sp++] = w;
+            }
+        }
+        for (int bulb : bulbs) if (!reached[bulb]) return false;
+        return true;
+    }
+
+    /**
+     * Tarjan's search over the reached cells without bulbs. Cutting a cell p
+     * off the source loses exactly its child subtrees whose low link doesn't
+     * climb above p. A bulb is lost if all the cells that may feed it are, so
+     * p must carry current if every such feeder is p or lies in one of those
+     * subtrees; the same goes for bridges, which must then be used.
+     */
+    private void separators() {
+        Arrays.fill(disc, 0);
+        Arrays.fill(mustUse, false);       // a failed connect() may have left some behind
+        Arrays.fill(mustOpen, false);
+        int time = 0, sp = 0;
+        disc[source] = low[source] = ++time;
+        parent[source] = -1;
+        next[source] = 0;
+        stack[sp++] = source;
+        while (sp > 0) {
+            int v = stack[sp - 1];
+            if (next[v] == 4) {
+                sp--;
+                if (parent[v] != -1) low[parent[v]] = Math.min(low[parent[v]], low[v]);
+                continue;
+            }
+            int d = next[v]++;
+            int w = neighbour[v * 4 + d];
+            if (!open(v, d, w) || !reached[w] || board.kindAt(w) == Board.BULB) continue;
+            if (disc[w] == 0) {
+                disc[w] = low[w] = ++time;
+                parent[w] = v;
+                parentSide[w] = d;
+                next[w] = 0;
+                stack[sp++] = w;
+            } else if (w != parent[v]) {
+                low[v] = Math.min(low[v], disc[w]);
+            }
+        }
+
+        for (int bulb : bulbs) {
+            stamp++;
+            int feeders = 0;
+            for (int d = 0; d < 4; d++) {
+                int x = neighbour[bulb * 4 + d];
+                if (!open(bulb, d, x) || disc[x] == 0) continue;
+                feeders++;
+                count(x, cutCount);
+                for (int c = x, p = parent[c]; p != -1; c = p, p = parent[c]) {
+                    if (low[c] < disc[p]) continue;
+                    count(p, cutCount);
+                    if (low[c] > disc[p]) count(c, bridgeCount);
+                }
+            }
+            for (int d = 0; d < 4; d++) {
+                int x = neighbour[bulb * 4 + d];
+                if (!open(bulb, d, x) || disc[x] == 0) continue;
+                for (int c = x; c != -1; c = parent[c]) {
+                    if (counted[c] != stamp) continue;
+                    if (cutCount[c] == feeders)    mustUse[c] = true;
+                    if (bridgeCount[c] == feeders) mustOpen[c] = true;
+                }
+            }
+        }
+    }
+
+    /* per bulb tally, counted[] tells which entries belong to the current bulb */
+    private void count(int idx, int[] tally) {
+        if (counted[idx] != stamp) {
+            counted[idx] = stamp;
+            cutCount[idx] = 0;
+            bridgeCount[idx] = 0;
+        }
+        tally[idx]++;
+    }
+
+    /**
+     * Undecided cell to branch on, -1 if every cell is decided. Cells that must
+     * carry current go first, so the search follows the wires out of the source;
+     * among them the one with the fewest values left.
+     */
+    int pick() {
+        int best = -1, bestScore = Integer.MAX_VALUE;
+        for (int idx = 0; idx < n; idx++) {
+            int size = Integer.bitCount(dom[idx]);
+            if (size < 2) continue;
+            int score = ((dom[idx] & UNUSED) != 0 ? 16 : 0) + size;
+            if (score < bestScore) {
+                best = idx;
+                bestScore = score;
+                if (score == 2) break;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Undecided T or L wire with the most values left, a good place to split
+     * the search between threads; falls back to pick() if there is none.
+     */
+    int pickWide() {
+        int best = -1, bestSize = 2;
+        for (int idx = 0; idx < n; idx++) {
+            int kind = board.kindAt(idx);
+            if (kind != T_WIRE && kind != L_WIRE) continue;
+            int size = Integer.bitCount(dom[idx]);
+            if (size > bestSize) {
+                best = idx;
+                bestSize = size;
+            }
+        }
+        return best != -1 ? best : pick();
+    }
+
+    /** Clockwise turns the value u costs in the cell, -1 if the element can't cover it. */
+    int cost(int idx, int u) {
+        return turns[idx * 16 + u];
+    }
+
+    /** Turns no solution below the current state can do without: each cell's cheapest value. */
+    int lowerBound() {
+        int sum = 0;
+        for (int idx = 0; idx < n; idx++) {
+            int best = 3, base = idx * 16;
+            for (int v = dom[idx]; v != 0 && best > 0; v &= v - 1)
+                best = Math.min(best, Math.max(0, turns[base + Integer.numberOfTrailingZeros(v)]));
+            sum += best;
+        }
+        return sum;
+    }
+
+    /**
+     * Stronger lower bound: besides each cell's cheapest value, current must get
+     * to every bulb along some path, and a cell on it has to cover the sides the
+     * path enters and leaves through. Two estimates of that extra cost:
+     * the costliest of the cheapest paths from the source, and the sum over
+     * bulbs of the cheapest path inside the bulb's own region (cells nearest to
+     * it), which every route to the bulb has to cross last. The regions don't
+     * overlap, so those paths never pay for the same cell twice.
+     * Integer.MAX_VALUE if a bulb can't be reached at all.
+     */
+    int pathBound() {
+        int base = 0;
+        for (int idx = 0; idx < n; idx++) {
+            int best = 3;
+            for (int v = dom[idx]; v != 0 && best > 0; v &= v - 1)
+                best = Math.min(best, Math.max(0, turns[idx * 16 + Integer.numberOfTrailingZeros(v)]));
+            minTurns[idx] = best;
+            base += best;
+        }
+        int worst = cheapestPaths(false);
+        if (worst == Integer.MAX_VALUE) return worst;
+        int local = cheapestPaths(true);
+        if (local == Integer.MAX_VALUE) return local;
+        return base + Math.max(worst, local);
+    }
+
+    /**
+     * Dijkstra over (cell, entry side) with costs 0..3 kept in four buckets.
+     * Returns the costliest bulb, or with inRegion the sum over bulbs of paths
+     * kept inside the bulb's region; Integer.MAX_VALUE if a bulb is missed.
+     */
+    private int cheapestPaths(boolean inRegion) {
+        Arrays.fill(dist, Integer.MAX_VALUE);
+        Arrays.fill(bucketSize, 0);
+        for (int d = 0; d < 4; d++) {
+            int w = neighbour[source * 4 + d];
+            if (open(source, d, w) && (!inRegion || region[w] == region[source])) relax(w * 4 + ((d + 2) & 3), 0);
+        }
+        if (inRegion) {
+            /* the last entry into a region may come from any cell current can pass */
+            for (int c = 0; c < n; c++) {
+                if (!reached[c] || board.kindAt(c) == Board.BULB) continue;
+                for (int d = 0; d < 4; d++) {
+                    int w = neighbour[c * 4 + d];
+                    if (open(c, d, w) && region[w] != region[c]) relax(w * 4 + ((d + 2) & 3), 0);
+                }
+            }
+        }
+
+        int result = 0, left = bulbs.length;
+        for (int cur = 0; left > 0 && queued() > 0; cur++) {
+            int[] bucket = buckets[cur & 3];
+            for (int i = 0; i < bucketSize[cur & 3]; i++) {
+                int state = bucket[i];
+                if (dist[state] != cur) continue;              // stale entry
+                int c = state >> 2, in = state & 3;
+                boolean forced = (dom[c] & UNUSED) == 0;
+                if (board.kindAt(c) == Board.BULB) {
+                    if (bulbDone[c] == pathStamp) continue;
+                    bulbDone[c] = pathStamp;
+                    left--;
+                    int t = Math.max(0, turns[c * 16 + (1 << in)]);
+                    t = cur + (forced ? t - minTurns[c] : t);
+                    result = inRegion ? result + t : Math.max(result, t);
+                    continue;
+                }
+                for (int o = 0; o < 4; o++) {
+                    int w = neighbour[c * 4 + o], m = 1 << in | 1 << o;
+                    if (o == in || !open(c, o, w) || (dom[c] & COVERS[m]) == 0) continue;
+                    if (inRegion && region[w] != region[c]) continue;
+                    int t = Math.max(0, turns[c * 16 + m]);
+                    relax(w * 4 + ((o + 2) & 3), cur + (forced ? Math.max(0, t - minTurns[c]) : t));
+                }
+            }
+            bucketSize[cur & 3] = 0;
+        }
+        pathStamp++;
+        return left > 0 ? Integer.MAX_VALUE : result;
+    }
+
+    private int queued() {
+        int size = 0;
+        for (int b = 0; b < 4; b++) size += bucketSize[b];
+        return size;
+    }
+
+    private void relax(int state, int d) {
+        if (d >= dist[state]) return;
+        dist[state] = d;
+        int b = d & 3;
+        if (bucketSize[b] == buckets[b].length) buckets[b] = Arrays.copyOf(buckets[b], bucketSize[b] * 2);
+        buckets[b][bucketSize[b]++] = state;
+    }
+
+    /**
+     * Drops the values that would lift the lower bound above the budget of turns
+     * and propagates, until nothing changes; false if the budget can't be met.
+     */
+    boolean tighten(int budget) {
+        while (true) {
+            int bound = lowerBound();
+            if (bound > budget) return false;
+            int slack = budget - bound;
+            if (slack >= 3) return true;               // no value costs more than 3 turns
+            boolean changed = false;
+            for (int idx = 0; idx < n; idx++) {
+                int d0 = dom[idx], base = idx * 16, min = 3, keep = 0;
+                if ((d0 & (d0 - 1)) == 0) continue;
+                for (int v = d0; v != 0; v &= v - 1)
+                    min = Math.min(min, Math.max(0, turns[base + Integer.numberOfTrailingZeros(v)]));
+                for (int v = d0; v != 0; v &= v - 1) {
+                    int u = Integer.numberOfTrailingZeros(v);
+                    if (Math.max(0, turns[base + u]) - min <= slack) keep |= 1 << u;
+                }
+                if (keep == d0) continue;
+                if (!restrict(idx, keep)) return false;
+                changed = true;
+            }
+            if (!changed) return true;
+            if (!propagate() || !connect()) return false;
+        }
+    }
+
+    /** Builds the solution once every cell is decided. */
+    Solution toSolution() {
+        int[] rotations = new int[n];
+        boolean[] vital = new boolean[n];
+        for (int idx = 0; idx < n; idx++) {
+            int u = Integer.numberOfTrailingZeros(dom[idx]);
+            int kind = board.kindAt(idx);
+            rotations[idx] = (start[idx] + Math.max(0, cost(idx, u)) * 90) % 360;
+            vital[idx] = u != 0 && kind != Board.BULB;
+        }
+        return new Solution(rotations, vital);
+    }
+}
@@ -0,0 +1,277 @@
+package lightbulb.model.solver;
+
+import lightbulb.model.Board;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Třída SatSolver převádí desku na výrokovou formuli a řeší ji SAT řešičem
+ * s učením klauzulí ({@link Cdcl}). Natočení každé buňky je skupina
+ * proměnných, z nichž platí právě jedna, a každá sdílená hrana má jedinou
+ * proměnnou "hranou teče proud", kterou sdílí obě buňky, takže se na ní
+ * musí shodnout. Hrana může vést proud, jen pokud jsou obě buňky natočené
+ * otevřenou stranou k sobě; drát, do kterého proud přitéká, ho musí i
+ * někam poslat, a žárovka ho bere jen přes svůj vývod. Dosažitelnost žárovek
+ * ze zdroje se do formule přidává líně: když nalezený model některou
+ * žárovku nenapájí, přidá se klauzule, že proud musí překročit hranici
+ * oblasti, kam ze zdroje dosáhl (a hranici části kolem každé tmavé
+ * žárovky), a hledá se znovu. Proměnné vznikají jen pro to, co nechá
+ * šíření omezení z {@link ConstraintSolver}, takže formule je mnohem menší.
+ *
+ * @author Gleb Litvinchuk (xlitvi02)
+ */
+public final class SatSolver implements BoardSolver {
+
+    /** Default limit of conflicts over all rounds, past it solve() gives up. */
+    public static final long CONFLICT_LIMIT = 2_000_000;
+
+    private final long conflictLimit;
+    private long conflicts;
+    private int rounds;
+    private boolean gaveUp;
+
+    /* the formula of the board being solved */
+    private Board board;
+    private int rows, cols, n;
+    private Cdcl sat;
+    /** Domains after the propagation of {@link ConstraintSolver}, they leave far fewer variables. */
+    private Propagator p;
+    /** edge[idx*4+d]: variable of the edge on side d, -1 if current can never use it. */
+    private int[] edge;
+    /** rotVar[idx*4+k]: variable of the k-th distinct mask of the cell, rotMask/rotDeg what it stands for. */
+    private int[] rotVar, rotMask, rotDeg, rotCount;
+
+    public SatSolver() { this(CONFLICT_LIMIT); }
+
+    public SatSolver(long conflictLimit) { this.conflictLimit = conflictLimit; }
+
+    @Override
+    public Solution solve(Board board) {
+        conflicts = 0;
+        rounds = 0;
+        gaveUp = false;
+        this.board = board;
+        Solution s = encode() ? search() : null;
+        this.board = null;
+        sat = null;
+        p = null;
+        return s;
+    }
+
+    /** true if the last solve() ran out of its budget, so null doesn't mean there is no solution. */
+    public boolean gaveUp() { return gaveUp; }
+
+    /** Conflicts the last solve() went through. */
+    public long getConflicts() { return conflicts; }
+
+    /** Times the last solve() had to add a reachability clause and search again, plus one. */
+    public int getRounds() { return rounds; }
+
+    /* ---------------- encoding ---------------- */
+
+    private boolean encode() {
+        rows = board.getRows();
+        cols = board.getCols();
+        n = rows * cols;
+        if (board.getSourceIndex() == -1 || board.getBulbCount() == 0) return false;
+        p = new Propagator(board);
+        if (!p.init()) return false;
+        sat = new Cdcl();
+        edge = new int[n * 4];
+        rotVar = new int[n * 4];
+        rotMask = new int[n * 4];
+        rotDeg = new int[n * 4];
+        rotCount = new int[n];
+
+        /* rotations: distinct masks of every element, one of them holds */
+        for (int idx = 0; idx < n; idx++) {
+            int kind = board.kindAt(idx), start = board.rotationAt(idx);
+            if (kind == Board.EMPTY || p.dom[idx] == Propagator.UNUSED) continue;
+            for (int t = 0; t < 4; t++) {
+                int deg = (start + t * 90) % 360;
+                int m = kind == Board.BULB ? 1 << deg / 90 : Board.maskOf(kind, deg);
+                if (!allowed(idx, m)) continue;                        // propagation ruled out all its uses
+                boolean seen = false;
+                for (int k = 0; k < rotCount[idx]; k++) seen |= rotMask[idx * 4 + k] == m;
+                if (seen) continue;
+                int k = rotCount[idx]++;
+                rotMask[idx * 4 + k] = m;
+                rotDeg[idx * 4 + k] = deg;
+                rotVar[idx * 4 + k] = sat.newVar();
+                sat.setPhase(rotVar[idx * 4 + k], t == 0);      // stay as close to the board as possible
+            }
+            if (rotCount[idx] == 0) return false;
+            int[] one = new int[rotCount[idx]];
+            for (int k = 0; k < one.length; k++) one[k] = Cdcl.lit(rotVar[idx * 4 + k], true);
+            if (!sat.addClause(one)) return false;
+            for (int a = 0; a < one.length; a++)
+                for (int b = a + 1; b < one.length; b++)
+                    if (!sat.addClause(Cdcl.not(one[a]), Cdcl.not(one[b]))) return false;
+        }
+
+        /* edges: one variable per shared side, usable only if both cells can open it */
+        Arrays.fill(edge, -1);
+        for (int idx = 0; idx < n; idx++)
+            for (int d = 1; d < 3; d++) {                         // right and down, each edge once
+                int nb = neighbour(idx, d), back = (d + 2) & 3;
+                if (nb == -1 || !canOpen(idx, d) || !canOpen(nb, back)) continue;
+                if (board.kindAt(idx) == Board.BULB && board.kindAt(nb) == Board.BULB) continue;
+                int v = sat.newVar();
+                sat.setPhase(v, false);
+                edge[idx * 4 + d] = edge[nb * 4 + back] = v;
+                if ((p.dom[idx] & ~Propagator.OPEN[d]) == 0 && !sat.addClause(Cdcl.lit(v, true))) return false;
+                if (!requireOpen(v, idx, d) || !requireOpen(v, nb, back)) return false;
+            }
+
+        for (int idx = 0; idx < n; idx++) {
+            int kind = board.kindAt(idx);
+            if (kind == Board.EMPTY) continue;
+            int[] around = new int[4];
+            int count = 0;
+            for (int d = 0; d < 4; d++) if (edge[idx * 4 + d] != -1) around[count++] = Cdcl.lit(edge[idx * 4 + d], true);
+            if (kind == Board.BULB || kind == Board.SOURCE) {
+                /* a bulb takes current through its lead, the source has to give some */
+                if (!sat.addClause(Arrays.copyOf(around, count))) return false;
+                continue;
+            }
+            /* current entering a wire has to leave it through another side */
+            for (int a = 0; a < count; a++) {
+                int[] c = new int[count];
+                c[0] = Cdcl.not(around[a]);
+                for (int b = 0, k = 1; b < count; b++) if (b != a) c[k++] = around[b];
+                if (!sat.addClause(c)) return false;
+            }
+        }
+        return true;
+    }
+
+    private int neighbour(int idx, int d) {
+        int r = idx / cols + (d == 2 ? 1 : d == 0 ? -1 : 0);
+        int c = idx % cols + (d == 1 ? 1 : d == 3 ? -1 : 0);
+        return r < 0 || r >= rows || c < 0 || c >= cols ? -1 : r * cols + c;
+    }
+
+    /* some value left in the domain fits into the mask */
+    private boolean allowed(int idx, int mask) {
+        for (int u = 0; u < 16; u++)
+            if ((p.dom[idx] >> u & 1) != 0 && (u & ~mask) == 0) return true;
+        return false;
+    }
+
+    private boolean canOpen(int idx, int d) {
+        return (p.dom[idx] & Propagator.OPEN[d]) != 0;
+    }
+
+    /* edge -> one of the rotations open on side d */
+    private boolean requireOpen(int v, int idx, int d) {
+        if (board.kindAt(idx) == Board.SOURCE) return true;
+        int[] c = new int[rotCount[idx] + 1];
+        int len = 0;
+        c[len++] = Cdcl.lit(v, false);
+        for (int k = 0; k < rotCount[idx]; k++)
+            if ((rotMask[idx * 4 + k] >> d & 1) != 0) c[len++] = Cdcl.lit(rotVar[idx * 4 + k], true);
+        return sat.addClause(Arrays.copyOf(c, len));
+    }
+
+    /* ---------------- search with lazy reachability ---------------- */
+
+    private Solution search() {
+        int[] part = new int[n], cells = new int[n];
+        int source = board.getSourceIndex();
+        while (true) {
+            rounds++;
+            long left = conflictLimit - conflicts, before = sat.getConflicts();
+            int result = sat.solve(Math.max(0, left));
+            conflicts += sat.getConflicts() - before;
+            if (result != Cdcl.SAT) {
+                gaveUp = result == Cdcl.UNKNOWN;
+                return null;
+            }
+
+            Arrays.fill(part, 0);
+            int reached = collect(source, 1, part, cells);
+            boolean allLit = true;
+            for (int i = 0; i < board.getBulbCount(); i++) allLit &= part[board.getBulbIndex(i)] == 1;
+            if (allLit) return toSolution(part);
+
+            /*
+             * Current never crossed out of the reached part, and some bulb is
+             * outside of it; any solution has to cross.
+             */
+            List<int[]> cuts = new ArrayList<>();
+            cuts.add(boundary(cells, reached, 1, part));
+
+            /* the same seen from each unlit bulb: current has to come into its part */
+            for (int i = 0, id = 1; i < board.getBulbCount(); i++) {
+                int bulb = board.getBulbIndex(i);
+                if (part[bulb] == 1) continue;
+                int count = collect(bulb, ++id, part, cells);
+                cuts.add(boundary(cells, count, id, part));
+            }
+            for (int[] cut : cuts)                              // the model is gone after the first one
+                if (!sat.addClause(cut)) return null;
+        }
+    }
+
+    /*
+     * Labels the cells current gets to over the used edges of the model from
+     * the source, or from a bulb, which then is the only bulb in its part
+     * (bulbs pass nothing on). Returns how many cells went to cells.
+     */
+    private int collect(int from, int id, int[] part, int[] cells) {
+        int count = 0, done = 0;
+        part[from] = id;
+        cells[count++] = from;
+        while (done < count) {
+            int v = cells[done++];
+            if (v != from && board.kindAt(v) == Board.BULB) continue;
+            for (int d = 0; d < 4; d++) {
+                int e = edge[v * 4 + d];
+                if (e == -1 || !sat.isTrue(e)) continue;
+                int w = neighbour(v, d);
+                if (part[w] == id || id != 1 && board.kindAt(w) == Board.BULB) continue;
+                part[w] = id;
+                cells[count++] = w;
+            }
+        }
+        return count;
+    }
+
+    /*
+     * Edges current could cross into or out of the part: from one of its cells
+     * that passes current on to any cell outside, except into a bulb when the
+     * part doesn't hold the source (a bulb feeds nothing).
+     */
+    private int[] boundary(int[] cells, int count, int id, int[] part) {
+        boolean fromSource = part[board.getSourceIndex()] == id;
+        int[] c = new int[16];
+        int len = 0;
+        for (int k = 0; k < count; k++) {
+            int v = cells[k];
+            if (v != cells[0] && board.kindAt(v) == Board.BULB) continue;
+            for (int d = 0; d < 4; d++) {
+                int e = edge[v * 4 + d];
+                if (e == -1) continue;
+                int w = neighbour(v, d);
+                if (part[w] == id || !fromSource && board.kindAt(w) == Board.BULB) continue;
+                if (len == c.length) c = Arrays.copyOf(c, len * 2);
+                c[len++] = Cdcl.lit(e, true);
+            }
+        }
+        return Arrays.copyOf(c, len);
+    }
+
+    private Solution toSolution(int[] part) {
+        int[] rotations = new int[n];
+        boolean[] vital = new boolean[n];
+        for (int idx = 0; idx < n; idx++) {
+            rotations[idx] = board.rotationAt(idx);
+            for (int k = 0; k < rotCount[idx]; k++)
+                if (sat.isTrue(rotVar[idx * 4 + k])) rotations[idx] = rotDeg[idx * 4 + k];
+            vital[idx] = part[idx] == 1 && board.kindAt(idx) != Board.BULB;
+        }
+        return new Solution(rotations, vital);
+    }
+}
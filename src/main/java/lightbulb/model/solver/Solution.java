@@ -0,0 +1,23 @@
+package lightbulb.model.solver;
+
+import lightbulb.model.Board;
+
+/**
+ * Záznam (record) Solution nese nalezené řešení desky: úhel každé buňky
+ * (index r*cols+c) a příznak, zda buňka leží na cestě proudu ke žárovkám.
+ * Buňky mimo tyto cesty si ponechávají své aktuální otočení.
+ *
+ * @author Gleb Litvinchuk (xlitvi02)
+ */
+public record Solution(int[] rotations, boolean[] vital) {
+
+    /** Stores the solution on the board, so hints and statistics can use it. */
+    public void applyTo(Board board) {
+        board.rememberSolution(rotations, vital);
+    }
+
+    /** Quarter turns the cell still needs to match this solution, 0 for cells off its paths. */
+    public int remainingTurns(Board board, int idx) {
+        return vital[idx] ? board.turnsTo(idx, rotations[idx]) : 0;
+    }
+}
@@ -0,0 +1,397 @@
+package lightbulb.model.solver;
+
+import lightbulb.model.Board;
+import lightbulb.model.Direction;
+import lightbulb.model.PowerFlood;
+import lightbulb.model.WireType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Třída SolutionCounter počítá, kolik různých řešení deska má, a přestane,
+ * jakmile jich najde zadaný počet (pro kontrolu jednoznačnosti stačí dvě).
+ * Řešení je určeno spoji, kterými vede proud; na natočení tmavých buněk ani
+ * na to, kam míří nevyužitá strana svítícího drátu, nezáleží. Prohledává
+ * stejný prostor jako {@link ConstraintSolver}, ale po nalezení řešení
+ * pokračuje. Dvě svítící buňky, jejichž otevřené strany na sebe míří, jsou
+ * vždy propojené, takové větve se proto zahazují hned. Natočení se uzná,
+ * jen když proud při něm skutečně vede právě spoji nalezené sítě (slepé
+ * odbočky nepočítaje), a každá síť se započte jednou. Hledání má omezený
+ * počet uzlů, aby šlo spouštět přímo při generování úrovně.
+ *
+ * @author Gleb Litvinchuk (xlitvi02)
+ */
+public final class SolutionCounter {
+
+    private static final int X_WIRE = Board.wireKind(WireType.X);
+    /** Orientations of one network tried before it is taken as possible. */
+    private static final int MAX_LEAVES = 256;
+
+    /** Default search budget, past it the count is only a lower bound. */
+    public static final long NODE_LIMIT = 10_000;
+
+    private final long nodeLimit;
+    private final List<Solution> solutions = new ArrayList<>();
+    /* the networks of the solutions, to count each one once */
+    private final Set<BitSet> networks = new HashSet<>();
+    private long nodes;
+    private boolean complete;
+
+    /* per cell of the current board */
+    private Propagator p;
+    private Board scratch;                         // the board turned to the orientation being checked
+    private PowerFlood flood;
+    private int[] always;                          // always[idx*16+u]: sides open in every rotation covering u
+    private int[] maskOptions, degOptions, options, choice, order;
+    private int[] stack, seen;
+    private int stamp;
+
+    public SolutionCounter() { this(NODE_LIMIT); }
+
+    public SolutionCounter(long nodeLimit) { this.nodeLimit = nodeLimit; }
+
+    /** true if the board has exactly one solution; false if more, none, or the budget ran out. */
+    public boolean isUnique(Board board) {
+        return count(board, 2) == 1 && complete;
+    }
+
+    /**
+     * Number of distinct solutions, at most limit. If isComplete() is false
+     * afterwards the budget ran out and there may be more.
+     */
+    public int count(Board board, int limit) {
+        solutions.clear();
+        networks.clear();
+        nodes = 0;
+        complete = false;
+        p = new Propagator(board);
+        scratch = board.copy();
+        flood = new PowerFlood(scratch, PowerFlood.Mode.POWERED);
+        prepare();
+        int found = 0;
+        if (!p.init() || limit <= 0) {
+            complete = true;
+            return 0;
+        }
+
+        int cap = 64;
+        int[] cell = new int[cap], values = new int[cap], mark = new int[cap];
+        int sp = 0;
+
+        int next = p.pick();
+        if (next == -1) {
+            if (realise()) found++;
+        } else {
+            cell[0] = next; values[0] = p.dom[next]; mark[0] = p.mark();
+            sp = 1;
+        }
+
+        while (sp > 0 && found < limit && p.nodes < nodeLimit) {
+            int top = sp - 1;
+            if (values[top] == 0) {
+                p.undo(mark[top]);
+                sp--;
+                continue;
+            }
+            int u = ConstraintSolver.cheapest(p, cell[top], values[top]);
+            values[top] &= ~(1 << u);
+            p.undo(mark[top]);
+            if (!p.assign(cell[top], u) || !closable()) continue;
+
+            next = p.pick();
+            if (next == -1) {                        // a network, count it if the elements can form it
+                if (realise()) found++;
+                continue;
+            }
+            if (sp == cap) {
+                cap *= 2;
+                cell   = Arrays.copyOf(cell, cap);
+                values = Arrays.copyOf(values, cap);
+                mark   = Arrays.copyOf(mark, cap);
+            }
+            cell[sp] = next; values[sp] = p.dom[next]; mark[sp] = p.mark();
+            sp++;
+        }
+
+        nodes = p.nodes;
+        complete = sp == 0 || found >= limit;
+        p = null;
+        scratch = null;
+        flood = null;
+        return found;
+    }
+
+    /** false if the last count ran out of budget before reaching its limit. */
+    public boolean isComplete() { return complete; }
+
+    /** The solutions found by the last count, in the order they were found. */
+    public List<Solution> getSolutions() { return List.copyOf(solutions); }
+
+    public long getNodes() { return nodes; }
+
+    /* distinct masks each element may show around the used sides u */
+    private void prepare() {
+        int n = p.n;
+        always = new int[n * 16];
+        maskOptions = new int[n * 4];
+        degOptions = new int[n * 4];
+        options = new int[n];
+        choice = new int[n];
+        order = new int[n];
+        stack = new int[n];
+        seen = new int[n];
+        for (int idx = 0; idx < n; idx++) {
+            int kind = p.board.kindAt(idx);
+            for (int u = 1; u < 16; u++) {
+                int all = Direction.ALL;
+                if (kind == Board.BULB) all = u;
+                else if (kind != Board.SOURCE)
+                    for (int deg = 0; deg < 360; deg += 90) {
+                        int m = Board.maskOf(kind, deg);
+                        if ((m & u) == u) all &= m;
+                    }
+                always[idx * 16 + u] = all;
+            }
+        }
+    }
+
+    /* used sides of a decided cell, -1 while undecided, 0 if dark */
+    private int usedSides(int idx) {
+        int d = p.dom[idx];
+        return (d & (d - 1)) != 0 ? -1 : Integer.numberOfTrailingZeros(d);
+    }
+
+    /** false if two lit cells must face each other over a side neither of them uses. */
+    private boolean closable() {
+        for (int a = 0; a < p.n; a++) {
+            int ua = usedSides(a);
+            if (ua <= 0) continue;
+            for (int d = 1; d < 3; d++) {              // right and down, each edge once
+                int b = p.neighbour[a * 4 + d];
+                if (b == -1 || (ua >> d & 1) != 0) continue;
+                int ub = usedSides(b);
+                if (ub <= 0) continue;
+                if ((always[a * 16 + ua] >> d & 1) != 0 && (always[b * 16 + ub] >> ((d + 2) & 3) & 1) != 0)
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Looks for an orientation of the elements that lights exactly the decided
+     * network, and records it; false if there is none.
+     */
+    private boolean realise() {
+        int n = p.n;
+        for (int idx = 0; idx < n; idx++) {
+            int u = usedSides(idx), kind = p.board.kindAt(idx);
+            options[idx] = 0;
+            if (u == 0 && (kind < Board.WIRE || kind == X_WIRE)) continue;    // dark wires turn too, to stay dark
+            if (kind == Board.SOURCE || kind == Board.BULB) {
+                maskOptions[idx * 4] = always[idx * 16 + u];
+                degOptions[idx * 4] = kind == Board.BULB ? Integer.numberOfTrailingZeros(u) * 90 : p.start[idx];
+                options[idx] = 1;
+                continue;
+            }
+            for (int deg = 0; deg < 360; deg += 90) {
+                int m = Board.maskOf(kind, deg);
+                if ((m & u) != u) continue;
+                boolean seen = false;
+                for (int k = 0; k < options[idx]; k++) seen |= maskOptions[idx * 4 + k] == m;
+                if (seen) continue;
+                /* keep the options whose spare sides touch the fewest lit cells and crosses first */
+                int k = options[idx]++;
+                while (k > 0 && risk(idx, maskOptions[idx * 4 + k - 1] & ~u) > risk(idx, m & ~u)) {
+                    maskOptions[idx * 4 + k] = maskOptions[idx * 4 + k - 1];
+                    degOptions[idx * 4 + k] = degOptions[idx * 4 + k - 1];
+                    k--;
+                }
+                maskOptions[idx * 4 + k] = m;
+                degOptions[idx * 4 + k] = deg;
+            }
+        }
+
+        /*
+         * pick an option per element: the lit ones first in index order, each
+         * checked against the earlier lit neighbours, then the dark wires
+         */
+        int m = 0;
+        for (int idx = 0; idx < n; idx++) if (options[idx] != 0 && usedSides(idx) != 0) order[m++] = idx;
+        for (int idx = 0; idx < n; idx++) if (options[idx] != 0 && usedSides(idx) == 0) order[m++] = idx;
+        int pos = 0, leaves = 0;
+        Arrays.fill(choice, -1);
+        while (pos >= 0) {
+            if (pos == m) {
+                if (darkStaysDark() && record(true)) return true;
+                if (++leaves == MAX_LEAVES) return record(false);   // past the cap, rather one too many than too few
+                pos--;
+                continue;
+            }
+            int idx = order[pos];
+            if (++choice[idx] == options[idx]) {
+                choice[idx] = -1;
+                pos--;
+                continue;
+            }
+            if (fits(idx)) pos++;
+        }
+        return false;
+    }
+
+    /* how likely the spare sides are to link the cell with something it must not */
+    private int risk(int idx, int spare) {
+        int sum = 0;
+        for (int d = 0; d < 4; d++) {
+            int b = p.neighbour[idx * 4 + d];
+            if ((spare >> d & 1) == 0 || b == -1) continue;
+            int kind = p.board.kindAt(b);
+            if (usedSides(b) != 0) sum += 4;
+            else if (kind == X_WIRE) sum += 2;
+            else if (kind != Board.EMPTY) sum += 1;
+        }
+        return sum;
+    }
+
+    private boolean fits(int idx) {
+        int u = usedSides(idx), m = maskOptions[idx * 4 + choice[idx]];
+        if (u == 0) return true;                       // a dark wire is checked with the whole network
+        for (int d = 0; d < 4; d += 3) {               // up and left were chosen already
+            int b = p.neighbour[idx * 4 + d];
+            if (b == -1 || usedSides(b) == 0 || (u >> d & 1) != 0) continue;
+            if ((m >> d & 1) != 0 && (maskOptions[b * 4 + choice[b]] >> ((d + 2) & 3) & 1) != 0) return false;
+        }
+        return true;
+    }
+
+    /*
+     * A dark cell that would link two lit ones in any rotation carries current
+     * too, so that network is counted with the cell lit and not here; one link
+     * alone is just a dead end. Crosses are open on all sides, so a group of
+     * touching dark crosses acts as one such cell, and if it closes a loop a
+     * single link is enough to keep it lit.
+     */
+    private boolean darkStaysDark() {
+        stamp++;
+        for (int b = 0; b < p.n; b++) {
+            int kind = p.board.kindAt(b);
+            if (usedSides(b) != 0 || kind == Board.EMPTY || seen[b] == stamp) continue;
+            if (kind == X_WIRE) {
+                int links = 0, cells = 0, inner = 0, sp = 0;
+                seen[b] = stamp;
+                stack[sp++] = b;
+                while (sp > 0) {
+                    int v = stack[--sp];
+                    cells++;
+                    for (int d = 0; d < 4; d++) {
+                        int w = p.neighbour[v * 4 + d];
+                        if (w == -1) continue;
+                        if (usedSides(w) != 0) links += maskOptions[w * 4 + choice[w]] >> ((d + 2) & 3) & 1;
+                        else if (p.board.kindAt(w) == X_WIRE) {
+                            inner++;
+                            if (seen[w] != stamp) {
+                                seen[w] = stamp;
+                                stack[sp++] = w;
+                            }
+                        }
+                    }
+                }
+                if (links >= 2 || links == 1 && inner / 2 >= cells) return false;
+                continue;
+            }
+            int fewest = 4;
+            for (int deg = 0; deg < 360 && fewest >= 2; deg += 90) {
+                int m = kind == Board.BULB ? 1 << deg / 90 : Board.maskOf(kind, deg), links = 0;
+                for (int d = 0; d < 4; d++) {
+                    int a = p.neighbour[b * 4 + d];
+                    if (a != -1 && usedSides(a) != 0 && (m >> d & 1) != 0
+                            && (maskOptions[a * 4 + choice[a]] >> ((d + 2) & 3) & 1) != 0) links++;
+                }
+                fewest = Math.min(fewest, links);
+            }
+            if (fewest >= 2) return false;
+        }
+        return true;
+    }
+
+    /*
+     * Records the chosen orientation if it lights just the decided network
+     * (or anyway when exact is false); false if not recorded. Each network
+     * is counted once, one lit differently than decided under the decided one.
+     */
+    private boolean record(boolean exact) {
+        int[] rotations = p.start.clone();
+        boolean[] vital = new boolean[p.n];
+        for (int idx = 0; idx < p.n; idx++)
+            if (options[idx] != 0) rotations[idx] = degOptions[idx * 4 + choice[idx]];
+        BitSet lit = network(rotations, vital), decided = decided();
+        if (exact && !lit.equals(decided)) return false;
+        if (!networks.add(lit) && !networks.add(decided)) return false;
+        solutions.add(new Solution(rotations, vital));
+        return true;
+    }
+
+    /* the connections of the decided network, numbered as in network() */
+    private BitSet decided() {
+        BitSet edges = new BitSet(p.n * 2);
+        for (int a = 0; a < p.n; a++) {
+            int u = usedSides(a);
+            if (u > 0)
+                for (int d = 1; d < 3; d++)
+                    if ((u >> d & 1) != 0) edges.set(a * 2 + d - 1);
+        }
+        return edges;
+    }
+
+    /*
+     * The connections current takes at these angles, bit idx*2 for the right
+     * side and idx*2+1 for the bottom one. Wires left with one connection are
+     * dead ends and are cut off, until none is left; the cells that stay
+     * (bulbs aside) are marked in vital.
+     */
+    private BitSet network(int[] rotations, boolean[] vital) {
+        Board b = scratch;
+        for (int idx = 0; idx < p.n; idx++) b.setRotationAt(idx, rotations[idx]);
+        flood.run();
+        boolean[] on = flood.reached().clone();
+
+        int[] links = new int[p.n];
+        for (int a = 0; a < p.n; a++)
+            for (int d = 0; d < 4; d++)
+                if (linked(b, on, a, d)) links[a]++;
+        int sp = 0;
+        for (int a = 0; a < p.n; a++)
+            if (on[a] && links[a] < 2 && b.kindAt(a) >= Board.WIRE) stack[sp++] = a;
+        while (sp > 0) {
+            int a = stack[--sp];
+            if (!on[a]) continue;
+            for (int d = 0; d < 4; d++) {
+                if (!linked(b, on, a, d)) continue;
+                int w = p.neighbour[a * 4 + d];
+                if (--links[w] < 2 && b.kindAt(w) >= Board.WIRE) stack[sp++] = w;
+            }
+            on[a] = false;
+        }
+
+        BitSet edges = new BitSet(p.n * 2);
+        for (int a = 0; a < p.n; a++) {
+            vital[a] = on[a] && b.kindAt(a) != Board.BULB;
+            for (int d = 1; d < 3; d++)                // right and down, each edge once
+                if (linked(b, on, a, d)) edges.set(a * 2 + d - 1);
+        }
+        return edges;
+    }
+
+    /* whether current passes between the lit cell and its neighbour on side d */
+    private boolean linked(Board b, boolean[] on, int a, int d) {
+        int w = p.neighbour[a * 4 + d];
+        return w != -1 && on[a] && on[w]
+                && ((b.maskAt(a) | b.leadAt(a)) >> d & 1) != 0
+                && ((b.maskAt(w) | b.leadAt(w)) >> ((d + 2) & 3) & 1) != 0;
+    }
+}
@@ -0,0 +1,87 @@
+package lightbulb.tools;
+
+import lightbulb.model.Board;
+import lightbulb.model.Difficulty;
+import lightbulb.model.LevelGenerator;
+import lightbulb.model.SplitMix64;
+import lightbulb.model.persistence.BoardSerializer;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Třída BatchGenerator předgeneruje bez grafického rozhraní zadaný počet
+ * úrovní pro každou obtížnost na všech jádrech a uloží je ve formátu
+ * {@link BoardSerializer}. Semínko každé úrovně je odvozené ze základního
+ * semínka, obtížnosti a pořadí, je v názvu souboru i v JSON a stejnou úroveň
+ * z něj vytvoří {@code new LevelGenerator().generate(obtížnost, semínko)}.
+ * Semínko, ze kterého úroveň nejde vytvořit, se přeskočí. Nakonec vypíše
+ * počet úrovní za sekundu.
+ *
+ * Použití: BatchGenerator [úrovní na obtížnost] [výstupní adresář] [základní semínko] [vláken]
+ *
+ * @author Gleb Litvinchuk (xlitvi02)
+ */
+public final class BatchGenerator {
+
+    private BatchGenerator() {}
+
+    public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
+        int count     = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        Path out      = Paths.get(args.length > 1 ? args[1] : "levels");
+        long baseSeed = args.length > 2 ? Long.parseLong(args[2]) : System.nanoTime();
+        int threads   = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+
+        Files.createDirectories(out);
+        System.out.printf("%d levels per difficulty into %s, base seed %d, %d threads%n", count, out, baseSeed, threads);
+
+        /* the generators aren't shared, every worker thread has its own */
+        ThreadLocal<LevelGenerator> generators = ThreadLocal.withInitial(LevelGenerator::new);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        long total = 0, allStart = System.nanoTime();
+        try {
+            for (Difficulty diff : Difficulty.values()) {
+                long start = System.nanoTime();
+                AtomicInteger failed = new AtomicInteger();
+                List<Future<?>> done = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    long seed = seedOf(baseSeed, diff, i);
+                    Path file = out.resolve(String.format("%s-%05d-%016x.json", diff.name().toLowerCase(), i, seed));
+                    done.add(pool.submit(() -> {
+                        try {
+                            Board b = generators.get().generate(diff, seed);
+                            Files.writeString(file, BoardSerializer.toJson(b, diff, seed));
+                        } catch (IllegalStateException ex) {
+                            failed.incrementAndGet();
+                            System.err.println("Warning: skipping seed " + seed + ": " + ex.getMessage());
+                        }
+                        return null;
+                    }));
+                }
+                for (Future<?> f : done) f.get();
+                double sec = (System.nanoTime() - start) / 1e9;
+                int made = count - failed.get();
+                total += made;
+                System.out.printf("%-7s %6d levels %8.2f s %10.1f levels/s%n", diff, made, sec, made / sec);
+            }
+        } finally {
+            pool.shutdown();
+        }
+        double sec = (System.nanoTime() - allStart) / 1e9;
+        System.out.printf("total   %6d levels %8.2f s %10.1f levels/s%n", total, sec, total / sec);
+    }
+
+    /** Seed of the index-th level of the difficulty (SplitMix64 of the three). */
+    static long seedOf(long baseSeed, Difficulty diff, int index) {
+        return SplitMix64.nth(baseSeed, diff.ordinal() * 1_000_003L + index + 1);
+    }
+}
@@ -0,0 +1,139 @@
+package lightbulb.tools;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import lightbulb.controller.replay.GameReplayer;
+import lightbulb.model.Board;
+import lightbulb.model.Difficulty;
+import lightbulb.model.LevelGenerator;
+import lightbulb.model.StreamingGenerator;
+import lightbulb.model.persistence.BoardSerializer;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Třída JsonBenchmark porovná načítání úrovně a logu přes strom JSON
+ * (původní cesta s {@code JsonParser} a {@code JsonObject} na řádek) se
+ * streamovým čtením {@link BoardSerializer#fromJson} a {@link GameReplayer#load}.
+ * Pro obojí vypíše alokované bajty na buňku / řádek a buňky / řádky za sekundu.
+ *
+ * Použití: JsonBenchmark [řádky] [sloupce] [řádků logu] [opakování]
+ *
+ * @author Gleb Litvinchuk (xlitvi02)
+ */
+public final class JsonBenchmark {
+
+    private JsonBenchmark() {}
+
+    public static void main(String[] args) throws IOException {
+        int rows   = args.length > 0 ? Integer.parseInt(args[0]) : 300;
+        int cols   = args.length > 1 ? Integer.parseInt(args[1]) : rows;
+        int lines  = args.length > 2 ? Integer.parseInt(args[2]) : 200_000;
+        int rounds = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+
+        Path dir = Files.createTempDirectory("json-benchmark");
+        try {
+            /* a big level */
+            Path streamed = dir.resolve("level.lbsm");
+            new LevelGenerator(1).generateToFile(rows, cols, Math.max(1, rows * cols / 4000), 4, streamed);
+            Board board = StreamingGenerator.read(streamed);
+            String json = BoardSerializer.toJson(board, Difficulty.HARD);
+            long cells = (long) rows * cols;
+
+            System.out.printf("level %dx%d, %d KB of JSON%n", rows, cols, json.length() >> 10);
+            System.out.println("            bytes/cell   cells/s");
+            for (int round = 0; round < rounds; round++) {
+                long[] tree = measure(() -> treeLevel(json));
+                long[] stream = measure(() -> BoardSerializer.fromJson(json));
+                if (round == rounds - 1) {
+                    print("tree", tree, cells, "%10.1f %9.0f%n");
+                    print("stream", stream, cells, "%10.1f %9.0f%n");
+                }
+            }
+
+            /* a log of random rotations after the level line */
+            Path log = dir.resolve("session.jsonl");
+            Random rnd = new Random(1);
+            try (BufferedWriter w = Files.newBufferedWriter(log)) {
+                w.write(BoardSerializer.toJson(new LevelGenerator(1).generate(Difficulty.HARD), Difficulty.HARD));
+                w.newLine();
+                for (int i = 0; i < lines; i++) {
+                    int prev = rnd.nextInt(4) * 90;
+                    w.write(String.format(
+                            "{\"type\":\"rotate\",\"r\":%d,\"c\":%d,\"prev\":%d,\"next\":%d,\"ts\":%d,\"timer\":%d}",
+                            rnd.nextInt(12), rnd.nextInt(12), prev, (prev + 90) % 360, 1_700_000_000_000L + i, i));
+                    w.newLine();
+                }
+            }
+            System.out.printf("%nlog of %d lines, %d KB%n", lines, Files.size(log) >> 10);
+            System.out.println("            bytes/line   lines/s");
+            for (int round = 0; round < rounds; round++) {
+                long[] tree = measure(() -> treeLog(log));
+                long[] stream = measure(() -> GameReplayer.load(log));
+                if (round == rounds - 1) {
+                    print("tree", tree, lines, "%10.1f %9.0f%n");
+                    print("stream", stream, lines, "%10.1f %9.0f%n");
+                }
+            }
+        } finally {
+            try (var files = Files.list(dir)) {
+                for (Path f : (Iterable<Path>) files::iterator) Files.deleteIfExists(f);
+            }
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    private interface Task { Object run() throws IOException; }
+
+    /* {allocated bytes, nanos} of one run */
+    private static long[] measure(Task task) throws IOException {
+        com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long bytes = mx.getCurrentThreadAllocatedBytes(), start = System.nanoTime();
+        if (task.run() == null) throw new IllegalStateException("Nothing read");
+        return new long[] { mx.getCurrentThreadAllocatedBytes() - bytes, System.nanoTime() - start };
+    }
+
+    private static void print(String name, long[] m, long units, String format) {
+        System.out.printf("%-10s" + format, name, (double) m[0] / units, units * 1e9 / m[1]);
+    }
+
+    /* the former BoardSerializer.fromJson: the whole document as a tree */
+    private static Board treeLevel(String json) {
+        JsonObject obj = JsonParser.parseString(json).getAsJsonObject();
+        int rows = obj.get("rows").getAsInt(), cols = obj.get("cols").getAsInt();
+        Board board = new Board(rows, cols);
+        JsonArray cells = obj.getAsJsonArray("cells");
+        for (int r = 0; r < rows; r++) {
+            JsonArray row = cells.get(r).getAsJsonArray();
+            for (int c = 0; c < cols; c++) {
+                JsonObject jc = row.get(c).getAsJsonObject();
+                board.placeElement(r, c, jc.get("el").getAsString());
+                board.setRotationAt(r * cols + c, jc.get("rot").getAsInt());
+            }
+        }
+        return board;
+    }
+
+    /* the former GameReplayer.load: all lines, then a JsonObject per line */
+    private static Object treeLog(Path log) throws IOException {
+        List<String> lines = Files.readAllLines(log);
+        Board board = treeLevel(lines.getFirst());
+        Gson g = new Gson();
+        long sum = 0;
+        for (int i = 1; i < lines.size(); i++) {
+            JsonObject jo = g.fromJson(lines.get(i), JsonObject.class);
+            if (!"rotate".equals(jo.get("type").getAsString())) continue;
+            sum += jo.get("r").getAsInt() + jo.get("c").getAsInt() + jo.get("prev").getAsInt()
+                    + jo.get("next").getAsInt() + jo.get("timer").getAsInt();
+        }
+        return sum + board.getRows();
+    }
+}
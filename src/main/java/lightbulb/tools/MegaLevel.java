@@ -0,0 +1,48 @@
+package lightbulb.tools;
+
+import lightbulb.model.LevelGenerator;
+import lightbulb.model.StreamingGenerator;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Třída MegaLevel vygeneruje obří úroveň po pásech rovnou do souboru
+ * ({@link StreamingGenerator}) a vypíše počet buněk za sekundu a největší
+ * obsazení haldy. Deska 2000x2000 se tak vejde i do haldy pod 256 MB
+ * (např. -Xmx64m).
+ *
+ * Použití: MegaLevel [řádky] [sloupce] [žárovky] [max. otočení] [výstupní soubor] [semínko]
+ *
+ * @author Gleb Litvinchuk (xlitvi02)
+ */
+public final class MegaLevel {
+
+    private MegaLevel() {}
+
+    public static void main(String[] args) throws IOException {
+        int rows   = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int cols   = args.length > 1 ? Integer.parseInt(args[1]) : rows;
+        int bulbs  = args.length > 2 ? Integer.parseInt(args[2]) : Math.max(1, rows * cols / 4000);
+        int turns  = args.length > 3 ? Integer.parseInt(args[3]) : 4;
+        Path out   = Paths.get(args.length > 4 ? args[4] : "mega.lbsm");
+        long seed  = args.length > 5 ? Long.parseLong(args[5]) : System.nanoTime();
+
+        System.out.printf("%dx%d, %d bulbs, shuffle %d, seed %d, heap max %d MB%n",
+                rows, cols, bulbs, turns, seed, Runtime.getRuntime().maxMemory() >> 20);
+        StreamingGenerator.Result r = new LevelGenerator(seed).generateToFile(rows, cols, bulbs, turns, out);
+        System.out.printf("%s: %d bytes, %.2f s, %.0f cells/s, peak heap %d MB%n",
+                out, r.bytes(), r.nanos() / 1e9, r.cellsPerSecond(), peakHeap() >> 20);
+    }
+
+    private static long peakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+            if (pool.getType() == MemoryType.HEAP) peak += pool.getPeakUsage().getUsed();
+        return peak;
+    }
+}
@@ -0,0 +1,103 @@
+package lightbulb.tools;
+
+import lightbulb.model.LevelData;
+import lightbulb.model.persistence.BoardSerializer;
+import lightbulb.model.persistence.LevelPack;
+import lightbulb.model.persistence.SolutionCache;
+import lightbulb.model.solver.ConstraintSolver;
+import lightbulb.model.solver.Solution;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Třída PackLevels převede adresář s úrovněmi (soubory .json a .lvl) na
+ * jeden balík úrovní ({@link LevelPack}). Úrovně seřadí podle čísla
+ * v názvu „Level N“, názvem v balíku je název souboru bez přípony; úrovně,
+ * které už v balíku jsou (stejné prvky, natočení i obtížnost), přeskočí.
+ * Úrovně uložené bez řešení vyřeší (s omezeným počtem uzlů), aby hra řešení
+ * nemusela hledat. Nakonec balík otevře a vypíše, jak dlouho trvá výpis
+ * indexu a dekódování jedné úrovně.
+ *
+ * Použití: PackLevels [adresář s úrovněmi] [výstupní soubor]
+ *
+ * @author Gleb Litvinchuk (xlitvi02)
+ */
+public final class PackLevels {
+
+    private static final Pattern LEVEL_NUMBER = Pattern.compile("level (\\d+)\\.(json|lvl)", Pattern.CASE_INSENSITIVE);
+    /** Search budget for a level saved without its solution. */
+    private static final long SOLVE_NODES = 5_000_000;
+
+    private PackLevels() {}
+
+    public static void main(String[] args) throws IOException {
+        Path dir = Paths.get(args.length > 0 ? args[0] : "src/main/resources/maps");
+        Path out = Paths.get(args.length > 1 ? args[1] : dir.resolve("levels.pack").toString());
+
+        List<Path> files;
+        try (Stream<Path> list = Files.list(dir)) {
+            files = list.filter(f -> f.getFileName().toString().toLowerCase().matches(".*\\.(json|lvl)"))
+                    .sorted(Comparator.comparingInt(PackLevels::numberOf)
+                            .thenComparing(f -> f.getFileName().toString()))
+                    .toList();
+        }
+
+        long start = System.nanoTime();
+        List<String> names = new ArrayList<>();
+        List<LevelData> levels = new ArrayList<>();
+        /* levels by their binary form; the same pieces turned differently are another puzzle */
+        Map<ByteBuffer, String> seen = new HashMap<>();
+        for (Path f : files) {
+            String file = f.getFileName().toString();
+            try {
+                LevelData level = BoardSerializer.read(Files.readAllBytes(f));
+                String twin = seen.putIfAbsent(
+                        ByteBuffer.wrap(BoardSerializer.toBinary(level.board(), level.difficulty())), file);
+                if (twin != null) {
+                    System.err.println("Warning: " + file + " is the same level as " + twin + ", skipped.");
+                    continue;
+                }
+                if (!level.board().hasSolution()) {
+                    Solution s = SolutionCache.getInstance().solve(level.board(), new ConstraintSolver(SOLVE_NODES));
+                    if (s != null) s.applyTo(level.board());
+                    else System.err.println("Warning: no solution of " + file + " found, packed without one.");
+                }
+                names.add(file.substring(0, file.lastIndexOf('.')));
+                levels.add(level);
+            } catch (RuntimeException ex) {
+                System.err.println("Warning: skipping " + f + ": " + ex.getMessage());
+            }
+        }
+        LevelPack.write(out, names, levels);
+        System.out.printf("%d levels from %s into %s, %d bytes, %.1f ms%n",
+                levels.size(), dir, out, Files.size(out), (System.nanoTime() - start) / 1e6);
+
+        start = System.nanoTime();
+        LevelPack pack = LevelPack.open(out);
+        long listed = System.nanoTime() - start;
+        System.out.printf("open + index of %d levels: %.3f ms%n", pack.size(), listed / 1e6);
+        if (pack.size() > 0) {
+            start = System.nanoTime();
+            LevelData first = pack.load(0);
+            System.out.printf("decoding '%s' (%dx%d): %.3f ms%n", pack.entry(0).name(),
+                    first.board().getRows(), first.board().getCols(), (System.nanoTime() - start) / 1e6);
+        }
+    }
+
+    private static int numberOf(Path f) {
+        Matcher m = LEVEL_NUMBER.matcher(f.getFileName().toString());
+        return m.matches() && m.group(1).length() < 10 ? Integer.parseInt(m.group(1)) : Integer.MAX_VALUE;
+    }
+}
@@ -0,0 +1,62 @@
+package lightbulb.tools;
+
+import lightbulb.model.Board;
+import lightbulb.model.Difficulty;
+import lightbulb.model.LevelGenerator;
+import lightbulb.model.TargetedGenerator;
+import lightbulb.model.solver.DifficultyRater;
+
+import java.util.Arrays;
+
+/**
+ * Třída RatingReport ukazuje, jak se liší skutečná obtížnost úrovní téže
+ * obtížnosti: pro každou vygeneruje vzorek, ohodnotí ho
+ * ({@link DifficultyRater}) a vypíše rozložení skóre. Pak pro každou
+ * čtvrtinu rozložení hledá úroveň cíleně ({@link TargetedGenerator})
+ * a vypíše, kolik kandidátů za sekundu zvládne a jak dlouho hledání trvalo.
+ *
+ * Použití: RatingReport [velikost vzorku] [max. kandidátů] [vláken]
+ *
+ * @author Gleb Litvinchuk (xlitvi02)
+ */
+public final class RatingReport {
+
+    private RatingReport() {}
+
+    public static void main(String[] args) {
+        int samples    = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int candidates = args.length > 1 ? Integer.parseInt(args[1]) : TargetedGenerator.MAX_CANDIDATES;
+        int threads    = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+        LevelGenerator generator = new LevelGenerator(1);
+        DifficultyRater rater = new DifficultyRater();
+        System.out.printf("%d levels sampled per difficulty, at most %d candidates on %d threads%n",
+                samples, candidates, threads);
+
+        try (TargetedGenerator targeted = new TargetedGenerator(threads)) {
+            for (Difficulty diff : Difficulty.values()) {
+                double[] scores = new double[samples];
+                for (int i = 0; i < samples; i++) {
+                    Board b = generator.generate(diff);
+                    scores[i] = rater.rate(b).score();
+                }
+                Arrays.sort(scores);
+                double[] q = { scores[0], at(scores, 0.25), at(scores, 0.5), at(scores, 0.75), scores[samples - 1] };
+                System.out.printf("%n%s: score min %.1f, quartiles %.1f %.1f %.1f, max %.1f%n",
+                        diff, q[0], q[1], q[2], q[3], q[4]);
+                System.out.println("       band   hit  candidates  cand/s        ms  rating");
+
+                for (int i = 0; i < 4; i++) {
+                    TargetedGenerator.Result r = targeted.generate(diff, q[i], q[i + 1], i, candidates);
+                    System.out.printf("%5.1f-%5.1f %5s %11d %7.1f %9.1f  %s%n",
+                            q[i], q[i + 1], r.hit() ? "yes" : "no", r.candidates(), r.candidatesPerSecond(),
+                            r.nanos() / 1e6, r.rating());
+                }
+            }
+        }
+    }
+
+    private static double at(double[] sorted, double quantile) {
+        return sorted[(int) Math.round(quantile * (sorted.length - 1))];
+    }
+}
@@ -0,0 +1,78 @@
+package lightbulb.tools;
+
+import lightbulb.model.Board;
+import lightbulb.model.LevelGenerator;
+import lightbulb.model.solver.ConstraintSolver;
+import lightbulb.model.solver.SatSolver;
+import lightbulb.model.solver.Solution;
+
+import java.util.Random;
+
+/**
+ * Třída SatBenchmark porovnává prohledávání s návratem ({@link ConstraintSolver})
+ * a SAT řešič ({@link SatSolver}) na deskách od 8x8 do 200x200. Desky se
+ * vygenerují vyřešené a pak se všechny prvky náhodně natočí. Oba řešiče mají
+ * omezený rozpočet, takže pro každou velikost je vidět nejen čas, ale i kolik
+ * desek který z nich v rozpočtu nevyřešil.
+ *
+ * Použití: SatBenchmark [počet desek] [uzlů pro prohledávání] [konfliktů pro SAT] [velikosti...]
+ *
+ * @author Gleb Litvinchuk (xlitvi02)
+ */
+public final class SatBenchmark {
+
+    private static final int[] SIZES = { 8, 16, 32, 64, 100, 200 };
+
+    private SatBenchmark() {}
+
+    public static void main(String[] args) {
+        int count      = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        long nodes     = args.length > 1 ? Long.parseLong(args[1]) : 1_000_000;
+        long conflicts = args.length > 2 ? Long.parseLong(args[2]) : 50_000;
+        int[] sizes = SIZES;
+        if (args.length > 3) {
+            sizes = new int[args.length - 3];
+            for (int i = 3; i < args.length; i++) sizes[i - 3] = Integer.parseInt(args[i]);
+        }
+        run(sizes, count, nodes, conflicts);
+    }
+
+    private static void run(int[] sizes, int count, long nodeLimit, long conflictLimit) {
+        LevelGenerator generator = new LevelGenerator();
+        Random rnd = new Random(1);
+        System.out.printf("%d boards per size, search %d nodes, SAT %d conflicts%n", count, nodeLimit, conflictLimit);
+        System.out.println("   size |  search ms  solved  gave up |     SAT ms  solved  gave up   rounds  conflicts");
+
+        for (int size : sizes) {
+            ConstraintSolver search = new ConstraintSolver(nodeLimit);
+            SatSolver sat = new SatSolver(conflictLimit);
+            double searchMs = 0, satMs = 0;
+            int searchSolved = 0, searchGaveUp = 0, satSolved = 0, satGaveUp = 0;
+            long rounds = 0, spent = 0;
+
+            for (int i = 0; i < count; i++) {
+                /* few bulbs: the spanning tree of the generator often can't light more on big boards */
+                Board b = generator.generate(size, size, Math.max(2, size / 4), size, 0);
+                for (int idx = 0; idx < size * size; idx++)
+                    if (b.kindAt(idx) != Board.EMPTY) b.setRotationAt(idx, rnd.nextInt(4) * 90);
+
+                long start = System.nanoTime();
+                Solution s = search.solve(b);
+                searchMs += (System.nanoTime() - start) / 1e6;
+                if (s != null) searchSolved++;
+                if (search.gaveUp()) searchGaveUp++;
+
+                start = System.nanoTime();
+                s = sat.solve(b);
+                satMs += (System.nanoTime() - start) / 1e6;
+                if (s != null) satSolved++;
+                if (sat.gaveUp()) satGaveUp++;
+                rounds += sat.getRounds();
+                spent += sat.getConflicts();
+            }
+            System.out.printf("%7s | %10.1f %7d %8d | %10.1f %7d %8d %8.1f %10d%n",
+                    size + "x" + size, searchMs / count, searchSolved, searchGaveUp,
+                    satMs / count, satSolved, satGaveUp, (double) rounds / count, spent / count);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package lightbulb.tools;
+
+import lightbulb.model.Board;
+import lightbulb.model.LevelGenerator;
+import lightbulb.model.solver.ParallelSolver;
+import lightbulb.model.solver.Solution;
+
+/**
+ * Třída SolverBenchmark měří paralelní řešič na sadě vygenerovaných desek
+ * pro 1 až N vláken. Pro každý počet vláken vypíše čas, počet prohledaných
+ * uzlů a zrychlení proti jednomu vláknu, podle čehož lze odhadnout, kolik
+ * jader se vyplatí pro hromadnou kontrolu úrovní.
+ *
+ * Použití: SolverBenchmark [velikost] [počet desek] [max. vláken]
+ *
+ * @author Gleb Litvinchuk (xlitvi02)
+ */
+public final class SolverBenchmark {
+
+    private SolverBenchmark() {}
+
+    public static void main(String[] args) {
+        int size    = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        int count   = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+        LevelGenerator generator = new LevelGenerator();
+        Board[] boards = new Board[count];
+        for (int i = 0; i < count; i++)
+            boards[i] = generator.generate(size, size, size * size / 20, size, 4);
+        System.out.printf("%d boards %dx%d, 1..%d threads%n", count, size, size, threads);
+
+        /* warm up, so the first row doesn't pay for the JIT */
+        try (ParallelSolver solver = new ParallelSolver(threads)) {
+            for (Board b : boards) solver.solve(b);
+        }
+
+        double base = 0;
+        System.out.println("threads       ms        nodes  speedup  solved");
+        for (int t = 1; t <= threads; t++) {
+            try (ParallelSolver solver = new ParallelSolver(t)) {
+                long nodes = 0;
+                int solved = 0;
+                long start = System.nanoTime();
+                for (Board b : boards) {
+                    Solution s = solver.solve(b);
+                    if (s != null) solved++;
+                    nodes += solver.getNodes();
+                }
+                double ms = (System.nanoTime() - start) / 1e6;
+                if (t == 1) base = ms;
+                System.out.printf("%7d %8.1f %12d %8.2f %7d%n", t, ms, nodes, base / ms, solved);
+            }
+        }
+    }
+}
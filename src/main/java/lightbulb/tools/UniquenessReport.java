@@ -0,0 +1,72 @@
+package lightbulb.tools;
+
+import lightbulb.model.Difficulty;
+import lightbulb.model.LevelGenerator;
+
+/**
+ * Třída UniquenessReport generuje úrovně s kontrolou jednoznačnosti a pro
+ * každou obtížnost vypíše, kolik postavených úrovní bylo zamítnuto. Kromě
+ * výchozího nastavení obtížnosti zkouší i jiné počty přidaných hran a jinou
+ * hustotu křížení, aby bylo vidět, jak parametry ovlivňují víceznačnost.
+ * Úroveň, pro kterou se jednoznačná nenašla, se počítá jako vzdaná.
+ *
+ * Použití: UniquenessReport [úrovní na řádek] [IGNORE|REJECT|REPAIR]
+ *
+ * @author Gleb Litvinchuk (xlitvi02)
+ */
+public final class UniquenessReport {
+
+    /** Cells per cross junction tried for every difficulty, 0 for none. */
+    private static final int[] CELLS_PER_CROSS = { 20, 40, 0 };
+
+    private UniquenessReport() {}
+
+    public static void main(String[] args) {
+        int levels = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        LevelGenerator.Uniqueness policy = args.length > 1
+                ? LevelGenerator.Uniqueness.valueOf(args[1]) : LevelGenerator.Uniqueness.REJECT;
+
+        System.out.printf("%d levels per row, %s%n", levels, policy);
+        System.out.println("difficulty  extra  cross  attempts  rejected  ambiguous  undecided  repaired  given up  count ms  level ms");
+        for (Difficulty diff : Difficulty.values()) {
+            /* as the game generates it */
+            LevelGenerator gen = generator(policy, 20);
+            long start = System.nanoTime();
+            for (int i = 0; i < levels; i++) {
+                try {
+                    gen.generate(diff);
+                } catch (IllegalStateException ex) {
+                    /* counted as given up */
+                }
+            }
+            print(diff, diff.extraEdges, 20, gen.getStats(diff), (System.nanoTime() - start) / 1e6 / levels);
+
+            for (int extra : new int[] { 0, diff.extraEdges * 2 })
+                for (int cross : CELLS_PER_CROSS) {
+                    gen = generator(policy, cross);
+                    start = System.nanoTime();
+                    for (int i = 0; i < levels; i++) {
+                        try {
+                            gen.generate(diff.rows, diff.cols, diff.bulbs, extra, diff.shuffleTurns);
+                        } catch (IllegalStateException ex) {
+                            /* counted as given up */
+                        }
+                    }
+                    print(diff, extra, cross, gen.getStats(), (System.nanoTime() - start) / 1e6 / levels);
+                }
+        }
+    }
+
+    private static LevelGenerator generator(LevelGenerator.Uniqueness policy, int cellsPerCross) {
+        LevelGenerator gen = new LevelGenerator();
+        gen.setUniqueness(policy);
+        gen.setCellsPerCross(cellsPerCross);
+        return gen;
+    }
+
+    private static void print(Difficulty diff, int extra, int cross, LevelGenerator.Stats st, double levelMs) {
+        System.out.printf("%-10s %6d %6s %9d %8.1f%% %10d %10d %9d %9d %9.2f %9.1f%n",
+                diff, extra, cross == 0 ? "-" : "1/" + cross, st.getAttempts(), 100 * st.rejectionRate(),
+                st.getAmbiguous(), st.getUndecided(), st.getRepaired(), st.getGivenUp(), st.countMillis(), levelMs);
+    }
+}
@@ -8,6 +8,7 @@ import javafx.scene.layout.GridPane;
 import javafx.scene.layout.StackPane;
 import java.io.InputStream;
 import java.util.EnumMap;
+import java.util.List;
 import java.util.Map;
 import java.util.function.BiConsumer;
 
@@ -17,11 +18,11 @@ import lightbulb.model.*;
  * Třída BoardView je JavaFX komponenta zodpovědná za vizuální zobrazení
  * herní desky. Vykresluje jednotlivé buňky s jejich prvky, barvami
  * a rotacemi. Zpracovává také uživatelské interakce (kliknutí myší)
- * pro otáčení prvků.
+ * pro otáčení prvků. Po změně desky překreslí jen změněné buňky.
  *
  * @author Gleb Litvinchuk (xlitvi02)
  */
-public class BoardView extends GridPane {
+public class BoardView extends GridPane implements BoardListener {
 
     private static final String IMG_RESOURCE_BASE_PATH = "/img/";
 
@@ -158,10 +159,27 @@ public class BoardView extends GridPane {
 
         if (interactive) {
             gameController.updateConnections();
+            gameController.addListener(this);
         }
         refresh();
     }
 
+    @Override
+    public void onBoardChanged(Board b) {
+        refresh();
+    }
+
+    /** Redraws only the cells that changed. */
+    @Override
+    public void onCellsChanged(Board b, List<BoardChange> changes) {
+        cached = null;
+        for (BoardChange ch : changes) redraw(ch.row(), ch.col());
+    }
+
+    protected void redraw(int r, int c) {
+        updateButton(cellBtns[r][c], board.getCell(r, c), r, c);
+    }
+
     private boolean isPowered(int r,int c){
         if (interactive) return gameController.isConnected(r,c);
         if (cached==null) cached = BoardTools.computePowered(board);
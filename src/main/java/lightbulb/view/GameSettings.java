@@ -1,10 +1,13 @@
 package lightbulb.view;
 
+import lightbulb.controller.LevelPool;
+
 import java.util.prefs.Preferences;
 
 /**
  * Třída GameSettings spravuje a perzistentně ukládá uživatelská nastavení hry,
- * jako jsou vybraný skin pro herní prvky a téma vzhledu aplikace (světlé/tmavé).
+ * jako jsou vybraný skin pro herní prvky, téma vzhledu aplikace (světlé/tmavé)
+ * a počet připravených vygenerovaných úrovní.
  * Pro ukládání využívá Java Preferences API.
  *
  * @author Gleb Litvinchuk (xlitvi02)
@@ -21,6 +24,9 @@ public class GameSettings {
     private static final Theme DEFAULT_THEME = Theme.LIGHT;
     private static Theme currentTheme = loadThemePreference();
 
+    // --- Level Pool Settings ---
+    private static final String POOL_DEPTH_PREF_KEY = "poolDepth";
+
     public static String[] getAvailableSkins() {
         return new String[]{"standart", "oil"};
     }
@@ -71,6 +77,24 @@ public class GameSettings {
         }
     }
 
+    /**
+     * Returns how many generated levels are kept ready for each difficulty.
+     * @return pool depth
+     */
+    public static int getPoolDepth() {
+        Preferences prefs = Preferences.userNodeForPackage(GameSettings.class);
+        return prefs.getInt(POOL_DEPTH_PREF_KEY, LevelPool.DEFAULT_DEPTH);
+    }
+
+    /**
+     * Sets and saves the pool depth, used from the next start.
+     * @param depth levels kept ready for each difficulty
+     */
+    public static void setPoolDepth(int depth) {
+        Preferences prefs = Preferences.userNodeForPackage(GameSettings.class);
+        prefs.putInt(POOL_DEPTH_PREF_KEY, Math.max(0, depth));
+    }
+
     /**
      * Checks if such a skin exists (based on the list for now).
      * @param skinPath skin folder name
@@ -125,4 +149,4 @@ public class GameSettings {
         Preferences prefs = Preferences.userNodeForPackage(GameSettings.class);
         prefs.put(SKIN_PREF_KEY, skinPath);
     }
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -2,39 +2,119 @@
 package lightbulb.view;
 
 import lightbulb.controller.GameController;
+import lightbulb.controller.HintService;
+import javafx.application.Platform;
 import javafx.scene.control.Button;
 import javafx.scene.control.Label;
 import javafx.scene.layout.StackPane;
 import lightbulb.model.Board;
-import lightbulb.model.BoardListener;
+import lightbulb.model.BoardChange;
 import lightbulb.model.Cell;
+import lightbulb.model.persistence.SolutionCache;
+import lightbulb.model.solver.MinTurnSolver;
+import lightbulb.model.solver.Solution;
+
+import java.util.List;
 
 /**
  * Třída HintBoardView je specializovaná verze BoardView určená pro zobrazení
  * nápovědy v okně s подсказками. Zobrazuje počet otáček potřebných
- * k dosažení správné pozice pro každý otočný prvek.
- * Je neinteraktivní a implementuje BoardListener pro aktualizace.
+ * k dosažení správné pozice pro každý otočný prvek. Počty se měří k nejbližšímu
+ * řešení od aktuálního stavu, které se po každém tahu znovu dopočítá na
+ * pozadí (HintService), takže tah nikdy nečeká na výpočet. Je neinteraktivní
+ * a překresluje jen buňky, které se změnily.
  *
  * @author Gleb Litvinchuk (xlitvi02)
  */
-public class HintBoardView extends BoardView implements BoardListener {
+public class HintBoardView extends BoardView {
+
+    /** Search budget per move, keeps the window responsive on big boards. */
+    private static final long HINT_NODES = 20_000;
+
+    private final HintService hints = new HintService(Platform::runLater);
+    private Solution closest;
+    /* turns the closest solution needs, -1 unless it's known to be the fewest possible */
+    private int closestTurns = -1;
+    /* turns made since the shown solution was computed */
+    private int madeSince;
+
+    /* result of one background search */
+    private record Hint(Solution solution, int turns) {}
 
     public HintBoardView(Board board, GameController gc) {
         super(board, gc);
         setMouseTransparent(true);
-        board.addListener(this);
     }
 
+    /** Redraws every cell and looks for the closest solution again. */
     @Override
-    public void onBoardChanged(Board board) {
-        refresh();
+    public void refresh() {
+        super.refresh();
+        if (hints != null) findClosest();       // null while the super constructor runs
+    }
+
+    @Override
+    public void onCellsChanged(Board b, List<BoardChange> changes) {
+        for (BoardChange ch : changes) madeSince += ((ch.newRotation() - ch.oldRotation()) / 90 + 4) % 4;
+        super.onCellsChanged(b, changes);
+        findClosest();
+    }
+
+    /** Drops the running search, the next refresh starts a new one. */
+    public void cancelSearch() {
+        hints.cancel();
+    }
+
+    /** Stops the background searches for good, for when the game is replaced. */
+    public void dispose() {
+        hints.close();
+    }
+
+    /* the cached solution right away if there is one, then a search for a closer one on a snapshot in the background */
+    private void findClosest() {
+        Board board = getBoard();
+        if (closest == null) {
+            Solution cached = SolutionCache.getInstance().get(board);
+            if (cached != null) show(new Hint(cached, -1));
+        }
+        /* the fewest turns can drop by at most the turns made since */
+        Solution from = closest;
+        int atLeast = closestTurns >= 0 ? Math.max(0, closestTurns - madeSince) : 0;
+        hints.request(board, snapshot -> {
+            MinTurnSolver solver = new MinTurnSolver(HINT_NODES);
+            Solution s = from != null ? solver.solve(snapshot, from, atLeast) : solver.solve(snapshot);
+            return new Hint(s, s != null && solver.isOptimal() ? solver.getTurns() : -1);
+        }, this::show);
+    }
+
+    /* on the FX thread, only for the latest request */
+    private void show(Hint hint) {
+        Solution before = closest;
+        madeSince = 0;
+        if (hint.solution() == null) {          // out of budget, keep the old hints
+            closestTurns = -1;
+            return;
+        }
+        closest = hint.solution();
+        closestTurns = hint.turns();
+        if (before == null) {
+            super.refresh();
+            return;
+        }
+        /* cells the new solution wants elsewhere */
+        int cols = getBoard().getCols();
+        for (int idx = 0; idx < before.rotations().length; idx++)
+            if (before.rotations()[idx] != closest.rotations()[idx] || before.vital()[idx] != closest.vital()[idx])
+                redraw(idx / cols, idx % cols);
     }
 
     @Override
     protected void updateButton(Button btn, Cell cell, int r, int c) {
         super.updateButton(btn, cell, r, c);
 
-        int n = cell.getRemainingTurns(getBoard(), r, c);
+        /* against the view's own closest solution, the board's remembered one until it is found */
+        int n = closest != null ? closest.remainingTurns(getBoard(), r * getBoard().getCols() + c)
+                                : cell.getRemainingTurns(getBoard(), r, c);
         if (n==0 || !cell.getElement().isRotatable()) return;
 
         Label lbl = new Label(String.valueOf(n));
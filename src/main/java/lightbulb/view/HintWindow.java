@@ -14,13 +14,28 @@ import lightbulb.model.Board;
  */
 public class HintWindow extends Stage {
 
+    private final HintBoardView hbv;
+
     public HintWindow(Board board, GameController gc) {
         setTitle("Hints");
 
-        HintBoardView hbv = new HintBoardView(board, gc);
+        hbv = new HintBoardView(board, gc);
         setScene(new javafx.scene.Scene(hbv));
 
-        /* close the listener for X */
-        setOnHidden(e -> board.removeListener(hbv));
+        /* the hidden window doesn't listen or search, it catches up when shown again */
+        setOnHidden(e -> {
+            gc.removeListener(hbv);
+            hbv.cancelSearch();
+        });
+        setOnShowing(e -> {
+            gc.addListener(hbv);
+            hbv.refresh();
+        });
+    }
+
+    /** Hides the window and stops its searches, for when the game is replaced. */
+    public void dispose() {
+        hide();
+        hbv.dispose();
     }
 }
@@ -2,6 +2,8 @@ package lightbulb.view;
 
 import lightbulb.controller.GameController;
 import lightbulb.controller.GameHistory;
+import lightbulb.controller.HintService;
+import lightbulb.controller.LevelPool;
 import lightbulb.controller.replay.GameReplayer;
 import javafx.animation.*;
 import javafx.application.Application;
@@ -34,13 +36,16 @@ import javafx.scene.Group;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.net.URL;
+import java.nio.ByteBuffer;
 import javafx.application.Platform;
 
 import lightbulb.model.Board;
 import lightbulb.model.Difficulty;
-import lightbulb.model.LevelGenerator;
 import lightbulb.model.persistence.BoardSerializer;
+import lightbulb.model.persistence.LevelPack;
+import lightbulb.model.persistence.SolutionCache;
 import lightbulb.model.LevelData;
+import lightbulb.model.solver.ConstraintSolver;
 
 /**
  * Třída MainWindow je hlavním vstupním bodem JavaFX aplikace.
@@ -65,18 +70,27 @@ public class MainWindow extends Application {
     private VBox       levelChoiceRootPane;
     private HintWindow hintWin;
     private Board currentBoard;
+    private GameController gameController;
     private BoardView  gameBoardView;
 
     private Timeline        clock;
     private AtomicInteger   counter;
     private Difficulty currentDiff;
+    private LevelPool levelPool;
+    private LevelPack levelPack = LevelPack.empty();
+    /* finds the solution of a level loaded without one */
+    private HintService levelSolver;
+    /** Search budget for that solution, a level too hard for it just has no solution remembered. */
+    private static final long SOLVE_NODES = 2_000_000;
 
     private final String lightThemePath = "/styles/light-theme.css";
     private final String darkThemePath = "/styles/dark-theme.css";
+    private final String levelPackName = "levels.pack";
 
     /* -------------------- start app ------------------------------------ */
     @Override public void start(Stage primaryStage) {
         this.primaryStage = primaryStage;
+        levelPool = new LevelPool(GameSettings.getPoolDepth());
         buildMainMenu();  buildDifficultyMenu(); buildSettingsPane(); buildLevelSelectionPane();
 
         try {
@@ -94,6 +108,11 @@ public class MainWindow extends Application {
         primaryStage.show();
     }
 
+    /* the unused generated levels are kept for the next start */
+    @Override public void stop() {
+        if (levelPool != null) levelPool.close();
+    }
+
     /* ==================== M E N U ============================================ */
 
     private void buildMainMenu() {
@@ -187,13 +206,17 @@ public class MainWindow extends Application {
 
             BorderPane pane = new BorderPane(canvas);
 
+            Button toStart  = new Button("⏮");
             Button stepBack = new Button("◀");
             Button stepFwd  = new Button("▶");
+            Button toEnd    = new Button("⏭");
             Button play     = new Button("Play");
             Button backMenu = new Button("Back");
 
             stepBack.setOnAction(e -> { if (rep.stepBack())    replayView.refresh(); });
             stepFwd .setOnAction(e -> { if (rep.stepForward()) replayView.refresh(); });
+            toStart .setOnAction(e -> { rep.seek(0);               replayView.refresh(); });
+            toEnd   .setOnAction(e -> { rep.seek(rep.getLength()); replayView.refresh(); });
 
             play.setOnAction(e -> {
                 rep.resumePlay();
@@ -204,7 +227,7 @@ public class MainWindow extends Application {
 
             backMenu.setOnAction(e -> showMainMenu());
 
-            HBox bar = new HBox(10, backMenu, stepBack, stepFwd, play);
+            HBox bar = new HBox(10, backMenu, toStart, stepBack, stepFwd, toEnd, play);
             bar.setAlignment(Pos.CENTER);
             pane.setTop(bar);
 
@@ -216,21 +239,19 @@ public class MainWindow extends Application {
     }
 
     private void handleUndo() {
-        GameHistory.getInstance().undo();
-        if (currentBoard != null) {
-            GameController gc = new GameController(currentBoard);
-            gc.updateConnections();
-            if (gameBoardView != null) gameBoardView.refresh();
+        if (gameController == null) {
+            GameHistory.getInstance().undo();
+            return;
         }
+        gameController.undo();
     }
 
     private void handleRedo() {
-        GameHistory.getInstance().redo();
-        if (currentBoard != null) {
-            GameController gc = new GameController(currentBoard);
-            gc.updateConnections();
-            if (gameBoardView != null) gameBoardView.refresh();
+        if (gameController == null) {
+            GameHistory.getInstance().redo();
+            return;
         }
+        gameController.redo();
     }
 
     private void handleRotateRequest(int r, int c) {
@@ -243,9 +264,13 @@ public class MainWindow extends Application {
     /* -------------------- Generate new game ----------------------------- */
 
     private void startGeneratedGame(Difficulty diff){
-        LevelGenerator gen = new LevelGenerator();
-        Board board = gen.generate(
-                diff.rows, diff.cols, diff.bulbs, diff.extraEdges, diff.shuffleTurns);
+        Board board;
+        try {
+            board = levelPool.take(diff);
+        } catch (IllegalStateException ex) {
+            new Alert(Alert.AlertType.ERROR, "Can't generate a level:\n" + ex.getMessage()).showAndWait();
+            return;
+        }
         currentDiff = diff;
         launchGame(board);
     }
@@ -261,20 +286,16 @@ public class MainWindow extends Application {
         GameHistory.reset();
         GameHistory.getInstance().snapshot(currentBoard, currentDiff);
 
-        /* MVC */
-        GameController gc  = new GameController(board);
+        /* MVC, the old controller stops listening to its board */
+        if (gameController != null) gameController.dispose();
+        solveInBackground(board);
+        GameController gc  = GameController.attach(board);
+        this.gameController = gc;
         this.gameBoardView = new BoardView(currentBoard, gc);
         this.gameBoardView.setOnRotateRequest((r, c) -> {
+            /* the board event updates the connections and redraws the changed cells */
             handleRotateRequest(r, c);
 
-            if (gc != null) {
-                gc.updateConnections();
-            } else {
-                System.err.println("gc is null в лямбде обработчика вращения!");
-            }
-
-            this.gameBoardView.refresh();
-
             if (gc != null && gc.isGameWon() && this.gameBoardView.getOnWin() != null) {
                 this.gameBoardView.getOnWin().run();
             }
@@ -316,6 +337,12 @@ public class MainWindow extends Application {
                     }
                 }
 
+                /* the levels in the pack are numbered too */
+                for (LevelPack.Entry packed : levelPack.entries()) {
+                    Matcher m = Pattern.compile("level (\\d+)", Pattern.CASE_INSENSITIVE).matcher(packed.name());
+                    if (m.matches()) nextLevelNumber = Math.max(nextLevelNumber, Integer.parseInt(m.group(1)) + 1);
+                }
+
                 String newFileName = "Level " + nextLevelNumber + ".json";
                 Path newFilePath = mapsDir.resolve(newFileName);
 
@@ -333,6 +360,7 @@ public class MainWindow extends Application {
 
 
         /* ---- Hints ---- */
+        if (hintWin != null) hintWin.dispose();
         hintWin = new HintWindow(board, gc);
         hintWin.initOwner(primaryStage);
         hintsBtn.setOnAction(e -> {
@@ -404,6 +432,16 @@ public class MainWindow extends Application {
 
     }
 
+    /* a loaded level comes without a solution, it's found (or taken from the cache) off the FX thread */
+    private void solveInBackground(Board board) {
+        if (levelSolver != null) levelSolver.close();
+        levelSolver = null;
+        if (board.hasSolution()) return;
+        levelSolver = new HintService(Platform::runLater);
+        levelSolver.request(board, snapshot -> SolutionCache.getInstance().solve(snapshot, new ConstraintSolver(SOLVE_NODES)),
+                solution -> { if (solution != null) solution.applyTo(board); });
+    }
+
     private void launchGame(Board board) {
         if (this.currentDiff == null) {
             System.err.println("Warning: currentDiff is null when calling launchGame(board). Defaulting to MEDIUM.");
@@ -413,8 +451,13 @@ public class MainWindow extends Application {
         launchGame(board, limit == 0 ? 0 : limit);
     }
 
-    private List<Path> discoverLevels() {
-        List<Path> levelFiles = new ArrayList<>();
+    /* a level of the list: a loose file read while listing, or an entry of the level pack decoded when opened */
+    private record LevelSource(String name, byte[] data, LevelPack pack, int index) {
+        LevelData load() { return data != null ? BoardSerializer.read(data) : pack.load(index); }
+    }
+
+    private List<LevelSource> discoverLevels() {
+        List<LevelSource> levels = new ArrayList<>();
         String mapsResourcePath = "maps";
 
         try {
@@ -450,6 +493,7 @@ public class MainWindow extends Application {
                     try {
                         myPath = Paths.get(uri);
                     } catch (java.nio.file.FileSystemNotFoundException e) {
+                        /* opened just for the listing, closed below */
                         fileSystem = FileSystems.newFileSystem(uri, Collections.emptyMap());
                         myPath = fileSystem.getPath(mapsResourcePath);
                     }
@@ -462,10 +506,33 @@ public class MainWindow extends Application {
                     return Collections.emptyList();
                 }
 
-                levelFiles = walkAndSortLevels(myPath);
+                /* only the index of the pack is read here, a jar entry can't be mapped so it's read whole */
+                Path packPath = myPath.resolve(levelPackName);
+                levelPack = LevelPack.empty();
+                if (Files.isRegularFile(packPath)) {
+                    try {
+                        levelPack = uri.getScheme().equals("file") ? LevelPack.open(packPath)
+                                : LevelPack.wrap(ByteBuffer.wrap(Files.readAllBytes(packPath)));
+                    } catch (IOException e) {
+                        System.err.println("Error reading level pack " + packPath + ": " + e.getMessage());
+                    }
+                }
+                for (int i = 0; i < levelPack.size(); i++)
+                    levels.add(new LevelSource(levelPack.entry(i).name(), null, levelPack, i));
 
-            } finally {
+                /* loose files are read right away, their file system doesn't outlive this method */
+                for (Path levelPath : walkAndSortLevels(myPath)) {
+                    String name = levelNameOf(levelPath);
+                    if (levelPack.indexOf(name) >= 0) continue;         // packed already
+                    try {
+                        levels.add(new LevelSource(name, Files.readAllBytes(levelPath), null, -1));
+                    } catch (IOException e) {
+                        System.err.println("Error loading level for preview: " + levelPath + " - " + e.getMessage());
+                    }
+                }
 
+            } finally {
+                if (fileSystem != null) fileSystem.close();
             }
 
         } catch (IOException | URISyntaxException e) {
@@ -475,15 +542,24 @@ public class MainWindow extends Application {
             System.err.println("Unexpected error during level discovery: " + e.getMessage());
             e.printStackTrace();
         }
-        return levelFiles;
+        return levels;
+    }
+
+    /* "Level N" or the file name without the extension */
+    private static String levelNameOf(Path levelPath) {
+        String fileName = levelPath.getFileName().toString();
+        Matcher matcher = Pattern.compile("(Level \\d+)\\.(json|lvl)", Pattern.CASE_INSENSITIVE).matcher(fileName);
+        if (matcher.matches()) return matcher.group(1);
+        if (fileName.toLowerCase().matches(".*\\.(json|lvl)")) return fileName.substring(0, fileName.lastIndexOf('.'));
+        return fileName;
     }
 
     private List<Path> walkAndSortLevels(Path directoryPath) throws IOException {
-        Pattern sortPattern = Pattern.compile("level (\\d+)\\.json", Pattern.CASE_INSENSITIVE);
+        Pattern sortPattern = Pattern.compile("level (\\d+)\\.(json|lvl)", Pattern.CASE_INSENSITIVE);
         try (var stream = Files.walk(directoryPath, 1)) {
             return stream
                     .filter(path -> !Files.isDirectory(path))
-                    .filter(path -> path.toString().toLowerCase().endsWith(".json"))
+                    .filter(path -> path.toString().toLowerCase().matches(".*\\.(json|lvl)"))
                     .sorted(Comparator.comparingInt(path -> {
                         Matcher m = sortPattern.matcher(path.getFileName().toString());
                         if (m.matches()) {
@@ -531,52 +607,44 @@ public class MainWindow extends Application {
         if (levelTilePane == null) return;
         levelTilePane.getChildren().clear();
 
-        List<Path> levelFiles = discoverLevels();
-        int levelCounterForFallback = 1;
+        List<LevelSource> levels = discoverLevels();
 
-        for (Path levelPath : levelFiles) {
+        for (LevelSource level : levels) {
             try {
-                String levelJson = Files.readString(levelPath);
-                LevelData levelData = BoardSerializer.fromJson(levelJson);
-                Board board = levelData.board();
-                Difficulty loadedDifficulty = levelData.difficulty();
-
-                // --- Creating a preview ---
-                BoardView previewBoardView = new BoardView(board, null);
-                previewBoardView.setMouseTransparent(true);
                 double previewSize = 160;
-                double originalWidth = board.getCols() * BoardView.CELL;
-                double originalHeight = board.getRows() * BoardView.CELL;
                 StackPane previewContainer = new StackPane();
                 previewContainer.setPrefSize(previewSize, previewSize);
                 previewContainer.setMaxSize(previewSize, previewSize);
                 previewContainer.setMinSize(previewSize, previewSize);
                 previewContainer.setStyle("-fx-border-color: #cccccc; -fx-border-width: 1px;");
-                Group boardGroup = new Group(previewBoardView);
-                double scaleX = previewSize / originalWidth;
-                double scaleY = previewSize / originalHeight;
-                double scale = Math.min(scaleX, scaleY);
-                boardGroup.setScaleX(scale);
-                boardGroup.setScaleY(scale);
-                previewContainer.getChildren().add(boardGroup);
-                StackPane.setAlignment(boardGroup, Pos.CENTER);
-
-
-                // --- Level name ---
-                String fileName = levelPath.getFileName().toString();
-                String displayName;
-                Pattern displayPattern = Pattern.compile("(Level \\d+)\\.json", Pattern.CASE_INSENSITIVE);
-                Matcher matcher = displayPattern.matcher(fileName);
-                if (matcher.matches()) {
-                    displayName = matcher.group(1);
+                LevelData loaded = null;
+
+                if (level.data() != null) {
+                    // --- Creating a preview ---
+                    loaded = level.load();
+                    Board board = loaded.board();
+                    BoardView previewBoardView = new BoardView(board, null);
+                    previewBoardView.setMouseTransparent(true);
+                    double originalWidth = board.getCols() * BoardView.CELL;
+                    double originalHeight = board.getRows() * BoardView.CELL;
+                    Group boardGroup = new Group(previewBoardView);
+                    double scaleX = previewSize / originalWidth;
+                    double scaleY = previewSize / originalHeight;
+                    double scale = Math.min(scaleX, scaleY);
+                    boardGroup.setScaleX(scale);
+                    boardGroup.setScaleY(scale);
+                    previewContainer.getChildren().add(boardGroup);
+                    StackPane.setAlignment(boardGroup, Pos.CENTER);
                 } else {
-                    if (fileName.toLowerCase().endsWith(".json")) {
-                        displayName = fileName.substring(0, fileName.lastIndexOf('.'));
-                    } else {
-                        displayName = fileName;
-                    }
+                    // --- Packed level: only what the index says, decoded on click ---
+                    LevelPack.Entry entry = level.pack().entry(level.index());
+                    Label info = new Label(entry.rows() + " x " + entry.cols() + "\n" + entry.difficulty());
+                    info.setStyle("-fx-font-size: 16px; -fx-text-alignment: center;");
+                    previewContainer.getChildren().add(info);
                 }
-                Label nameLabel = new Label(displayName);
+
+                // --- Level name ---
+                Label nameLabel = new Label(level.name());
                 nameLabel.setStyle("-fx-font-size: 14px; -fx-padding: 5px 0 0 0;");
 
 
@@ -587,17 +655,21 @@ public class MainWindow extends Application {
                 levelTile.getStyleClass().add("level-tile");
 
                 // Click handler
+                LevelData preloaded = loaded;
                 levelTile.setOnMouseClicked(event -> {
-                    this.currentDiff = loadedDifficulty;
-                    launchGame(board);
+                    try {
+                        LevelData levelData = preloaded != null ? preloaded : level.load();
+                        this.currentDiff = levelData.difficulty();
+                        launchGame(levelData.board());
+                    } catch (RuntimeException e) {
+                        new Alert(Alert.AlertType.ERROR, "Can't load level " + level.name() + ":\n" + e.getMessage()).showAndWait();
+                    }
                 });
 
                 levelTilePane.getChildren().add(levelTile);
 
-            } catch (IOException e) {
-                System.err.println("Error loading level for preview: " + levelPath + " - " + e.getMessage());
             } catch (Exception e) {
-                System.err.println("Unexpected error processing level " + levelPath + ": " + e.getMessage());
+                System.err.println("Unexpected error processing level " + level.name() + ": " + e.getMessage());
                 e.printStackTrace();
             }
         }
@@ -654,7 +726,15 @@ public class MainWindow extends Application {
 
     private void showMainMenu() {
         if (clock != null) clock.stop();
-        if (hintWin != null) hintWin.hide();
+        if (hintWin != null) hintWin.dispose();
+        if (gameController != null) {
+            gameController.dispose();
+            gameController = null;
+        }
+        if (levelSolver != null) {
+            levelSolver.close();
+            levelSolver = null;
+        }
         GameHistory.getInstance().close();
         scene.setRoot(mainMenuPane);
     }
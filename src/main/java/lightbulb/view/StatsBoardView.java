@@ -1,54 +1,59 @@
 // view/StatsBoardView.java
 package lightbulb.view;
 
+import javafx.application.Platform;
 import javafx.scene.control.Button;
 import javafx.scene.control.Label;
 import javafx.scene.layout.StackPane;
+import lightbulb.controller.HintService;
 import lightbulb.model.*;
+import lightbulb.model.solver.MinTurnSolver;
+import lightbulb.model.solver.Solution;
 
 /**
  * Třída StatsBoardView je specializovaná verze BoardView určená pro zobrazení
  * statistik ve statistickém okně. Ukazuje informace o počtu provedených
- * a minimálně potřebných otočení pro každou buňku.
+ * a minimálně potřebných otočení pro každou buňku; minimum se počítá
+ * k řešení nejbližšímu výchozímu stavu úrovně. Hledání běží na pozadí,
+ * do té doby se místo minima ukazuje otazník.
  *
  * @author Gleb Litvinchuk (xlitvi02)
  */
 public class StatsBoardView extends BoardView {
 
+    private final HintService hints = new HintService(Platform::runLater);
     private int[][] made, need;
 
     public StatsBoardView(Board board) {
         super(board, null);
         setMouseTransparent(true);
+        if (made == null) made = board.getMadeMatrix();
+        int[][] turns = made;
+        hints.request(board, snapshot -> neededTurns(snapshot, turns), result -> {
+            need = result;
+            refresh();
+        });
+    }
+
+    /** Stops the background search, for when the window is closed. */
+    public void dispose() {
+        hints.close();
     }
 
     @Override
     protected void updateButton(Button btn, Cell cell, int r, int c) {
-        if (made == null) {
-            made = getBoard().getMadeMatrix();
-            need = getBoard().getRemainingTurnsMatrix();
-        }
+        if (made == null) made = getBoard().getMadeMatrix();
 
         super.updateButton(btn, cell, r, c);
 
-        int cycle = 4;
-        Element el = cell.getElement();
-        if (el instanceof Wire w && w.getWireType() == WireType.I) cycle = 2;
-        if (el instanceof Wire w && w.getWireType() == WireType.X) cycle = 1;
-        if (el == null) cycle = 1;
-
-        int m = made[r][c]  % cycle;
-        int n = need[r][c];
-
-        int total = (m + n) % cycle;
-        if (total == 0 && (m + n) > 0) total = cycle;
-
-        if (total == 0) return;
+        int m = made[r][c];
+        int n = need != null ? need[r][c] : 0;
+        if (m == 0 && n == 0) return;
 
         String color = (m > n) ? "#c62828"    // unnecessary clicks → red
                 : "#1565c0";   // minimal → blue
 
-        Label lbl = new Label(m + "/" + total);
+        Label lbl = new Label(m + "/" + (need != null ? String.valueOf(n) : "?"));
         lbl.setStyle("""
             -fx-font-weight:bold;
             -fx-text-fill: %s;
@@ -57,4 +62,19 @@ public class StatsBoardView extends BoardView {
 
         ((StackPane) btn.getGraphic()).getChildren().add(lbl);
     }
+
+    /** Fewest turns per cell from the state the level started in (current angle minus the turns made). */
+    private static int[][] neededTurns(Board board, int[][] made) {
+        int rows = board.getRows(), cols = board.getCols();
+        int[] start = new int[rows * cols];
+        for (int idx = 0; idx < start.length; idx++)
+            start[idx] = ((board.rotationAt(idx) - made[idx / cols][idx % cols] * 90) % 360 + 360) % 360;
+
+        int[][] out = new int[rows][cols];
+        Solution s = new MinTurnSolver().solve(board, start);
+        if (s == null) return out;
+        for (int idx = 0; idx < start.length; idx++)
+            out[idx / cols][idx % cols] = (s.rotations()[idx] - start[idx] + 360) % 360 / 90;
+        return out;
+    }
 }
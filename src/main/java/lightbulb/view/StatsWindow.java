@@ -36,5 +36,6 @@ public class StatsWindow extends Stage {
 
         setScene(new Scene(root));
         setResizable(false);
+        setOnHidden(e -> boardView.dispose());
     }
 }
@@ -0,0 +1,60 @@
+package lightbulb.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * BitboardFlood musí dát stejný výsledek jako skalární průchod
+ * PowerFlood v režimu POWERED, i u šířek na hranici 64bitových slov.
+ *
+ * @author Gleb Litvinchuk (xlitvi02)
+ */
+class BitboardFloodTest {
+
+    @Test
+    void matchesScalarFloodAcrossWordBoundaries() {
+        Random rnd = new Random(5);
+        for (int cols : new int[] { 1, 2, 7, 63, 64, 65, 127, 128, 130 })
+            for (int rows : new int[] { 1, 3, 40 })
+                for (int i = 0; i < 20; i++)
+                    assertSame(RandomBoards.random(rnd, rows, cols), rows + "x" + cols + " #" + i);
+    }
+
+    @Test
+    void matchesScalarFloodOnSolvedLevels() {
+        LevelGenerator generator = new LevelGenerator(5);
+        for (Difficulty diff : Difficulty.values())
+            for (int i = 0; i < 10; i++) {
+                Board b = generator.generate(diff);
+                assertSame(b, diff + " #" + i + " shuffled");
+                for (int idx = 0; idx < b.getRows() * b.getCols(); idx++)
+                    b.setRotationAt(idx, b.getSolutionRotation(idx / b.getCols(), idx % b.getCols()));
+                assertSame(b, diff + " #" + i + " solved");
+            }
+    }
+
+    @Test
+    void followsRotations() {
+        Random rnd = new Random(6);
+        Board b = RandomBoards.random(rnd, 20, 65);
+        for (int step = 0; step < 300; step++) {
+            b.rotateAt(rnd.nextInt(20 * 65));
+            assertSame(b, "after rotation " + step);
+        }
+    }
+
+    private static void assertSame(Board b, String what) {
+        PowerFlood scalar = new PowerFlood(b, PowerFlood.Mode.POWERED);
+        scalar.run();
+        BitboardFlood bits = new BitboardFlood(b);
+        bits.run();
+        for (int r = 0; r < b.getRows(); r++)
+            for (int c = 0; c < b.getCols(); c++)
+                assertEquals(scalar.isReached(r, c), bits.isReached(r, c), what + ", cell " + r + "," + c);
+        assertEquals(scalar.getReachedBulbs(), bits.getReachedBulbs(), what + ", lit bulbs");
+        assertEquals(scalar.getTotalBulbs(), bits.getTotalBulbs(), what + ", bulbs");
+    }
+}
@@ -0,0 +1,62 @@
+package lightbulb.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Přírůstková aktualizace PowerFlood.update musí po každém otočení
+ * skončit ve stejném stavu jako nový úplný průchod.
+ *
+ * @author Gleb Litvinchuk (xlitvi02)
+ */
+class PowerFloodTest {
+
+    @Test
+    void updateMatchesFullPassPowered() {
+        checkRotations(PowerFlood.Mode.POWERED, 1);
+    }
+
+    @Test
+    void updateMatchesFullPassVital() {
+        checkRotations(PowerFlood.Mode.VITAL, 2);
+    }
+
+    @Test
+    void updateMatchesFullPassWhileSolving() {
+        Board b = new LevelGenerator(3).generate(Difficulty.HARD);
+        PowerFlood inc = new PowerFlood(b, PowerFlood.Mode.POWERED);
+        inc.run();
+        for (int idx = 0; idx < b.getRows() * b.getCols(); idx++) {
+            int r = idx / b.getCols(), c = idx % b.getCols();
+            b.setRotationAt(idx, b.getSolutionRotation(r, c));
+            inc.update(r, c);
+            assertMatches(b, inc, PowerFlood.Mode.POWERED, "cell " + idx);
+        }
+        assertEquals(inc.getTotalBulbs(), inc.getReachedBulbs());
+    }
+
+    private static void checkRotations(PowerFlood.Mode mode, long seed) {
+        Random rnd = new Random(seed);
+        for (int[] size : new int[][] { { 1, 1 }, { 1, 9 }, { 6, 6 }, { 15, 23 } }) {
+            Board b = RandomBoards.random(rnd, size[0], size[1]);
+            PowerFlood inc = new PowerFlood(b, mode);
+            inc.run();
+            for (int step = 0; step < 500; step++) {
+                int idx = rnd.nextInt(size[0] * size[1]);
+                b.rotateAt(idx);
+                inc.update(idx / size[1], idx % size[1]);
+                assertMatches(b, inc, mode, size[0] + "x" + size[1] + ", step " + step);
+            }
+        }
+    }
+
+    private static void assertMatches(Board b, PowerFlood inc, PowerFlood.Mode mode, String what) {
+        PowerFlood full = new PowerFlood(b, mode);
+        full.run();
+        assertArrayEquals(full.reached(), inc.reached(), what);
+        assertEquals(full.getReachedBulbs(), inc.getReachedBulbs(), what + ", lit bulbs");
+    }
+}
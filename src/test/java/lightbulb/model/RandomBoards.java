@@ -0,0 +1,27 @@
+package lightbulb.model;
+
+import java.util.Random;
+
+/**
+ * Náhodné desky pro testy: jeden zdroj, jinak převážně dráty v náhodném
+ * natočení, aby proud došel daleko, a mezi nimi žárovky a prázdná místa.
+ *
+ * @author Gleb Litvinchuk (xlitvi02)
+ */
+public final class RandomBoards {
+
+    private RandomBoards() {}
+
+    public static Board random(Random rnd, int rows, int cols) {
+        Board b = new Board(rows, cols);
+        int source = rnd.nextInt(rows * cols);
+        for (int idx = 0; idx < rows * cols; idx++) {
+            int roll = rnd.nextInt(20), rot = rnd.nextInt(4) * 90;
+            if (idx == source) b.placeAt(idx, Board.SOURCE, rot);
+            else if (roll < 2) continue;
+            else if (roll < 4) b.placeAt(idx, Board.BULB, rot);
+            else b.placeAt(idx, Board.wireKind(WireType.values()[rnd.nextInt(4)]), rot);
+        }
+        return b;
+    }
+}
@@ -0,0 +1,52 @@
+package lightbulb.model;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Testy generátoru obřích úrovní po pásech: výšky, po kterých zbude pás
+ * o jednom řádku, musí projít, úroveň musí být zhasnutá a řešení ji rozsvítí.
+ *
+ * @author Gleb Litvinchuk (xlitvi02)
+ */
+class StreamingGeneratorTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void singleRowIsRejectedRightAway() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new StreamingGenerator(1).write(1, 50, 1, 4, dir.resolve("thin.lbsm")));
+    }
+
+    @Test
+    void remainderOfOneRowIsBuilt() throws IOException {
+        for (int rows : new int[] { 65, 129 })
+            for (long seed = 0; seed < 3; seed++) {
+                Path file = dir.resolve(rows + "-" + seed + ".lbsm");
+                /* a lamp per row, so the last row would have had one too */
+                new StreamingGenerator(seed).write(rows, 70, rows, 4, file);
+                Board b = StreamingGenerator.read(file);
+                assertEquals(rows, b.getRows());
+                assertEquals(70, b.getCols());
+                assertEquals(rows, b.getBulbCount());
+                assertEquals(0, litBulbs(b), rows + " rows, seed " + seed + ": a lamp is lit");
+
+                for (int idx = 0; idx < rows * 70; idx++)
+                    b.setRotationAt(idx, b.getSolutionRotation(idx / 70, idx % 70));
+                assertEquals(rows, litBulbs(b), rows + " rows, seed " + seed + ": the solution leaves a lamp dark");
+            }
+    }
+
+    private static int litBulbs(Board b) {
+        PowerFlood flood = new PowerFlood(b, PowerFlood.Mode.POWERED);
+        flood.run();
+        return flood.getReachedBulbs();
+    }
+}
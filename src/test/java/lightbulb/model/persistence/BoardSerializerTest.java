@@ -0,0 +1,141 @@
+package lightbulb.model.persistence;
+
+import com.google.gson.JsonSyntaxException;
+import lightbulb.model.Board;
+import lightbulb.model.Difficulty;
+import lightbulb.model.LevelData;
+import lightbulb.model.LevelGenerator;
+import lightbulb.model.PowerFlood;
+import lightbulb.model.solver.ConstraintSolver;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Binární formát úrovní: deska, obtížnost, seed i uložené řešení musí
+ * projít zápisem a čtením beze změny, poškozená data či nesmyslné rozměry
+ * v hlavičce musí skončit chybou, ne obří alokací.
+ * Čtení úroveň jen sestaví, bez uloženého řešení ji nechá bez řešení.
+ *
+ * @author Gleb Litvinchuk (xlitvi02)
+ */
+class BoardSerializerTest {
+
+    @Test
+    void binaryRoundTrip() {
+        LevelGenerator generator = new LevelGenerator(23);
+        long seed = -42;
+        for (Difficulty diff : Difficulty.values())
+            for (int i = 0; i < 5; i++, seed += 1_000_000_007L) {
+                Board b = generator.generate(diff);
+                byte[] data = BoardSerializer.toBinary(b, diff, seed, true);
+                assertTrue(BoardSerializer.isBinary(data));
+                assertEquals(Long.valueOf(seed), BoardSerializer.seedOf(data));
+
+                LevelData level = BoardSerializer.read(data);
+                assertEquals(diff, level.difficulty());
+                assertSameBoard(b, level.board(), diff + " #" + i);
+            }
+    }
+
+    @Test
+    void oddCellCountAndOffsetBuffer() {
+        Board b = new Board(3, 5);
+        b.placeAt(7, Board.SOURCE, 0);
+        b.placeAt(6, Board.BULB, 180);
+        b.placeAt(8, Board.BULB, 0);
+        b.placeAt(2, Board.BULB, 90);
+        new ConstraintSolver().solve(b).applyTo(b);
+        byte[] data = BoardSerializer.toBinary(b, Difficulty.EASY, null, true);
+        assertNull(BoardSerializer.seedOf(data));
+        assertEquals(15 + 4 + 2 * 8, data.length);
+
+        byte[] padded = new byte[data.length + 10];
+        System.arraycopy(data, 0, padded, 3, data.length);
+        LevelData level = BoardSerializer.fromBinary(ByteBuffer.wrap(padded).position(3));
+        assertEquals(Difficulty.EASY, level.difficulty());
+        assertSameBoard(b, level.board(), "3x5");
+    }
+
+    @Test
+    void levelsWithoutSolutionAreOnlyParsed() {
+        Board b = new LevelGenerator(4).generate(Difficulty.HARD);
+        long misses = SolutionCache.getInstance().getMisses();
+        for (LevelData level : List.of(
+                BoardSerializer.fromJson(BoardSerializer.toJson(b, Difficulty.HARD)),
+                BoardSerializer.read(BoardSerializer.toBinary(b, Difficulty.HARD)),
+                BoardSerializer.fromJson(BoardSerializer.toCompactJson(level(b), Difficulty.HARD)))) {
+            assertFalse(level.board().hasSolution());
+            assertEquals(Difficulty.HARD, level.difficulty());
+            for (int idx = 0; idx < b.getRows() * b.getCols(); idx++)
+                assertEquals(b.maskAt(idx), level.board().maskAt(idx), "mask at " + idx);
+        }
+        assertEquals(misses, SolutionCache.getInstance().getMisses(), "nothing looked up in the cache");
+    }
+
+    @Test
+    void readTellsFormatsApart() {
+        assertThrows(JsonSyntaxException.class,
+                () -> BoardSerializer.read("{\"rows\": 2".getBytes(StandardCharsets.UTF_8)));
+        assertFalse(BoardSerializer.isBinary(new byte[] { 0x4C, 0x42 }));
+    }
+
+    @Test
+    void brokenDataIsRejected() {
+        Board b = new LevelGenerator(1).generate(Difficulty.MEDIUM);
+        byte[] data = BoardSerializer.toBinary(b, Difficulty.MEDIUM, 7L, true);
+        for (int len : new int[] { 4, 10, 15, 20, data.length - 1 }) {
+            byte[] cut = Arrays.copyOf(data, len);
+            assertThrows(IllegalArgumentException.class, () -> BoardSerializer.fromBinary(cut), "cut to " + len);
+        }
+        data[4] = BoardSerializer.VERSION + 1;
+        assertThrows(IllegalArgumentException.class, () -> BoardSerializer.fromBinary(data));
+        data[0] = 0;
+        assertThrows(IllegalArgumentException.class, () -> BoardSerializer.fromBinary(data));
+    }
+
+    @Test
+    void headerSizesAreCheckedBeforeAllocating() {
+        byte[] data = BoardSerializer.toBinary(new LevelGenerator(2).generate(Difficulty.EASY), Difficulty.EASY, null, true);
+        byte[] huge = data.clone();
+        ByteBuffer.wrap(huge).putChar(7, (char) 65535).putChar(9, (char) 65535);
+        assertThrows(IllegalArgumentException.class, () -> BoardSerializer.fromBinary(huge));
+        byte[] wide = data.clone();
+        ByteBuffer.wrap(wide).putChar(9, (char) 1000);
+        assertThrows(IllegalArgumentException.class, () -> BoardSerializer.fromBinary(wide));
+        byte[] sources = data.clone();
+        ByteBuffer.wrap(sources).putInt(11, Integer.MAX_VALUE);
+        assertThrows(IllegalArgumentException.class, () -> BoardSerializer.fromBinary(sources));
+        ByteBuffer.wrap(sources).putInt(11, -1);
+        assertThrows(IllegalArgumentException.class, () -> BoardSerializer.fromBinary(sources));
+    }
+
+    /* the board as read from a file without a solution */
+    private static Board level(Board b) {
+        return BoardSerializer.read(BoardSerializer.toBinary(b, Difficulty.HARD)).board();
+    }
+
+    /* Rotations that change no connection are not stored, so the masks are compared. */
+    private static void assertSameBoard(Board want, Board got, String what) {
+        assertEquals(want.getRows(), got.getRows(), what);
+        assertEquals(want.getCols(), got.getCols(), what);
+        for (int idx = 0; idx < want.getRows() * want.getCols(); idx++) {
+            assertEquals(want.kindAt(idx), got.kindAt(idx), what + ", kind at " + idx);
+            assertEquals(want.maskAt(idx), got.maskAt(idx), what + ", mask at " + idx);
+            int r = idx / want.getCols(), c = idx % want.getCols();
+            assertEquals(want.isVital(r, c), got.isVital(r, c), what + ", vital at " + idx);
+        }
+
+        /* the stored solution must still light everything */
+        for (int idx = 0; idx < got.getRows() * got.getCols(); idx++)
+            got.setRotationAt(idx, got.getSolutionRotation(idx / got.getCols(), idx % got.getCols()));
+        PowerFlood flood = new PowerFlood(got, PowerFlood.Mode.POWERED);
+        flood.run();
+        assertEquals(flood.getTotalBulbs(), flood.getReachedBulbs(), what + ", solution");
+    }
+}
@@ -0,0 +1,117 @@
+package lightbulb.model.solver;
+
+import lightbulb.model.Board;
+import lightbulb.model.Direction;
+import lightbulb.model.PowerFlood;
+import lightbulb.model.RandomBoards;
+import lightbulb.model.WireType;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * SolutionCounter musí na malých deskách napočítat stejně různých sítí jako
+ * hrubá síla přes všechna natočení, kde síť jsou spoje, kterými vede proud,
+ * bez slepých odboček.
+ *
+ * @author Gleb Litvinchuk (xlitvi02)
+ */
+class SolutionCounterTest {
+
+    @Test
+    void countsEveryNetworkOnce() {
+        /* rows X X / T X / SRC X / BULB I: one loop used to be counted twice */
+        Board b = new Board(4, 2);
+        int x = Board.wireKind(WireType.X);
+        b.placeAt(0, x, 0);
+        b.placeAt(1, x, 0);
+        b.placeAt(2, Board.wireKind(WireType.T), 0);
+        b.placeAt(3, x, 0);
+        b.placeAt(4, Board.SOURCE, 0);
+        b.placeAt(5, x, 0);
+        b.placeAt(6, Board.BULB, 0);
+        b.placeAt(7, Board.wireKind(WireType.I), 0);
+        assertMatchesBruteForce(b, "loop");
+    }
+
+    @Test
+    void matchesBruteForceOnSmallBoards() {
+        Random rnd = new Random(12);
+        int[][] sizes = { { 2, 2 }, { 2, 3 }, { 3, 2 }, { 2, 4 }, { 4, 2 }, { 3, 3 } };
+        for (int i = 0; i < 300; i++) {
+            int[] size = sizes[i % sizes.length];
+            Board b = RandomBoards.random(rnd, size[0], size[1]);
+            if (b.getBulbCount() == 0) continue;
+            assertMatchesBruteForce(b, size[0] + "x" + size[1] + " #" + i);
+        }
+    }
+
+    private static void assertMatchesBruteForce(Board b, String what) {
+        Set<Set<Integer>> networks = new HashSet<>();
+        enumerate(b.copy(), 0, networks);
+
+        SolutionCounter counter = new SolutionCounter();
+        int found = counter.count(b, 1000);
+        assertTrue(counter.isComplete(), what + ", out of budget");
+        assertEquals(networks.size(), found, what + ", networks");
+        assertEquals(networks.size() == 1, counter.isUnique(b), what + ", unique");
+        for (Solution s : counter.getSolutions()) {
+            Board solved = b.copy();
+            for (int idx = 0; idx < s.rotations().length; idx++) solved.setRotationAt(idx, s.rotations()[idx]);
+            assertTrue(networks.contains(network(solved)), what + ", a counted network isn't a solution");
+        }
+    }
+
+    /* every angle of every cell from idx on; the networks of the ones lighting all bulbs */
+    private static void enumerate(Board b, int idx, Set<Set<Integer>> networks) {
+        if (idx == b.getRows() * b.getCols()) {
+            Set<Integer> net = network(b);
+            if (net != null) networks.add(net);
+            return;
+        }
+        int kind = b.kindAt(idx);
+        int angles = kind == Board.EMPTY || kind == Board.SOURCE || kind == Board.wireKind(WireType.X) ? 1 : 4;
+        for (int turn = 0; turn < angles; turn++) {
+            b.setRotationAt(idx, turn * 90);
+            enumerate(b, idx + 1, networks);
+        }
+    }
+
+    /* used connections (cell*4 + side, both ways) with dead ends cut off; null unless every bulb is lit */
+    private static Set<Integer> network(Board b) {
+        PowerFlood flood = new PowerFlood(b, PowerFlood.Mode.POWERED);
+        flood.run();
+        if (flood.getReachedBulbs() != flood.getTotalBulbs()) return null;
+        boolean[] on = flood.reached().clone();
+        for (boolean cut = true; cut; ) {
+            cut = false;
+            for (int idx = 0; idx < on.length; idx++)
+                if (on[idx] && b.kindAt(idx) >= Board.WIRE && links(b, on, idx).size() < 2) {
+                    on[idx] = false;
+                    cut = true;
+                }
+        }
+        Set<Integer> net = new HashSet<>();
+        for (int idx = 0; idx < on.length; idx++)
+            if (on[idx]) net.addAll(links(b, on, idx));
+        return net;
+    }
+
+    private static Set<Integer> links(Board b, boolean[] on, int idx) {
+        Set<Integer> out = new HashSet<>();
+        int r = idx / b.getCols(), c = idx % b.getCols();
+        for (Direction d : Direction.values()) {
+            int nr = r + d.dRow(), nc = c + d.dCol();
+            if (nr < 0 || nr >= b.getRows() || nc < 0 || nc >= b.getCols()) continue;
+            int nb = nr * b.getCols() + nc;
+            if (on[nb] && ((b.maskAt(idx) | b.leadAt(idx)) & d.bit()) != 0
+                    && ((b.maskAt(nb) | b.leadAt(nb)) & d.opposite().bit()) != 0)
+                out.add(idx * 4 + d.ordinal());
+        }
+        return out;
+    }
+}
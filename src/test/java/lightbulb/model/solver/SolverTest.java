@@ -0,0 +1,77 @@
+package lightbulb.model.solver;
+
+import lightbulb.model.Board;
+import lightbulb.model.Difficulty;
+import lightbulb.model.LevelGenerator;
+import lightbulb.model.PowerFlood;
+import lightbulb.model.WireType;
+import org.junit.jupiter.api.Test;
+
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Každý řešič musí na vygenerovaných úrovních vrátit řešení, při kterém
+ * svítí všechny žárovky, nesmí měnit předanou desku a na nespojitelné
+ * desce musí vrátit null.
+ *
+ * @author Gleb Litvinchuk (xlitvi02)
+ */
+class SolverTest {
+
+    @Test
+    void constraintSolverAnswersAreValid() {
+        checkSolver(ConstraintSolver::new);
+    }
+
+    @Test
+    void parallelSolverAnswersAreValid() {
+        try (ParallelSolver solver = new ParallelSolver(2)) {
+            checkSolver(() -> solver);
+        }
+    }
+
+    @Test
+    void satSolverAnswersAreValid() {
+        checkSolver(SatSolver::new);
+    }
+
+    @Test
+    void unconnectableBoardHasNoSolution() {
+        Board b = new Board(1, 3);
+        b.placeAt(0, Board.SOURCE, 0);
+        b.placeAt(2, Board.BULB, 0);
+        assertNull(new ConstraintSolver().solve(b));
+        assertNull(new SatSolver().solve(b));
+        try (ParallelSolver solver = new ParallelSolver(2)) {
+            assertNull(solver.solve(b));
+        }
+
+        /* a straight wire can't take current from the source and turn down to the bulb */
+        Board dead = new Board(2, 2);
+        dead.placeAt(0, Board.SOURCE, 0);
+        dead.placeAt(1, Board.wireKind(WireType.I), 0);
+        dead.placeAt(3, Board.BULB, 0);
+        assertNull(new ConstraintSolver().solve(dead));
+    }
+
+    private static void checkSolver(Supplier<BoardSolver> solvers) {
+        LevelGenerator generator = new LevelGenerator(9);
+        for (Difficulty diff : Difficulty.values())
+            for (int i = 0; i < 5; i++) {
+                Board b = generator.generate(diff);
+                Board before = b.copy();
+                Solution s = solvers.get().solve(b);
+                String what = diff + " #" + i;
+                assertNotNull(s, what);
+                for (int idx = 0; idx < b.getRows() * b.getCols(); idx++)
+                    assertEquals(before.rotationAt(idx), b.rotationAt(idx), what + ", board changed at " + idx);
+
+                for (int idx = 0; idx < b.getRows() * b.getCols(); idx++) b.setRotationAt(idx, s.rotations()[idx]);
+                PowerFlood flood = new PowerFlood(b, PowerFlood.Mode.POWERED);
+                flood.run();
+                assertEquals(flood.getTotalBulbs(), flood.getReachedBulbs(), what + ", lit bulbs");
+            }
+    }
+}